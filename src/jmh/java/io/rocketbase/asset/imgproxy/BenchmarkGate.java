@@ -0,0 +1,159 @@
+package io.rocketbase.asset.imgproxy;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * Runs all benchmarks with the gc profiler and compares them against the checked-in baseline.
+ * <p>
+ * The baseline contains per benchmark (including its params) the throughput in ops/ms and the normalized allocation in
+ * bytes/op. The build fails when throughput drops or allocation grows by more than the configured tolerance, and when a
+ * measured benchmark has no baseline at all - a renamed benchmark or changed param must not switch the gate off.
+ * <p>
+ * system properties:
+ * <ul>
+ * <li>benchmark.baseline - path of the baseline properties</li>
+ * <li>benchmark.tolerance - allowed relative deviation, default 0.25</li>
+ * <li>benchmark.updateBaseline - when true the baseline is rewritten with the current results instead of checked</li>
+ * <li>benchmark.include - regex of benchmarks to run</li>
+ * <li>benchmark.result - path of the jmh json result</li>
+ * </ul>
+ */
+public final class BenchmarkGate {
+
+    static final String THROUGHPUT = ".throughput";
+
+    static final String ALLOCATION = ".allocation";
+
+    /**
+     * absolute slack in bytes/op so that nearly allocation free benchmarks don't fail on jit noise
+     */
+    static final double ALLOCATION_SLACK = 16;
+
+    private BenchmarkGate() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        File baselineFile = new File(System.getProperty("benchmark.baseline", "src/jmh/resources/benchmark-baseline.properties"));
+        double tolerance = Double.parseDouble(System.getProperty("benchmark.tolerance", "0.25"));
+        boolean updateBaseline = Boolean.parseBoolean(System.getProperty("benchmark.updateBaseline", "false"));
+
+        Options options = new OptionsBuilder()
+                .include(System.getProperty("benchmark.include", ".*Benchmark.*"))
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result(System.getProperty("benchmark.result", "target/jmh-result.json"))
+                .build();
+        Map<String, double[]> measured = measure(new Runner(options).run());
+
+        if (updateBaseline) {
+            writeBaseline(baselineFile, measured);
+            System.out.println("benchmark baseline updated: " + baselineFile);
+            return;
+        }
+
+        List<String> regressions = compare(readBaseline(baselineFile), measured, tolerance);
+        if (!regressions.isEmpty()) {
+            System.err.println("benchmark regressions against " + baselineFile + ":");
+            regressions.forEach(r -> System.err.println("  " + r));
+            System.exit(1);
+        }
+        System.out.println("all benchmarks within " + (int) (tolerance * 100) + "% of the baseline");
+    }
+
+    /**
+     * @return key -> [throughput ops/ms, allocation bytes/op]
+     */
+    static Map<String, double[]> measure(Collection<RunResult> results) {
+        Map<String, double[]> measured = new TreeMap<>();
+        for (RunResult result : results) {
+            String benchmark = result.getParams().getBenchmark();
+            StringBuilder key = new StringBuilder(benchmark.substring(benchmark.lastIndexOf('.', benchmark.lastIndexOf('.') - 1) + 1));
+            for (String param : result.getParams().getParamsKeys()) {
+                key.append(':').append(param).append('=').append(result.getParams().getParam(param));
+            }
+            measured.put(key.toString(), new double[]{result.getPrimaryResult().getScore(), allocation(result)});
+        }
+        return measured;
+    }
+
+    static List<String> compare(Properties baseline, Map<String, double[]> measured, double tolerance) {
+        List<String> regressions = new ArrayList<>();
+        for (Map.Entry<String, double[]> entry : measured.entrySet()) {
+            String key = entry.getKey();
+            double throughput = entry.getValue()[0];
+            double allocation = entry.getValue()[1];
+            String expectedThroughput = baseline.getProperty(key + THROUGHPUT);
+            String expectedAllocation = baseline.getProperty(key + ALLOCATION);
+            if (expectedThroughput == null || expectedAllocation == null) {
+                regressions.add(key + " has no baseline - record it via -Dbenchmark.updateBaseline=true");
+                continue;
+            }
+            double minThroughput = Double.parseDouble(expectedThroughput) * (1 - tolerance);
+            if (throughput < minThroughput) {
+                regressions.add(String.format(Locale.ROOT, "%s throughput %.1f ops/ms is below %.1f ops/ms", key, throughput, minThroughput));
+            }
+            double maxAllocation = Double.parseDouble(expectedAllocation) * (1 + tolerance) + ALLOCATION_SLACK;
+            if (allocation > maxAllocation) {
+                regressions.add(String.format(Locale.ROOT, "%s allocation %.1f bytes/op is above %.1f bytes/op", key, allocation, maxAllocation));
+            }
+        }
+        return regressions;
+    }
+
+    private static double allocation(RunResult result) {
+        Map<String, Result> secondary = result.getSecondaryResults();
+        // name changed from "·gc.alloc.rate.norm" to "gc.alloc.rate.norm" with jmh 1.36
+        Result allocation = secondary.containsKey("gc.alloc.rate.norm") ? secondary.get("gc.alloc.rate.norm") : secondary.get("·gc.alloc.rate.norm");
+        return allocation != null ? allocation.getScore() : 0;
+    }
+
+    private static Properties readBaseline(File file) throws Exception {
+        Properties properties = new Properties();
+        try (InputStream in = new FileInputStream(file)) {
+            properties.load(in);
+        }
+        return properties;
+    }
+
+    /**
+     * merges the measured values into the existing baseline, so a partial run only updates its own benchmarks
+     */
+    private static void writeBaseline(File file, Map<String, double[]> measured) throws Exception {
+        Map<String, String> values = new TreeMap<>();
+        if (file.exists()) {
+            Properties existing = readBaseline(file);
+            for (String key : existing.stringPropertyNames()) {
+                values.put(key, existing.getProperty(key));
+            }
+        }
+        for (Map.Entry<String, double[]> entry : measured.entrySet()) {
+            values.put(entry.getKey() + THROUGHPUT, String.format(Locale.ROOT, "%.1f", entry.getValue()[0]));
+            values.put(entry.getKey() + ALLOCATION, String.format(Locale.ROOT, "%.1f", entry.getValue()[1]));
+        }
+        try (PrintWriter writer = new PrintWriter(file, "ISO-8859-1")) {
+            writer.println("# throughput in ops/ms and allocation in bytes/op");
+            writer.println("# regenerate via mvn -B verify -Pbenchmark -Dbenchmark.updateBaseline=true");
+            for (Map.Entry<String, String> entry : values.entrySet()) {
+                writer.println(entry.getKey().replace(":", "\\:").replace("=", "\\=") + "=" + entry.getValue());
+            }
+        }
+    }
+}
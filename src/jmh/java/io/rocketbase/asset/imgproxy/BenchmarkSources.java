@@ -0,0 +1,20 @@
+package io.rocketbase.asset.imgproxy;
+
+/**
+ * source urls shared by the benchmarks
+ */
+final class BenchmarkSources {
+
+    static final String SHORT = "s3://cdn/a.png";
+
+    static final String LONG = "s3://cdn.rocketbase.io/assets/rocketbase/catalog/2023/spring-collection/products/" +
+            "outdoor-jackets/mens/waterproof-hardshell-jacket-with-removable-hood-and-pit-zips-midnight-blue-xl/" +
+            "gallery/front-view-high-resolution-original-upload-b2bf42d0ad.png";
+
+    private BenchmarkSources() {
+    }
+
+    static String sourceUrl(String name) {
+        return "long".equals(name) ? LONG : SHORT;
+    }
+}
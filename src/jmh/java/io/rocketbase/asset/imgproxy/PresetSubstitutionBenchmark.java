@@ -0,0 +1,81 @@
+package io.rocketbase.asset.imgproxy;
+
+import io.rocketbase.asset.imgproxy.options.GravityType;
+import io.rocketbase.asset.imgproxy.options.ImageType;
+import io.rocketbase.asset.imgproxy.options.ResizeType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * compiling a corpus of typical page option chains with and without preset substitution, the page size savings of the
+ * corpus get printed once per trial
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PresetSubstitutionBenchmark {
+
+    private static final String PRESETS = "card=rs:fill:300:400:0/g:sm,web=q:80/bg:ffffff,hero=rs:fill:1920:600:0/g:ce/q:75";
+
+    private final List<Signature> plain = new ArrayList<>();
+
+    private final List<Signature> substituted = new ArrayList<>();
+
+    @Setup(Level.Trial)
+    public void setup() {
+        SignatureConfiguration configuration = new SignatureConfiguration("https://img.example.com", "secret", "hello");
+        SignatureConfiguration withPresets = new SignatureConfiguration("https://img.example.com", "secret", "hello")
+                .presets(PresetRegistry.parse(PRESETS));
+        for (SignatureConfiguration current : new SignatureConfiguration[]{configuration, withPresets}) {
+            List<Signature> corpus = current == configuration ? plain : substituted;
+            for (int width : new int[]{320, 640, 960}) {
+                corpus.add(Signature.of(current).resize(ResizeType.fill, 300, 400, false).gravity(GravityType.sm).quality(80).background("ffffff").width(width));
+            }
+            corpus.add(Signature.of(current).resize(ResizeType.fill, 300, 400, false).gravity(GravityType.sm).quality(80).background("ffffff"));
+            corpus.add(Signature.of(current).resize(ResizeType.fill, 1920, 600, false).gravity(GravityType.ce).quality(75));
+            corpus.add(Signature.of(current).size(100, 100).quality(80).background("ffffff"));
+            corpus.add(Signature.of(current).width(200).quality(90));
+        }
+
+        int plainBytes = 0;
+        int substitutedBytes = 0;
+        for (int i = 0; i < plain.size(); i++) {
+            plainBytes += plain.get(i).url(BenchmarkSources.LONG, ImageType.webp).length();
+            substitutedBytes += substituted.get(i).url(BenchmarkSources.LONG, ImageType.webp).length();
+        }
+        System.out.printf("%npreset substitution: %d urls, %d -> %d bytes (%.1f%% smaller), %.1f kb saved per 1000 urls%n",
+                plain.size(), plainBytes, substitutedBytes, 100.0 * (plainBytes - substitutedBytes) / plainBytes,
+                (plainBytes - substitutedBytes) * 1000.0 / plain.size() / 1024);
+    }
+
+    @Benchmark
+    public void compilePlain(Blackhole blackhole) {
+        for (Signature signature : plain) {
+            blackhole.consume(signature.compile());
+        }
+    }
+
+    @Benchmark
+    public void compileWithPresets(Blackhole blackhole) {
+        for (Signature signature : substituted) {
+            blackhole.consume(signature.compile());
+        }
+    }
+}
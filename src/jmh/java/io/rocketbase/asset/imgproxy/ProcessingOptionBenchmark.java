@@ -0,0 +1,61 @@
+package io.rocketbase.asset.imgproxy;
+
+import io.rocketbase.asset.imgproxy.options.ResizeType;
+import io.rocketbase.asset.imgproxy.options.WatermarkPositionType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * building processing options out of mixed argument types via varargs and via the typed {@link ProcessingOptions} slots
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProcessingOptionBenchmark {
+
+    private final ResizeType resizeType = ResizeType.fill;
+
+    private final WatermarkPositionType position = WatermarkPositionType.nowe;
+
+    private int width = 300;
+
+    private boolean enlarge = true;
+
+    private double opacity = 0.8;
+
+    @Benchmark
+    public String intsAndBooleans() {
+        return Signature.createProcessingOption("rs", resizeType.name(), width, width, enlarge, false);
+    }
+
+    @Benchmark
+    public String doublesAndStrings() {
+        return Signature.createProcessingOption("wm", opacity, position.name(), 10, 10, 0.5);
+    }
+
+    @Benchmark
+    public String typedIntsAndBooleans() {
+        ProcessingOptions options = new ProcessingOptions();
+        options.resize(resizeType, width, width, ProcessingOptions.flag(enlarge), ProcessingOptions.flag(false));
+        return options.toPath();
+    }
+
+    @Benchmark
+    public String typedDoublesAndStrings() {
+        ProcessingOptions options = new ProcessingOptions();
+        options.watermark(opacity, position, 10, 10, 0.5);
+        return options.toPath();
+    }
+}
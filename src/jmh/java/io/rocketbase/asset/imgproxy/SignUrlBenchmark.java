@@ -0,0 +1,64 @@
+package io.rocketbase.asset.imgproxy;
+
+import com.google.common.hash.Hashing;
+import com.google.common.io.BaseEncoding;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * signing of a path via the former guava implementation, the reference {@link Signature#signUrl(String, String, String, int)}
+ * built on the jdk and the prepared {@link UrlSigner}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SignUrlBenchmark {
+
+    private static final String KEY = "943b421c9eb07c830af81030552c86009268de4e532ba2ee2eab8247c6da0881";
+
+    private static final String SALT = "520f986b998545b4785e0defbc4f3c1203f22de2374a3d53cb7a7fe9fea309c5";
+
+    @Param({"8", "16", "32"})
+    public int numberOfSignatureBytes;
+
+    private String path;
+
+    private UrlSigner signer;
+
+    @Setup
+    public void setup() {
+        path = "/rs:fill:300:400:0/q:80/czM6Ly9jZG4ucm9ja2V0YmFzZS5pby9hc3NldHMvcm9ja2V0YmFzZS9sb2dvLXdoaXRlLTQwMHg0MDAtYjJiZjQyZDBhZC5wbmc.webp";
+        signer = UrlSigner.of(KEY, SALT);
+    }
+
+    @Benchmark
+    public String guavaSignUrl() {
+        return BaseEncoding.base64Url()
+                .omitPadding()
+                .encode(Hashing.hmacSha256(KEY.getBytes()).hashBytes((SALT + path).getBytes()).asBytes(), 0, numberOfSignatureBytes);
+    }
+
+    @Benchmark
+    public String signUrl() throws Exception {
+        return Signature.signUrl(path, KEY, SALT, numberOfSignatureBytes);
+    }
+
+    @Benchmark
+    public String preparedSigner() {
+        return signer.sign(path, numberOfSignatureBytes);
+    }
+}
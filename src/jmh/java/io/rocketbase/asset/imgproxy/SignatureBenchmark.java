@@ -0,0 +1,106 @@
+package io.rocketbase.asset.imgproxy;
+
+import io.rocketbase.asset.imgproxy.options.ImageType;
+import io.rocketbase.asset.imgproxy.options.ResizeType;
+import io.rocketbase.asset.imgproxy.recipe.ImageRecipe;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * full url generation via {@link Signature#url(String, ImageType)} for signed and unsigned configurations and via compiled
+ * templates with plain, encrypted and routed source urls and via a generated recipe
+ */
+@ImageRecipe(name = "benchmark-thumb", options = {"rs:fill:300:400:0", "q:80"})
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SignatureBenchmark {
+
+    @Param({"short", "long"})
+    public String source;
+
+    private final SignatureConfiguration signed = new SignatureConfiguration("http://localhost:8080", "943b421c9eb07c830af81030552c86009268de4e532ba2ee2eab8247c6da0881", "520f986b998545b4785e0defbc4f3c1203f22de2374a3d53cb7a7fe9fea309c5");
+
+    private final SignatureConfiguration unsigned = new SignatureConfiguration("http://localhost:8080");
+
+    private String sourceUrl;
+
+    private SignatureTemplate template;
+
+    private SignatureTemplate encryptedTemplate;
+
+    private SignatureTemplate routedTemplate;
+
+    private BenchmarkThumbRecipe recipe;
+
+    @Setup
+    public void setup() {
+        sourceUrl = BenchmarkSources.sourceUrl(source);
+        template = Signature.of(signed)
+                .resize(ResizeType.fill, 300, 400, false)
+                .quality(80)
+                .compile();
+        encryptedTemplate = Signature.of(new SignatureConfiguration("http://localhost:8080", "943b421c9eb07c830af81030552c86009268de4e532ba2ee2eab8247c6da0881", "520f986b998545b4785e0defbc4f3c1203f22de2374a3d53cb7a7fe9fea309c5")
+                        .sourceUrlEncryptionKey("1eb5b0e971ad7f45324c1bb15c947cb207c43152fa5c6c7f35c4f36e0c18e0f1"))
+                .resize(ResizeType.fill, 300, 400, false)
+                .quality(80)
+                .encrypted()
+                .compile();
+        routedTemplate = Signature.of(new SignatureConfiguration("http://localhost:8080", "943b421c9eb07c830af81030552c86009268de4e532ba2ee2eab8247c6da0881", "520f986b998545b4785e0defbc4f3c1203f22de2374a3d53cb7a7fe9fea309c5")
+                        .routing(ConsistentHashRing.of("http://img1:8080", "http://img2:8080", "http://img3:8080", "http://img4:8080")))
+                .resize(ResizeType.fill, 300, 400, false)
+                .quality(80)
+                .compile();
+        recipe = new BenchmarkThumbRecipe(signed);
+    }
+
+    @Benchmark
+    public String recipeUrlSigned() {
+        return recipe.url(sourceUrl, ImageType.webp);
+    }
+
+    @Benchmark
+    public String urlSigned() {
+        return Signature.of(signed)
+                .resize(ResizeType.fill, 300, 400, false)
+                .quality(80)
+                .url(sourceUrl, ImageType.webp);
+    }
+
+    @Benchmark
+    public String urlUnsigned() {
+        return Signature.of(unsigned)
+                .resize(ResizeType.fill, 300, 400, false)
+                .quality(80)
+                .url(sourceUrl, ImageType.webp);
+    }
+
+    @Benchmark
+    public String templateUrlSigned() {
+        return template.url(sourceUrl, ImageType.webp);
+    }
+
+    @Benchmark
+    public String templateUrlEncrypted() {
+        return encryptedTemplate.url(sourceUrl, ImageType.webp);
+    }
+
+    @Benchmark
+    public String templateUrlRouted() {
+        return routedTemplate.url(sourceUrl, ImageType.webp);
+    }
+}
@@ -0,0 +1,51 @@
+package io.rocketbase.asset.imgproxy;
+
+import io.rocketbase.asset.imgproxy.options.ImageType;
+import io.rocketbase.asset.imgproxy.options.ResizeType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * verification of inbound urls via {@link SignatureVerifier}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SignatureVerifierBenchmark {
+
+    @Param({"short", "long"})
+    public String source;
+
+    private SignatureVerifier verifier;
+
+    private String url;
+
+    @Setup
+    public void setup() {
+        SignatureConfiguration configuration = new SignatureConfiguration("http://localhost:8080", "943b421c9eb07c830af81030552c86009268de4e532ba2ee2eab8247c6da0881", "520f986b998545b4785e0defbc4f3c1203f22de2374a3d53cb7a7fe9fea309c5");
+        verifier = SignatureVerifier.of(configuration);
+        url = Signature.of(configuration)
+                .resize(ResizeType.fill, 300, 400, false)
+                .quality(80)
+                .url(BenchmarkSources.sourceUrl(source), ImageType.webp);
+    }
+
+    @Benchmark
+    public boolean verify() {
+        return verifier.isValid(url);
+    }
+}
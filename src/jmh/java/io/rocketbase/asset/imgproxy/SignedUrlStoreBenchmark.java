@@ -0,0 +1,78 @@
+package io.rocketbase.asset.imgproxy;
+
+import io.rocketbase.asset.imgproxy.options.ImageType;
+import io.rocketbase.asset.imgproxy.options.ResizeType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * warm restart - urls served out of a prefilled {@link SignedUrlStore} compared with signing them again
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SignedUrlStoreBenchmark {
+
+    private static final int SOURCES = 10_000;
+
+    private final SignatureConfiguration configuration = new SignatureConfiguration("http://localhost:8080", "943b421c9eb07c830af81030552c86009268de4e532ba2ee2eab8247c6da0881", "520f986b998545b4785e0defbc4f3c1203f22de2374a3d53cb7a7fe9fea309c5");
+
+    private final SignatureTemplate template = Signature.of(configuration)
+            .resize(ResizeType.fill, 300, 400, false)
+            .quality(80)
+            .compile();
+
+    private final String[] sourceUrls = new String[SOURCES];
+
+    private Path directory;
+
+    private SignedUrlStore store;
+
+    private int next;
+
+    @Setup
+    public void setup() throws IOException {
+        for (int i = 0; i < SOURCES; i++) {
+            sourceUrls[i] = "s3://bucket/catalog/products/" + i + "/front-view.png";
+        }
+        directory = Files.createTempDirectory("signed-url-store-benchmark");
+        store = SignedUrlStore.open(directory.resolve("urls.store"), configuration, SOURCES);
+        for (String sourceUrl : sourceUrls) {
+            store.url(template, sourceUrl, ImageType.webp);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        store.close();
+        Files.deleteIfExists(directory.resolve("urls.store"));
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public String storeHit() {
+        return store.get(template, sourceUrls[next++ % SOURCES], ImageType.webp);
+    }
+
+    @Benchmark
+    public String sign() {
+        return template.url(sourceUrls[next++ % SOURCES], ImageType.webp);
+    }
+}
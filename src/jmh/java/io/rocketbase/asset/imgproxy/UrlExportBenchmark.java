@@ -0,0 +1,97 @@
+package io.rocketbase.asset.imgproxy;
+
+import io.rocketbase.asset.imgproxy.options.ImageType;
+import io.rocketbase.asset.imgproxy.options.ResizeType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * feed export of {@link #ROWS} source keys - the throughput is in urls/ms. Compares {@link UrlExport} (parallel workers,
+ * memory-mapped output) with reading lines and writing {@link SignatureTemplate#url(String, ImageType)} through a writer.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@OperationsPerInvocation(UrlExportBenchmark.ROWS)
+public class UrlExportBenchmark {
+
+    static final int ROWS = 100_000;
+
+    private final SignatureTemplate template = Signature.of(new SignatureConfiguration("http://localhost:8080", "943b421c9eb07c830af81030552c86009268de4e532ba2ee2eab8247c6da0881", "520f986b998545b4785e0defbc4f3c1203f22de2374a3d53cb7a7fe9fea309c5"))
+            .resize(ResizeType.fit, 800, 800, false)
+            .quality(80)
+            .compile();
+
+    private Path directory;
+
+    private Path keys;
+
+    private Path output;
+
+    @Setup
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("url-export-benchmark");
+        keys = directory.resolve("keys.txt");
+        output = directory.resolve("feed.csv");
+        try (BufferedWriter writer = Files.newBufferedWriter(keys, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < ROWS; i++) {
+                writer.write("catalog/2023/products/" + i + "/gallery/front-view-" + Integer.toHexString(i * 31) + ".png\n");
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(output);
+        Files.deleteIfExists(keys);
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public UrlExport.Result mappedExport() throws IOException {
+        return UrlExport.of(template)
+                .sourcePrefix("s3://bucket/")
+                .imageType(ImageType.webp)
+                .format(LineFormat.csv())
+                .export(keys, output);
+    }
+
+    @Benchmark
+    public long writerExport() throws IOException {
+        long rows = 0;
+        try (BufferedReader reader = Files.newBufferedReader(keys, StandardCharsets.UTF_8);
+             BufferedWriter writer = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+            writer.write("source,url\n");
+            String key;
+            while ((key = reader.readLine()) != null) {
+                writer.write(key);
+                writer.write(',');
+                writer.write(template.url("s3://bucket/" + key, ImageType.webp));
+                writer.write('\n');
+                rows++;
+            }
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,76 @@
+package io.rocketbase.asset.imgproxy;
+
+import io.rocketbase.asset.imgproxy.options.ImageType;
+import io.rocketbase.asset.imgproxy.options.ResizeType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * full srcset matrix of 8 widths x 2 dprs x 3 image types via {@link VariantMatrix} compared to separate url calls
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VariantMatrixBenchmark {
+
+    private static final int[] WIDTHS = {320, 480, 640, 768, 960, 1280, 1600, 1920};
+
+    private static final double[] DPRS = {1, 2};
+
+    private static final ImageType[] IMAGE_TYPES = {ImageType.avif, ImageType.webp, ImageType.jpg};
+
+    private Signature base;
+
+    private VariantMatrix matrix;
+
+    @Setup
+    public void setup() {
+        SignatureConfiguration configuration = new SignatureConfiguration("http://localhost:8080", "943b421c9eb07c830af81030552c86009268de4e532ba2ee2eab8247c6da0881", "520f986b998545b4785e0defbc4f3c1203f22de2374a3d53cb7a7fe9fea309c5");
+        base = Signature.of(configuration)
+                .resize(ResizeType.fit, 0, 0, false)
+                .quality(80)
+                .background("ffffff");
+        matrix = VariantMatrix.of(base)
+                .widths(WIDTHS)
+                .dprs(DPRS)
+                .imageTypes(IMAGE_TYPES);
+    }
+
+    @Benchmark
+    public ResponsiveImage matrix() {
+        return matrix.render(BenchmarkSources.LONG);
+    }
+
+    @Benchmark
+    public void separateUrls(Blackhole blackhole) {
+        for (ImageType imageType : IMAGE_TYPES) {
+            for (int width : WIDTHS) {
+                for (double dpr : DPRS) {
+                    Signature signature = Signature.of(base.compile().getConfiguration())
+                            .resize(ResizeType.fit, 0, 0, false)
+                            .quality(80)
+                            .background("ffffff")
+                            .width(width);
+                    if (dpr != 1) {
+                        signature.dpr(dpr);
+                    }
+                    blackhole.consume(signature.url(BenchmarkSources.LONG, imageType));
+                }
+            }
+        }
+    }
+}
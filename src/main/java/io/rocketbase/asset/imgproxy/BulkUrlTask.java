@@ -0,0 +1,80 @@
+package io.rocketbase.asset.imgproxy;
+
+import io.rocketbase.asset.imgproxy.options.ImageType;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Splits bulk url generation into ranges that are processed by the common fork/join pool.
+ * <p>
+ * Every worker writes into its own slice of the shared result array, so results keep the input order without any
+ * merging. Signer state is kept per thread, which means each worker reuses its prepared hmac for its whole range.
+ */
+final class BulkUrlTask extends RecursiveAction {
+
+    /**
+     * below this amount of urls the overhead of forking is higher than signing sequentially
+     */
+    static final int MIN_CHUNK_SIZE = 64;
+
+    private final SignatureTemplate template;
+
+    private final String[] sourceUrls;
+
+    private final ImageType[] imageTypes;
+
+    private final ImageType imageType;
+
+    private final String[] result;
+
+    private final int from;
+
+    private final int to;
+
+    private final int chunkSize;
+
+    private BulkUrlTask(SignatureTemplate template, String[] sourceUrls, ImageType[] imageTypes, ImageType imageType,
+                        String[] result, int from, int to, int chunkSize) {
+        this.template = template;
+        this.sourceUrls = sourceUrls;
+        this.imageTypes = imageTypes;
+        this.imageType = imageType;
+        this.result = result;
+        this.from = from;
+        this.to = to;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * @param imageTypes per item image types, when null imageType is used for all items
+     */
+    static String[] urls(SignatureTemplate template, String[] sourceUrls, ImageType[] imageTypes, ImageType imageType) {
+        if (imageTypes != null && imageTypes.length != sourceUrls.length) {
+            throw new IllegalArgumentException("sourceUrls and imageTypes must have the same length");
+        }
+        String[] result = new String[sourceUrls.length];
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        int chunkSize = Math.max(MIN_CHUNK_SIZE, sourceUrls.length / (pool.getParallelism() * 4));
+        BulkUrlTask task = new BulkUrlTask(template, sourceUrls, imageTypes, imageType, result, 0, sourceUrls.length, chunkSize);
+        if (sourceUrls.length <= chunkSize) {
+            task.compute();
+        } else {
+            pool.invoke(task);
+        }
+        return result;
+    }
+
+    @Override
+    protected void compute() {
+        if (to - from <= chunkSize) {
+            for (int i = from; i < to; i++) {
+                result[i] = template.url(sourceUrls[i], imageTypes != null ? imageTypes[i] : imageType);
+            }
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        invokeAll(new BulkUrlTask(template, sourceUrls, imageTypes, imageType, result, from, middle, chunkSize),
+                new BulkUrlTask(template, sourceUrls, imageTypes, imageType, result, middle, to, chunkSize));
+    }
+}
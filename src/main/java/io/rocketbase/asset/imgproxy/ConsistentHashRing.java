@@ -0,0 +1,183 @@
+package io.rocketbase.asset.imgproxy;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Routes source urls to one of several imgproxy base urls via consistent hashing, so every node keeps its own result
+ * cache warm for a stable share of the images.
+ * <p>
+ * Every base url is placed on the ring with a number of virtual nodes. A source url belongs to the first virtual node at
+ * or after the hash of its utf-8 bytes. Adding or removing a base url only moves the sources of its own virtual nodes -
+ * roughly 1/n of all keys.
+ * <p>
+ * Rings are immutable, {@link #with(String)} and {@link #without(String)} return new ones. Lookups hash the bytes and run
+ * a binary search over a primitive array - no locks and no allocation.
+ * <p>
+ * usage:
+ * <pre>
+ * configuration.routing(ConsistentHashRing.of("https://img1.example.com", "https://img2.example.com"));
+ * // scale out - only about a third of the sources move to the new node
+ * configuration.routing(configuration.getRouting().with("https://img3.example.com"));
+ * </pre>
+ */
+public final class ConsistentHashRing {
+
+    static final int DEFAULT_VIRTUAL_NODES = 160;
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final int virtualNodes;
+
+    private final List<String> baseurls;
+
+    private final byte[][] baseurlBytes;
+
+    /**
+     * sorted positions of all virtual nodes
+     */
+    private final long[] points;
+
+    /**
+     * index into baseurls per point
+     */
+    private final int[] owners;
+
+    private ConsistentHashRing(int virtualNodes, List<String> baseurls) {
+        if (virtualNodes < 1) {
+            throw new IllegalArgumentException("virtualNodes must be at least 1");
+        }
+        if (baseurls.isEmpty()) {
+            throw new IllegalArgumentException("at least one baseurl is needed");
+        }
+        this.virtualNodes = virtualNodes;
+        this.baseurls = Collections.unmodifiableList(new ArrayList<>(baseurls));
+        this.baseurlBytes = new byte[baseurls.size()][];
+        long[] points = new long[baseurls.size() * virtualNodes];
+        int position = 0;
+        for (int node = 0; node < baseurls.size(); node++) {
+            baseurlBytes[node] = baseurls.get(node).getBytes(StandardCharsets.UTF_8);
+            for (int replica = 0; replica < virtualNodes; replica++) {
+                byte[] label = (baseurls.get(node) + "#" + replica).getBytes(StandardCharsets.UTF_8);
+                points[position++] = hash(label, 0, label.length);
+            }
+        }
+        // sort points together with their owner, on equal points the first registered base url wins
+        Integer[] order = new Integer[points.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> points[a] != points[b] ? Long.compare(points[a], points[b]) : Integer.compare(a, b));
+        this.points = new long[points.length];
+        this.owners = new int[points.length];
+        for (int i = 0; i < order.length; i++) {
+            this.points[i] = points[order[i]];
+            this.owners[i] = order[i] / virtualNodes;
+        }
+    }
+
+    public static ConsistentHashRing of(String... baseurls) {
+        return of(DEFAULT_VIRTUAL_NODES, Arrays.asList(baseurls));
+    }
+
+    /**
+     * @param virtualNodes points per base url - more points spread the keys more evenly, default 160
+     */
+    public static ConsistentHashRing of(int virtualNodes, List<String> baseurls) {
+        List<String> distinct = new ArrayList<>(baseurls.size());
+        for (String baseurl : baseurls) {
+            if (!distinct.contains(baseurl)) {
+                distinct.add(baseurl);
+            }
+        }
+        return new ConsistentHashRing(virtualNodes, distinct);
+    }
+
+    /**
+     * @return new ring that additionally contains the given base url
+     */
+    public ConsistentHashRing with(String baseurl) {
+        if (baseurls.contains(baseurl)) {
+            return this;
+        }
+        List<String> updated = new ArrayList<>(baseurls);
+        updated.add(baseurl);
+        return new ConsistentHashRing(virtualNodes, updated);
+    }
+
+    /**
+     * @return new ring without the given base url
+     * @throws IllegalArgumentException when it's the last one
+     */
+    public ConsistentHashRing without(String baseurl) {
+        List<String> updated = new ArrayList<>(baseurls);
+        updated.remove(baseurl);
+        return updated.size() == baseurls.size() ? this : new ConsistentHashRing(virtualNodes, updated);
+    }
+
+    public List<String> getBaseurls() {
+        return baseurls;
+    }
+
+    public int getVirtualNodes() {
+        return virtualNodes;
+    }
+
+    /**
+     * base url responsible for the given source url
+     */
+    public String baseurl(String sourceUrl) {
+        byte[] bytes = sourceUrl.getBytes(StandardCharsets.UTF_8);
+        return baseurls.get(node(bytes, bytes.length));
+    }
+
+    /**
+     * @return index of the base url responsible for the utf-8 encoded source url
+     */
+    int node(byte[] source, int length) {
+        long hash = hash(source, 0, length);
+        int index = Arrays.binarySearch(points, hash);
+        if (index < 0) {
+            index = -index - 1;
+            if (index == points.length) {
+                index = 0;
+            }
+        } else {
+            // several virtual nodes could share the point, the lowest one owns it
+            while (index > 0 && points[index - 1] == hash) {
+                index--;
+            }
+        }
+        return owners[index];
+    }
+
+    String baseurl(int node) {
+        return baseurls.get(node);
+    }
+
+    byte[] baseurlBytes(int node) {
+        return baseurlBytes[node];
+    }
+
+    /**
+     * fnv-1a with the murmur3 finalizer for a better spread of similar keys
+     */
+    static long hash(byte[] bytes, int offset, int length) {
+        long hash = FNV_OFFSET;
+        for (int i = offset; i < offset + length; i++) {
+            hash ^= bytes[i] & 0xff;
+            hash *= FNV_PRIME;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
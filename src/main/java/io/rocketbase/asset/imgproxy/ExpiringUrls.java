@@ -0,0 +1,237 @@
+package io.rocketbase.asset.imgproxy;
+
+import io.rocketbase.asset.imgproxy.options.ImageType;
+import lombok.EqualsAndHashCode;
+import lombok.RequiredArgsConstructor;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Expiring urls (exp option) that stay cache-stable: the expiry is at least ttl ahead and rounded up to a multiple of
+ * bucket, so all urls generated within one bucket are byte-identical.
+ * <p>
+ * Per bucket the chain is compiled once and generated urls are cached. Shortly before the next bucket starts, all urls
+ * requested within the current bucket are signed for the next one in the background - at the boundary they are already
+ * there instead of being signed all at once under traffic. A bucket is dropped as soon as the signer or routing of the
+ * configuration changes, e.g. via {@link RotatingSignatureConfiguration#rotate(String, String)}.
+ * <p>
+ * usage:
+ * <pre>
+ * ExpiringUrls privateAssets = ExpiringUrls.of(Signature.of(configuration).size(300, 300), Duration.ofHours(1), Duration.ofMinutes(15));
+ * String url = privateAssets.url(sourceUrl, ImageType.webp);
+ * </pre>
+ */
+public final class ExpiringUrls {
+
+    static final int DEFAULT_MAXIMUM_SIZE = 10_000;
+
+    private final Signature base;
+
+    private final long ttlSeconds;
+
+    private final long bucketSeconds;
+
+    private Clock clock = Clock.systemUTC();
+
+    private Executor executor = ForkJoinPool.commonPool();
+
+    private int maximumSize = DEFAULT_MAXIMUM_SIZE;
+
+    /**
+     * seconds before the next bucket starts in which it gets prepared, default a tenth of the bucket
+     */
+    private long prepareAheadSeconds;
+
+    private volatile Bucket current;
+
+    private volatile Bucket next;
+
+    private ExpiringUrls(Signature base, Duration ttl, Duration bucket) {
+        if (ttl.isNegative()) {
+            throw new IllegalArgumentException("ttl must not be negative");
+        }
+        if (bucket.getSeconds() < 1) {
+            throw new IllegalArgumentException("bucket needs to be at least one second");
+        }
+        this.base = base.copy();
+        this.ttlSeconds = ttl.getSeconds();
+        this.bucketSeconds = bucket.getSeconds();
+        this.prepareAheadSeconds = Math.max(1, bucketSeconds / 10);
+    }
+
+    /**
+     * @param base   chain with all other processing options, later changes on it don't affect the urls
+     * @param ttl    minimum remaining lifetime of a generated url
+     * @param bucket granularity of the expiry timestamp, urls live at most ttl + bucket
+     */
+    public static ExpiringUrls of(Signature base, Duration ttl, Duration bucket) {
+        return new ExpiringUrls(base, ttl, bucket);
+    }
+
+    public ExpiringUrls clock(Clock clock) {
+        this.clock = clock;
+        return this;
+    }
+
+    /**
+     * runs the preparation of the next bucket, default: common fork/join pool
+     */
+    public ExpiringUrls executor(Executor executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * maximum amount of cached urls per bucket, further urls are generated on every call
+     */
+    public ExpiringUrls maximumSize(int maximumSize) {
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("maximumSize must be at least 1");
+        }
+        this.maximumSize = maximumSize;
+        return this;
+    }
+
+    public ExpiringUrls prepareAhead(Duration prepareAhead) {
+        this.prepareAheadSeconds = prepareAhead.getSeconds();
+        return this;
+    }
+
+    public String url(String sourceUrl) {
+        return url(sourceUrl, null);
+    }
+
+    /**
+     * @param imageType could be null
+     */
+    public String url(String sourceUrl, ImageType imageType) {
+        long now = clock.millis() / 1000;
+        Bucket bucket = bucket(now);
+        Key key = new Key(sourceUrl, imageType);
+        String url = bucket.urls.get(key);
+        if (url == null) {
+            url = bucket.template.render(sourceUrl, imageType);
+            bucket.put(key, url, maximumSize);
+        }
+        if (bucket.nextStart - now <= prepareAheadSeconds) {
+            prepareNext(bucket);
+        }
+        return url;
+    }
+
+    /**
+     * @return expiry timestamp of urls generated now
+     */
+    public long getCurrentExpiry() {
+        return bucket(clock.millis() / 1000).expires;
+    }
+
+    private Bucket bucket(long now) {
+        long expires = bucketExpiry(now, ttlSeconds, bucketSeconds);
+        Bucket bucket = current;
+        if (bucket != null && bucket.matches(expires)) {
+            return bucket;
+        }
+        synchronized (this) {
+            bucket = current;
+            if (bucket != null && bucket.matches(expires)) {
+                return bucket;
+            }
+            Bucket prepared = next;
+            bucket = prepared != null && prepared.matches(expires) ? prepared : new Bucket(compile(expires), expires, ttlSeconds);
+            current = bucket;
+            next = null;
+            return bucket;
+        }
+    }
+
+    private void prepareNext(Bucket bucket) {
+        if (!bucket.nextPrepared.compareAndSet(false, true)) {
+            return;
+        }
+        long expires = bucket.expires + bucketSeconds;
+        Bucket prepared = new Bucket(compile(expires), expires, ttlSeconds);
+        executor.execute(() -> {
+            for (Key key : bucket.urls.keySet()) {
+                prepared.put(key, prepared.template.render(key.sourceUrl, key.imageType), maximumSize);
+            }
+            synchronized (this) {
+                if (current == bucket) {
+                    next = prepared;
+                }
+            }
+        });
+    }
+
+    private SignatureTemplate compile(long expires) {
+        return base.copy().expires(expires).compile();
+    }
+
+    /**
+     * @return the smallest multiple of bucket that is more than ttl ahead of now
+     */
+    static long bucketExpiry(long nowSeconds, long ttlSeconds, long bucketSeconds) {
+        return Math.floorDiv(nowSeconds + ttlSeconds, bucketSeconds) * bucketSeconds + bucketSeconds;
+    }
+
+    @EqualsAndHashCode
+    @RequiredArgsConstructor
+    private static final class Key {
+        private final String sourceUrl;
+        private final ImageType imageType;
+    }
+
+    private static final class Bucket {
+
+        private final SignatureTemplate template;
+
+        /**
+         * signer and routing of the configuration when the bucket was created, compared by identity
+         */
+        private final UrlSigner signer;
+
+        private final ConsistentHashRing routing;
+
+        private final long expires;
+
+        /**
+         * second from which on urls get the next expiry
+         */
+        private final long nextStart;
+
+        private final ConcurrentHashMap<Key, String> urls = new ConcurrentHashMap<>();
+
+        private final AtomicInteger size = new AtomicInteger();
+
+        private final AtomicBoolean nextPrepared = new AtomicBoolean();
+
+        Bucket(SignatureTemplate template, long expires, long ttlSeconds) {
+            this.template = template;
+            this.signer = template.getConfiguration().getSigner();
+            this.routing = template.getConfiguration().getRouting();
+            this.expires = expires;
+            this.nextStart = expires - ttlSeconds;
+        }
+
+        /**
+         * @return true for urls with the given expiry signed by the current key and routed by the current ring
+         */
+        boolean matches(long expires) {
+            SignatureConfiguration configuration = template.getConfiguration();
+            return this.expires == expires && signer == configuration.getSigner() && routing == configuration.getRouting();
+        }
+
+        void put(Key key, String url, int maximumSize) {
+            // the bound is approximate under contention, good enough to cap memory
+            if (size.get() < maximumSize && urls.putIfAbsent(key, url) == null) {
+                size.incrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package io.rocketbase.asset.imgproxy;
+
+import io.rocketbase.asset.imgproxy.options.ImageType;
+
+import java.io.IOException;
+
+/**
+ * Url handle that only gets signed when it's actually rendered - the first call of {@link #toString()},
+ * {@link #charAt(int)}, {@link #length()} or an append. Handles that never reach the response (hidden tabs, carousel
+ * slides behind the fold) cost one small object instead of a signature.
+ * <p>
+ * The rendered url is memoized and safe to share across threads. Concurrent first calls may sign twice but always
+ * publish an equal string. Template engines that write {@link CharSequence}s or call toString() can use it like a String.
+ * <p>
+ * usage:
+ * <pre>
+ * LazyUrl url = thumbnail.lazyUrl(SOURCE_URL, ImageType.webp);
+ * url.appendTo(writer); // signs now, later calls reuse the result
+ * </pre>
+ */
+public final class LazyUrl implements CharSequence {
+
+    private final SignatureTemplate template;
+
+    private final String sourceUrl;
+
+    private final ImageType imageType;
+
+    /**
+     * null until rendered, racy single-check - the string is immutable
+     */
+    private volatile String url;
+
+    LazyUrl(SignatureTemplate template, String sourceUrl, ImageType imageType) {
+        if (sourceUrl == null) {
+            throw new IllegalArgumentException("sourceUrl is required");
+        }
+        this.template = template;
+        this.sourceUrl = sourceUrl;
+        this.imageType = imageType;
+    }
+
+    public String getSourceUrl() {
+        return sourceUrl;
+    }
+
+    public ImageType getImageType() {
+        return imageType;
+    }
+
+    /**
+     * @return true when the url has already been signed
+     */
+    public boolean isRendered() {
+        return url != null;
+    }
+
+    @Override
+    public String toString() {
+        String result = url;
+        if (result == null) {
+            result = template.url(sourceUrl, imageType);
+            url = result;
+        }
+        return result;
+    }
+
+    @Override
+    public int length() {
+        return toString().length();
+    }
+
+    @Override
+    public char charAt(int index) {
+        return toString().charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return toString().subSequence(start, end);
+    }
+
+    /**
+     * Writes the url to the given target, e.g. the writer of a template engine, without any further copy.
+     *
+     * @return the given target
+     */
+    public <A extends Appendable> A appendTo(A target) throws IOException {
+        target.append(toString());
+        return target;
+    }
+
+    /**
+     * @return the given builder
+     */
+    public StringBuilder appendTo(StringBuilder target) {
+        return target.append(toString());
+    }
+}
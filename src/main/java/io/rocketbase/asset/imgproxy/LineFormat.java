@@ -0,0 +1,273 @@
+package io.rocketbase.asset.imgproxy;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Row layout of a {@link UrlExport} - a header, one row per source key and a footer.
+ * <p>
+ * Rows are templates with the placeholders {key} (the source key as read from the input) and {url} (the generated url).
+ * Keys are escaped for the format, urls only consist of url safe characters - a baseurl or option path that would need
+ * escaping is rejected when the export starts.
+ * <p>
+ * usage:
+ * <pre>
+ * LineFormat sitemap = LineFormat.xml("&lt;urlset ...&gt;\n",
+ *         "&lt;url&gt;&lt;loc&gt;https://shop.example.com/p/{key}&lt;/loc&gt;&lt;image:image&gt;&lt;image:loc&gt;{url}&lt;/image:loc&gt;&lt;/image:image&gt;&lt;/url&gt;\n",
+ *         "&lt;/urlset&gt;\n");
+ * </pre>
+ */
+public final class LineFormat {
+
+    private enum Escape {
+        NONE,
+        CSV,
+        XML
+    }
+
+    private static final String KEY = "{key}";
+
+    private static final String URL = "{url}";
+
+    private final byte[] header;
+
+    private final byte[] footer;
+
+    /**
+     * literal parts of the row around the placeholders - one more than placeholders
+     */
+    private final byte[][] literals;
+
+    /**
+     * true for a {key}, false for an {url} placeholder
+     */
+    private final boolean[] keys;
+
+    private final int literalLength;
+
+    private final Escape escape;
+
+    private LineFormat(String header, String row, String footer, Escape escape) {
+        if (!row.contains(URL)) {
+            throw new IllegalArgumentException("row needs an {url} placeholder but was " + row);
+        }
+        this.header = header.getBytes(StandardCharsets.UTF_8);
+        this.footer = footer.getBytes(StandardCharsets.UTF_8);
+        this.escape = escape;
+        List<byte[]> literals = new ArrayList<>();
+        List<Boolean> keys = new ArrayList<>();
+        int position = 0;
+        while (true) {
+            int key = row.indexOf(KEY, position);
+            int url = row.indexOf(URL, position);
+            int next = key < 0 ? url : url < 0 ? key : Math.min(key, url);
+            if (next < 0) {
+                break;
+            }
+            literals.add(row.substring(position, next).getBytes(StandardCharsets.UTF_8));
+            keys.add(next == key);
+            position = next + (next == key ? KEY.length() : URL.length());
+        }
+        literals.add(row.substring(position).getBytes(StandardCharsets.UTF_8));
+        this.literals = literals.toArray(new byte[0][]);
+        this.keys = new boolean[keys.size()];
+        int literalLength = 0;
+        for (int i = 0; i < this.keys.length; i++) {
+            this.keys[i] = keys.get(i);
+        }
+        for (byte[] literal : this.literals) {
+            literalLength += literal.length;
+        }
+        this.literalLength = literalLength;
+    }
+
+    /**
+     * one url per line
+     */
+    public static LineFormat plain() {
+        return new LineFormat("", URL + "\n", "", Escape.NONE);
+    }
+
+    /**
+     * source,url with header line, keys are quoted when needed (rfc 4180)
+     */
+    public static LineFormat csv() {
+        return new LineFormat("source,url\n", KEY + "," + URL + "\n", "", Escape.CSV);
+    }
+
+    /**
+     * &lt;images&gt; document with one &lt;image source="{key}"&gt;{url}&lt;/image&gt; per row
+     */
+    public static LineFormat xml() {
+        return new LineFormat("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<images>\n",
+                "  <image source=\"" + KEY + "\">" + URL + "</image>\n", "</images>\n", Escape.XML);
+    }
+
+    /**
+     * custom xml layout like image sitemaps, keys get xml escaped
+     */
+    public static LineFormat xml(String header, String row, String footer) {
+        return new LineFormat(header, row, footer, Escape.XML);
+    }
+
+    /**
+     * custom csv layout, keys get quoted when needed
+     */
+    public static LineFormat csv(String header, String row) {
+        return new LineFormat(header, row, "", Escape.CSV);
+    }
+
+    /**
+     * custom layout without any escaping
+     */
+    public static LineFormat of(String header, String row, String footer) {
+        return new LineFormat(header, row, footer, Escape.NONE);
+    }
+
+    byte[] getHeader() {
+        return header;
+    }
+
+    byte[] getFooter() {
+        return footer;
+    }
+
+    /**
+     * @throws IllegalArgumentException when the given url part contains characters that would need escaping
+     */
+    void checkUrlPart(byte[] part, String name) {
+        for (byte b : part) {
+            if (needsEscaping(b)) {
+                throw new IllegalArgumentException(name + " contains '" + (char) b + "' that would need escaping within the " + escape.name().toLowerCase() + " format");
+            }
+        }
+    }
+
+    int rowLength(int escapedKeyLength, int urlLength) {
+        int length = literalLength;
+        for (boolean isKey : keys) {
+            length += isKey ? escapedKeyLength : urlLength;
+        }
+        return length;
+    }
+
+    /**
+     * @return position after the written row
+     */
+    int writeRow(byte[] destination, int position, byte[] key, int keyOffset, int keyLength, int escapedKeyLength, byte[] url, int urlLength) {
+        for (int i = 0; i < keys.length; i++) {
+            byte[] literal = literals[i];
+            System.arraycopy(literal, 0, destination, position, literal.length);
+            position += literal.length;
+            if (keys[i]) {
+                position = writeKey(destination, position, key, keyOffset, keyLength, escapedKeyLength);
+            } else {
+                System.arraycopy(url, 0, destination, position, urlLength);
+                position += urlLength;
+            }
+        }
+        byte[] last = literals[keys.length];
+        System.arraycopy(last, 0, destination, position, last.length);
+        return position + last.length;
+    }
+
+    /**
+     * @return length of the key once escaped - computed once per row and passed to rowLength and writeRow
+     */
+    int escapedKeyLength(byte[] key, int offset, int length) {
+        switch (escape) {
+            case CSV: {
+                int quotes = 0;
+                boolean quoted = false;
+                for (int i = offset; i < offset + length; i++) {
+                    byte b = key[i];
+                    quotes += b == '"' ? 1 : 0;
+                    quoted |= b == '"' || b == ',' || b == '\n' || b == '\r';
+                }
+                return quoted ? length + quotes + 2 : length;
+            }
+            case XML: {
+                int escaped = 0;
+                for (int i = offset; i < offset + length; i++) {
+                    escaped += xmlLength(key[i]);
+                }
+                return escaped;
+            }
+            default:
+                return length;
+        }
+    }
+
+    private boolean needsEscaping(byte b) {
+        switch (escape) {
+            case CSV:
+                return b == '"' || b == ',' || b == '\n' || b == '\r';
+            case XML:
+                return xmlLength(b) != 1;
+            default:
+                return false;
+        }
+    }
+
+    private static int xmlLength(byte b) {
+        switch (b) {
+            case '&':
+                return 5;
+            case '<':
+            case '>':
+                return 4;
+            case '"':
+            case '\'':
+                return 6;
+            default:
+                return 1;
+        }
+    }
+
+    private int writeKey(byte[] destination, int position, byte[] key, int offset, int length, int escapedLength) {
+        if (escape == Escape.NONE || escapedLength == length) {
+            System.arraycopy(key, offset, destination, position, length);
+            return position + length;
+        }
+        if (escape == Escape.CSV) {
+            destination[position++] = '"';
+            for (int i = offset; i < offset + length; i++) {
+                if (key[i] == '"') {
+                    destination[position++] = '"';
+                }
+                destination[position++] = key[i];
+            }
+            destination[position++] = '"';
+            return position;
+        }
+        for (int i = offset; i < offset + length; i++) {
+            byte b = key[i];
+            String entity;
+            switch (b) {
+                case '&':
+                    entity = "&amp;";
+                    break;
+                case '<':
+                    entity = "&lt;";
+                    break;
+                case '>':
+                    entity = "&gt;";
+                    break;
+                case '"':
+                    entity = "&quot;";
+                    break;
+                case '\'':
+                    entity = "&apos;";
+                    break;
+                default:
+                    destination[position++] = b;
+                    continue;
+            }
+            for (int j = 0; j < entity.length(); j++) {
+                destination[position++] = (byte) entity.charAt(j);
+            }
+        }
+        return position;
+    }
+}
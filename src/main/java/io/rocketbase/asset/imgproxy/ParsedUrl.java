@@ -0,0 +1,194 @@
+package io.rocketbase.asset.imgproxy;
+
+import io.rocketbase.asset.imgproxy.options.ImageType;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Result of {@link SignatureVerifier#verify(String)}.
+ * <p>
+ * Only offsets into the inbound url are kept while verifying, the processing options and the source url are decoded
+ * lazily when they get requested.
+ */
+public final class ParsedUrl {
+
+    private final String url;
+
+    private final boolean valid;
+
+    private final int signatureStart;
+
+    private final int signatureEnd;
+
+    private final int sourceStart;
+
+    private final int sourceEnd;
+
+    private final int extensionStart;
+
+    private final int end;
+
+    private final boolean plain;
+
+    private final boolean encrypted;
+
+    /**
+     * decrypts /enc/ sources, could be null
+     */
+    private final SourceEncryptor encryptor;
+
+    ParsedUrl(String url, boolean valid, int signatureStart, int signatureEnd, int sourceStart, int sourceEnd,
+              int extensionStart, int end, boolean plain, boolean encrypted, SourceEncryptor encryptor) {
+        this.url = url;
+        this.valid = valid;
+        this.signatureStart = signatureStart;
+        this.signatureEnd = signatureEnd;
+        this.sourceStart = sourceStart;
+        this.sourceEnd = sourceEnd;
+        this.extensionStart = extensionStart;
+        this.end = end;
+        this.plain = plain;
+        this.encrypted = encrypted;
+        this.encryptor = encryptor;
+    }
+
+    static ParsedUrl malformed(String url) {
+        return new ParsedUrl(url, false, -1, -1, -1, -1, -1, -1, false, false, null);
+    }
+
+    /**
+     * @return true when the url could be parsed and carries a valid signature for the configuration
+     */
+    public boolean isValid() {
+        return valid;
+    }
+
+    /**
+     * @return true when the url follows the format /%signature/%options/%source but the signature might be wrong
+     */
+    public boolean isWellFormed() {
+        return signatureStart >= 0;
+    }
+
+    /**
+     * @return true for /plain/%source_url@%extension urls
+     */
+    public boolean isPlain() {
+        return plain;
+    }
+
+    /**
+     * @return true for /enc/%encrypted_source_url.%extension urls
+     */
+    public boolean isEncrypted() {
+        return encrypted;
+    }
+
+    public String getSignature() {
+        return isWellFormed() ? url.substring(signatureStart, signatureEnd) : null;
+    }
+
+    /**
+     * @return the signed part of the url - /%options/%source
+     */
+    public String getPath() {
+        return isWellFormed() ? url.substring(signatureEnd, end) : null;
+    }
+
+    /**
+     * @return processing options in url order like "rs:fill:300:400:0"
+     */
+    public List<String> getProcessingOptions() {
+        if (!isWellFormed()) {
+            return Collections.emptyList();
+        }
+        List<String> result = new ArrayList<>();
+        int optionsEnd = sourceStart - (plain ? "/plain/".length() : encrypted ? "/enc/".length() : 1);
+        int position = signatureEnd + 1;
+        while (position < optionsEnd) {
+            int next = url.indexOf('/', position);
+            if (next < 0 || next > optionsEnd) {
+                next = optionsEnd;
+            }
+            result.add(url.substring(position, next));
+            position = next + 1;
+        }
+        return result;
+    }
+
+    /**
+     * @return the decoded source url or null when the url isn't well formed or an encrypted source can't be decrypted
+     */
+    public String getSourceUrl() {
+        if (!isWellFormed()) {
+            return null;
+        }
+        if (plain) {
+            return percentDecode(url, sourceStart, sourceEnd);
+        }
+        byte[] decoded = new byte[UrlCodec.maxDecodedLength(sourceEnd - sourceStart)];
+        int length = UrlCodec.decodeBase64Url(url, sourceStart, sourceEnd, decoded, 0);
+        if (length < 0) {
+            return null;
+        }
+        if (encrypted) {
+            byte[] decrypted = encryptor != null ? encryptor.decrypt(decoded, length) : null;
+            return decrypted != null ? new String(decrypted, StandardCharsets.UTF_8) : null;
+        }
+        return new String(decoded, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the requested extension or null when the url doesn't contain one
+     */
+    public String getExtension() {
+        return extensionStart >= 0 ? url.substring(extensionStart, end) : null;
+    }
+
+    /**
+     * @return the requested image type or null when there is no or an unknown extension
+     */
+    public ImageType getImageType() {
+        if (extensionStart < 0) {
+            return null;
+        }
+        int length = end - extensionStart;
+        for (ImageType imageType : ImageType.values()) {
+            String name = imageType.name();
+            if (name.length() == length && url.regionMatches(extensionStart, name, 0, length)) {
+                return imageType;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return "ParsedUrl{valid=" + valid + ", url=" + url + "}";
+    }
+
+    private static String percentDecode(String value, int from, int to) {
+        if (value.indexOf('%', from) < 0 || value.indexOf('%', from) >= to) {
+            return value.substring(from, to);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(to - from);
+        byte[] buffer = new byte[4];
+        for (int i = from; i < to; i++) {
+            char c = value.charAt(i);
+            if (c == '%' && i + 2 < to && Character.digit(value.charAt(i + 1), 16) >= 0 && Character.digit(value.charAt(i + 2), 16) >= 0) {
+                out.write(Character.digit(value.charAt(i + 1), 16) << 4 | Character.digit(value.charAt(i + 2), 16));
+                i += 2;
+            } else {
+                int charEnd = Character.isHighSurrogate(c) && i + 1 < to ? i + 2 : i + 1;
+                int length = UrlCodec.encodeUtf8(value, i, charEnd, buffer, 0);
+                out.write(buffer, 0, length);
+                i = charEnd - 1;
+            }
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,356 @@
+package io.rocketbase.asset.imgproxy;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Client side copy of the presets configured on the imgproxy server (IMGPROXY_PRESETS).
+ * <p>
+ * Registered via {@link SignatureConfiguration#presets(PresetRegistry)} every compiled {@link SignatureTemplate} replaces
+ * options that are completely covered by presets with pr:%name. Out of all matching presets the combination with the
+ * shortest resulting path is picked. Presets are rendered in front of all other options, so remaining options still
+ * override them like before. Sizing options (rs, s, rt, w, h, el, ex) override each other, so they are only moved into
+ * presets when the chosen presets carry the leading sizing options of the chain in the same order.
+ * <p>
+ * The search result is remembered per option path, so repeated urls with the same options only pay for a map lookup.
+ * <p>
+ * usage:
+ * <pre>
+ * PresetRegistry presets = PresetRegistry.parse("thumb=rs:fill:300:400:0/g:sm,web=q:80/bg:ffffff");
+ * SignatureConfiguration configuration = new SignatureConfiguration(baseurl, key, salt).presets(presets);
+ * // /pr:thumb:web/w:320/...
+ * Signature.of(configuration).resize(ResizeType.fill, 300, 400, false).gravity(GravityType.sm).quality(80).background("ffffff").width(320)
+ * </pre>
+ */
+public final class PresetRegistry {
+
+    /**
+     * exhaustive search up to this amount of matching presets, greedy above
+     */
+    static final int EXHAUSTIVE_LIMIT = 12;
+
+    /**
+     * remembered substitutions before the memo gets cleared
+     */
+    static final int MAXIMUM_SUBSTITUTIONS = 4096;
+
+    private static final Map<String, String> SHORTCUTS = new HashMap<>();
+
+    private static final Set<String> SIZING = new HashSet<>(Arrays.asList("rs", "s", "rt", "w", "h", "el", "ex"));
+
+    static {
+        String[][] shortcuts = {
+                {"resize", "rs"}, {"size", "s"}, {"resizing_type", "rt"}, {"width", "w"}, {"height", "h"},
+                {"enlarge", "el"}, {"extend", "ex"}, {"gravity", "g"}, {"crop", "c"}, {"quality", "q"},
+                {"background", "bg"}, {"blur", "bl"}, {"sharpen", "sh"}, {"watermark", "wm"}, {"preset", "pr"},
+                {"cachebuster", "cb"}, {"filename", "fn"}, {"format", "f"}, {"expires", "exp"}
+        };
+        for (String[] shortcut : shortcuts) {
+            SHORTCUTS.put(shortcut[0], shortcut[1]);
+        }
+    }
+
+    private volatile List<Preset> presets = Collections.emptyList();
+
+    private volatile ConcurrentHashMap<String, String> substitutions = new ConcurrentHashMap<>();
+
+    public static PresetRegistry create() {
+        return new PresetRegistry();
+    }
+
+    /**
+     * @param definitions same format as IMGPROXY_PRESETS like "thumb=rs:fill:300:300/q:80,sharp=sharpen:0.7"
+     */
+    public static PresetRegistry parse(String definitions) {
+        PresetRegistry registry = new PresetRegistry();
+        for (String definition : definitions.split(",")) {
+            String trimmed = definition.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            int separator = trimmed.indexOf('=');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("preset definition needs the format name=options but was " + trimmed);
+            }
+            registry.define(trimmed.substring(0, separator), trimmed.substring(separator + 1).split("/"));
+        }
+        return registry;
+    }
+
+    /**
+     * Registers a preset. Options can use full names or shortcuts like on the server (resizing_type:fill or rt:fill).
+     * The default preset is ignored since imgproxy applies it to every url anyway.
+     */
+    public synchronized PresetRegistry define(String name, String... options) {
+        if ("default".equals(name)) {
+            return this;
+        }
+        Set<String> normalized = new LinkedHashSet<>();
+        for (String option : options) {
+            if (!option.isEmpty()) {
+                normalized.add(normalize(option));
+            }
+        }
+        if (normalized.isEmpty()) {
+            throw new IllegalArgumentException("preset " + name + " needs at least one option");
+        }
+        List<Preset> updated = new ArrayList<>(presets.size() + 1);
+        for (Preset preset : presets) {
+            if (!preset.name.equals(name)) {
+                updated.add(preset);
+            }
+        }
+        updated.add(new Preset(name, normalized));
+        presets = Collections.unmodifiableList(updated);
+        // written after the presets, so a reader that sees the new memo also sees the new presets
+        substitutions = new ConcurrentHashMap<>();
+        return this;
+    }
+
+    public int size() {
+        return presets.size();
+    }
+
+    /**
+     * @param optionPath joined options in canonical order like /rs:fill:300:400:0/q:80
+     * @return the shortest equivalent option path using the registered presets
+     */
+    String substitute(String optionPath) {
+        ConcurrentHashMap<String, String> substitutions = this.substitutions;
+        List<Preset> presets = this.presets;
+        if (presets.isEmpty() || optionPath.isEmpty()) {
+            return optionPath;
+        }
+        String substituted = substitutions.get(optionPath);
+        if (substituted == null) {
+            substituted = search(optionPath, presets);
+            if (substitutions.size() >= MAXIMUM_SUBSTITUTIONS) {
+                substitutions.clear();
+            }
+            substitutions.put(optionPath, substituted);
+        }
+        return substituted;
+    }
+
+    int memoized() {
+        return substitutions.size();
+    }
+
+    private static String search(String optionPath, List<Preset> presets) {
+        List<String> options = new ArrayList<>(Arrays.asList(optionPath.substring(1).split("/")));
+        String explicitPresets = null;
+        if (options.get(0).startsWith("pr:")) {
+            explicitPresets = options.remove(0);
+        }
+        Set<String> available = new LinkedHashSet<>(options);
+        List<String> sizing = sizing(options);
+        List<Preset> candidates = new ArrayList<>();
+        for (Preset preset : presets) {
+            if (available.containsAll(preset.options) &&
+                    (explicitPresets == null || !containsPreset(explicitPresets, preset.name))) {
+                candidates.add(preset);
+            }
+        }
+        if (candidates.isEmpty()) {
+            return optionPath;
+        }
+        List<Preset> chosen = candidates.size() <= EXHAUSTIVE_LIMIT ?
+                exhaustive(candidates, options, sizing, explicitPresets) :
+                greedy(candidates, options, sizing, explicitPresets);
+        if (chosen.isEmpty()) {
+            return optionPath;
+        }
+        return render(chosen, options, explicitPresets);
+    }
+
+    private static List<Preset> exhaustive(List<Preset> candidates, List<String> options, List<String> sizing, String explicitPresets) {
+        List<Preset> best = Collections.emptyList();
+        int bestLength = length(best, options, explicitPresets);
+        List<Preset> subset = new ArrayList<>(candidates.size());
+        for (int mask = 1; mask < 1 << candidates.size(); mask++) {
+            subset.clear();
+            for (int i = 0; i < candidates.size(); i++) {
+                if ((mask & 1 << i) != 0) {
+                    subset.add(candidates.get(i));
+                }
+            }
+            if (!leadsSizing(subset, sizing)) {
+                continue;
+            }
+            int length = length(subset, options, explicitPresets);
+            // masks count upwards, so on equal length the earlier registered presets win
+            if (length < bestLength || length == bestLength && subset.size() < best.size() && !best.isEmpty()) {
+                best = new ArrayList<>(subset);
+                bestLength = length;
+            }
+        }
+        return best;
+    }
+
+    private static List<Preset> greedy(List<Preset> candidates, List<String> options, List<String> sizing, String explicitPresets) {
+        List<Preset> chosen = new ArrayList<>();
+        int length = length(chosen, options, explicitPresets);
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            Preset best = null;
+            for (Preset candidate : candidates) {
+                if (chosen.contains(candidate)) {
+                    continue;
+                }
+                chosen.add(candidate);
+                if (!leadsSizing(chosen, sizing)) {
+                    chosen.remove(chosen.size() - 1);
+                    continue;
+                }
+                int candidateLength = length(chosen, options, explicitPresets);
+                chosen.remove(chosen.size() - 1);
+                if (candidateLength < length) {
+                    length = candidateLength;
+                    best = candidate;
+                }
+            }
+            if (best != null) {
+                chosen.add(best);
+                improved = true;
+            }
+        }
+        return chosen;
+    }
+
+    private static List<String> sizing(Iterable<String> options) {
+        List<String> result = new ArrayList<>();
+        for (String option : options) {
+            int separator = option.indexOf(':');
+            if (SIZING.contains(separator > 0 ? option.substring(0, separator) : option)) {
+                result.add(option);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * imgproxy applies options in url order and presets in the given order - the sizing options of the presets together
+     * have to be the leading sizing options of the chain, otherwise remaining ones would be applied in a different order
+     */
+    private static boolean leadsSizing(List<Preset> chosen, List<String> chainSizing) {
+        int position = 0;
+        for (Preset preset : chosen) {
+            for (String option : preset.sizing) {
+                if (position >= chainSizing.size() || !chainSizing.get(position++).equals(option)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * length of the rendered path without building it
+     */
+    private static int length(List<Preset> chosen, List<String> options, String explicitPresets) {
+        int length = 0;
+        for (String option : options) {
+            if (!covered(chosen, option)) {
+                length += 1 + option.length();
+            }
+        }
+        if (explicitPresets != null) {
+            length += 1 + explicitPresets.length();
+        } else if (!chosen.isEmpty()) {
+            length += "/pr".length();
+        }
+        for (Preset preset : chosen) {
+            length += 1 + preset.name.length();
+        }
+        return length;
+    }
+
+    private static String render(List<Preset> chosen, List<String> options, String explicitPresets) {
+        StringBuilder builder = new StringBuilder();
+        builder.append('/')
+                .append(explicitPresets != null ? explicitPresets : "pr");
+        for (Preset preset : chosen) {
+            builder.append(':').append(preset.name);
+        }
+        for (String option : options) {
+            if (!covered(chosen, option)) {
+                builder.append('/').append(option);
+            }
+        }
+        return builder.toString();
+    }
+
+    private static boolean covered(List<Preset> chosen, String option) {
+        for (Preset preset : chosen) {
+            if (preset.options.contains(option)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean containsPreset(String explicitPresets, String name) {
+        return Arrays.asList(explicitPresets.substring(3).split(":")).contains(name);
+    }
+
+    /**
+     * converts full option names to the shortcuts and boolean arguments to 1/0 like {@link Signature} renders them
+     */
+    public static String normalize(String option) {
+        String[] parts = option.trim().split(":", -1);
+        String name = SHORTCUTS.getOrDefault(parts[0], parts[0]);
+        StringBuilder builder = new StringBuilder(name);
+        for (int i = 1; i < parts.length; i++) {
+            builder.append(':').append(isFlag(name, i) ? normalizeFlag(parts[i]) : parts[i]);
+        }
+        return builder.toString();
+    }
+
+    private static boolean isFlag(String name, int position) {
+        switch (name) {
+            case "el":
+            case "ex":
+                return position == 1;
+            case "s":
+                return position >= 3;
+            case "rs":
+                return position >= 4;
+            default:
+                return false;
+        }
+    }
+
+    private static String normalizeFlag(String value) {
+        switch (value) {
+            case "true":
+            case "t":
+                return "1";
+            case "false":
+            case "f":
+                return "0";
+            default:
+                return value;
+        }
+    }
+
+    private static final class Preset {
+        private final String name;
+        private final Set<String> options;
+        private final List<String> sizing;
+
+        Preset(String name, Set<String> options) {
+            this.name = name;
+            this.options = options;
+            this.sizing = sizing(options);
+        }
+    }
+}
@@ -0,0 +1,457 @@
+package io.rocketbase.asset.imgproxy;
+
+import io.rocketbase.asset.imgproxy.options.GravityType;
+import io.rocketbase.asset.imgproxy.options.ResizeType;
+import io.rocketbase.asset.imgproxy.options.WatermarkPositionType;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Typed processing options of a {@link Signature} with one slot per option kind.
+ * <p>
+ * Setting an option again replaces the previous value and the path is always rendered in the same canonical order, so
+ * chains with the same intent produce identical bytes regardless of the call order. Meta-options (rs, s) are ordered in
+ * front of the options they combine - setting a meta-option clears the single options it overrides, so the rendered
+ * path keeps the semantics of the call order. Numbers and flags are kept unboxed until rendering.
+ */
+final class ProcessingOptions implements Cloneable {
+
+    static final int UNSET = Integer.MIN_VALUE;
+
+    static final long UNSET_EXPIRES = Long.MIN_VALUE;
+
+    /**
+     * omitted flag
+     */
+    static final byte NONE = -1;
+
+    private List<String> presets;
+
+    private ResizeType metaResizingType;
+    private int metaResizeWidth;
+    private int metaResizeHeight;
+    private byte metaResizeEnlarge = NONE;
+    private byte metaResizeExtend = NONE;
+
+    private boolean metaSize;
+    private int metaSizeWidth;
+    private int metaSizeHeight;
+    private byte metaSizeEnlarge = NONE;
+    private byte metaSizeExtend = NONE;
+
+    private ResizeType resizingType;
+    private int width = UNSET;
+    private int height = UNSET;
+    private byte enlarge = NONE;
+    private byte extend = NONE;
+
+    /**
+     * NaN when unset, dpr(boolean) is stored as 1 or 0
+     */
+    private double dpr = Double.NaN;
+
+    private Gravity gravity = new Gravity();
+
+    private boolean crop;
+    private int cropWidth;
+    private int cropHeight;
+    private Gravity cropGravity = new Gravity();
+
+    private int quality = UNSET;
+
+    private int backgroundRed = UNSET;
+    private int backgroundGreen;
+    private int backgroundBlue;
+    private String backgroundHex;
+
+    private int blur = UNSET;
+
+    private int sharpen = UNSET;
+
+    private double watermarkOpacity = Double.NaN;
+    private WatermarkPositionType watermarkPosition;
+    private int watermarkOffsetX = UNSET;
+    private int watermarkOffsetY;
+    private double watermarkScale = Double.NaN;
+
+    private String format;
+
+    private String filename;
+
+    private String cachebuster;
+
+    /**
+     * unix timestamp in seconds, {@link #UNSET_EXPIRES} when unset
+     */
+    private long expires = UNSET_EXPIRES;
+
+    /**
+     * adds presets in front of all other options, presets combine instead of replacing each other
+     */
+    void preset(String... presetNames) {
+        if (presets == null) {
+            presets = new ArrayList<>(presetNames.length);
+        }
+        for (String presetName : presetNames) {
+            if (!presets.contains(presetName)) {
+                presets.add(presetName);
+            }
+        }
+    }
+
+    /**
+     * rs meta-option, enlarge and extend are {@link #NONE} when omitted
+     */
+    void resize(ResizeType resizingType, int width, int height, byte enlarge, byte extend) {
+        if (metaSize) {
+            // rs is rendered in front of s - keep only the parts of s that rs doesn't override
+            if (enlarge == NONE && metaSizeEnlarge != NONE && this.enlarge == NONE) {
+                this.enlarge = metaSizeEnlarge;
+            }
+            if (extend == NONE && metaSizeExtend != NONE && this.extend == NONE) {
+                this.extend = metaSizeExtend;
+            }
+            metaSize = false;
+        }
+        this.metaResizingType = resizingType;
+        this.metaResizeWidth = width;
+        this.metaResizeHeight = height;
+        this.metaResizeEnlarge = enlarge;
+        this.metaResizeExtend = extend;
+        this.resizingType = null;
+        clearDimensions(enlarge, extend);
+    }
+
+    /**
+     * s meta-option, enlarge and extend are {@link #NONE} when omitted
+     */
+    void size(int width, int height, byte enlarge, byte extend) {
+        this.metaSize = true;
+        this.metaSizeWidth = width;
+        this.metaSizeHeight = height;
+        this.metaSizeEnlarge = enlarge;
+        this.metaSizeExtend = extend;
+        clearDimensions(enlarge, extend);
+    }
+
+    private void clearDimensions(byte enlarge, byte extend) {
+        this.width = UNSET;
+        this.height = UNSET;
+        if (enlarge != NONE) {
+            this.enlarge = NONE;
+        }
+        if (extend != NONE) {
+            this.extend = NONE;
+        }
+    }
+
+    void resizingType(ResizeType resizingType) {
+        this.resizingType = resizingType;
+    }
+
+    void width(int width) {
+        this.width = width;
+    }
+
+    void height(int height) {
+        this.height = height;
+    }
+
+    void enlarge(boolean enlarge) {
+        this.enlarge = flag(enlarge);
+    }
+
+    void extend(boolean extend) {
+        this.extend = flag(extend);
+    }
+
+    void dpr(double dpr) {
+        this.dpr = dpr;
+    }
+
+    Gravity gravity() {
+        return gravity;
+    }
+
+    /**
+     * c option, configure its gravity via the returned slot
+     */
+    Gravity crop(int width, int height) {
+        this.crop = true;
+        this.cropWidth = width;
+        this.cropHeight = height;
+        cropGravity.clear();
+        return cropGravity;
+    }
+
+    void quality(int quality) {
+        this.quality = quality;
+    }
+
+    void background(int red, int green, int blue) {
+        this.backgroundRed = red;
+        this.backgroundGreen = green;
+        this.backgroundBlue = blue;
+        this.backgroundHex = null;
+    }
+
+    void background(String hexColor) {
+        this.backgroundRed = UNSET;
+        this.backgroundHex = hexColor;
+    }
+
+    void blur(int sigma) {
+        this.blur = sigma;
+    }
+
+    void sharpen(int sigma) {
+        this.sharpen = sigma;
+    }
+
+    /**
+     * position could be null, offsetX {@link #UNSET} and scale NaN when omitted
+     */
+    void watermark(double opacity, WatermarkPositionType position, int offsetX, int offsetY, double scale) {
+        this.watermarkOpacity = opacity;
+        this.watermarkPosition = position;
+        this.watermarkOffsetX = offsetX;
+        this.watermarkOffsetY = offsetY;
+        this.watermarkScale = scale;
+    }
+
+    void format(String format) {
+        this.format = format;
+    }
+
+    void filename(String filename) {
+        this.filename = filename;
+    }
+
+    void cachebuster(String cachebuster) {
+        this.cachebuster = cachebuster;
+    }
+
+    void expires(long unixSeconds) {
+        this.expires = unixSeconds;
+    }
+
+    /**
+     * @return amount of options that get rendered
+     */
+    int count() {
+        int count = 0;
+        count += presets != null && !presets.isEmpty() ? 1 : 0;
+        count += metaResizingType != null ? 1 : 0;
+        count += metaSize ? 1 : 0;
+        count += resizingType != null ? 1 : 0;
+        count += width != UNSET ? 1 : 0;
+        count += height != UNSET ? 1 : 0;
+        count += enlarge != NONE ? 1 : 0;
+        count += extend != NONE ? 1 : 0;
+        count += !Double.isNaN(dpr) ? 1 : 0;
+        count += gravity.isSet() ? 1 : 0;
+        count += crop ? 1 : 0;
+        count += quality != UNSET ? 1 : 0;
+        count += backgroundRed != UNSET || backgroundHex != null ? 1 : 0;
+        count += blur != UNSET ? 1 : 0;
+        count += sharpen != UNSET ? 1 : 0;
+        count += !Double.isNaN(watermarkOpacity) ? 1 : 0;
+        count += format != null ? 1 : 0;
+        count += filename != null ? 1 : 0;
+        count += cachebuster != null ? 1 : 0;
+        count += expires != UNSET_EXPIRES ? 1 : 0;
+        return count;
+    }
+
+    /**
+     * appends all options in canonical order, each with a leading slash
+     */
+    StringBuilder appendTo(StringBuilder out) {
+        if (presets != null && !presets.isEmpty()) {
+            out.append("/pr");
+            for (String preset : presets) {
+                out.append(':').append(preset);
+            }
+        }
+        if (metaResizingType != null) {
+            out.append("/rs:").append(metaResizingType.name()).append(':').append(metaResizeWidth).append(':').append(metaResizeHeight);
+            appendFlags(out, metaResizeEnlarge, metaResizeExtend);
+        }
+        if (metaSize) {
+            out.append("/s:").append(metaSizeWidth).append(':').append(metaSizeHeight);
+            appendFlags(out, metaSizeEnlarge, metaSizeExtend);
+        }
+        if (resizingType != null) {
+            out.append("/rt:").append(resizingType.name());
+        }
+        if (width != UNSET) {
+            out.append("/w:").append(width);
+        }
+        if (height != UNSET) {
+            out.append("/h:").append(height);
+        }
+        if (enlarge != NONE) {
+            out.append("/el:").append(enlarge);
+        }
+        if (extend != NONE) {
+            out.append("/ex:").append(extend);
+        }
+        if (!Double.isNaN(dpr)) {
+            out.append("/dpr:");
+            if (dpr == Math.rint(dpr)) {
+                out.append((long) dpr);
+            } else {
+                out.append(dpr);
+            }
+        }
+        if (gravity.isSet()) {
+            gravity.appendTo(out.append("/g:"));
+        }
+        if (crop) {
+            out.append("/c:").append(cropWidth).append(':').append(cropHeight);
+            if (cropGravity.isSet()) {
+                cropGravity.appendTo(out.append(':'));
+            }
+        }
+        if (quality != UNSET) {
+            out.append("/q:").append(quality);
+        }
+        if (backgroundHex != null) {
+            out.append("/bg:").append(backgroundHex);
+        } else if (backgroundRed != UNSET) {
+            out.append("/bg:").append(backgroundRed).append(':').append(backgroundGreen).append(':').append(backgroundBlue);
+        }
+        if (blur != UNSET) {
+            out.append("/bl:").append(blur);
+        }
+        if (sharpen != UNSET) {
+            out.append("/sh:").append(sharpen);
+        }
+        if (!Double.isNaN(watermarkOpacity)) {
+            out.append("/wm:").append(watermarkOpacity);
+            if (watermarkPosition != null) {
+                out.append(':').append(watermarkPosition.name());
+                if (watermarkOffsetX != UNSET) {
+                    out.append(':').append(watermarkOffsetX).append(':').append(watermarkOffsetY);
+                    if (!Double.isNaN(watermarkScale)) {
+                        out.append(':').append(watermarkScale);
+                    }
+                }
+            }
+        }
+        if (format != null) {
+            out.append("/f:").append(format);
+        }
+        if (filename != null) {
+            out.append("/fn:").append(filename);
+        }
+        if (cachebuster != null) {
+            out.append("/cb:").append(cachebuster);
+        }
+        if (expires != UNSET_EXPIRES) {
+            out.append("/exp:").append(expires);
+        }
+        return out;
+    }
+
+    /**
+     * @return joined options including the leading slash, empty when no option has been set
+     */
+    String toPath() {
+        return appendTo(new StringBuilder(64)).toString();
+    }
+
+    ProcessingOptions copy() {
+        try {
+            ProcessingOptions copy = (ProcessingOptions) super.clone();
+            copy.presets = presets != null ? new ArrayList<>(presets) : null;
+            copy.gravity = gravity.copy();
+            copy.cropGravity = cropGravity.copy();
+            return copy;
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static byte flag(boolean value) {
+        return value ? (byte) 1 : (byte) 0;
+    }
+
+    private static void appendFlags(StringBuilder out, byte enlarge, byte extend) {
+        if (enlarge != NONE) {
+            out.append(':').append(enlarge);
+            if (extend != NONE) {
+                out.append(':').append(extend);
+            }
+        }
+    }
+
+    /**
+     * gravity arguments shared by g and c - either a type, a type with offsets or a focus point
+     */
+    static final class Gravity {
+
+        private GravityType type;
+
+        private boolean focusPoint;
+
+        private int offsetX = UNSET;
+
+        private int offsetY;
+
+        private double focalX;
+
+        private double focalY;
+
+        void type(GravityType type) {
+            clear();
+            this.type = type;
+        }
+
+        void offset(GravityType type, int offsetX, int offsetY) {
+            type(type);
+            this.offsetX = offsetX;
+            this.offsetY = offsetY;
+        }
+
+        void focusPoint(double focalX, double focalY) {
+            clear();
+            this.focusPoint = true;
+            this.focalX = focalX;
+            this.focalY = focalY;
+        }
+
+        boolean isSet() {
+            return type != null || focusPoint;
+        }
+
+        void clear() {
+            type = null;
+            focusPoint = false;
+            offsetX = UNSET;
+        }
+
+        void appendTo(StringBuilder out) {
+            if (focusPoint) {
+                out.append("fp:").append(focalX).append(':').append(focalY);
+                return;
+            }
+            out.append(type.name());
+            if (offsetX != UNSET) {
+                out.append(':').append(offsetX).append(':').append(offsetY);
+            }
+        }
+
+        Gravity copy() {
+            Gravity copy = new Gravity();
+            copy.type = type;
+            copy.focusPoint = focusPoint;
+            copy.offsetX = offsetX;
+            copy.offsetY = offsetY;
+            copy.focalX = focalX;
+            copy.focalY = focalY;
+            return copy;
+        }
+    }
+}
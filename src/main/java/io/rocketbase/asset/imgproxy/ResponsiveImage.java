@@ -0,0 +1,129 @@
+package io.rocketbase.asset.imgproxy;
+
+import io.rocketbase.asset.imgproxy.options.ImageType;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.ToString;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * All generated urls of one source url rendered via {@link VariantMatrix#render(String)}.
+ */
+@Getter
+@ToString
+@RequiredArgsConstructor
+public final class ResponsiveImage {
+
+    private final String sourceUrl;
+
+    /**
+     * image types in order of preference, null stands for the source type without extension
+     */
+    private final List<ImageType> imageTypes;
+
+    private final List<Variant> variants;
+
+    /**
+     * @return all variants of the given image type in matrix order
+     */
+    public List<Variant> getVariants(ImageType imageType) {
+        List<Variant> result = new ArrayList<>();
+        for (Variant variant : variants) {
+            if (variant.getImageType() == imageType) {
+                result.add(variant);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * srcset attribute value for the given image type, like "http://.../w:320/... 320w, http://.../w:640/... 640w"
+     * <p>
+     * widths use w descriptors (width * dpr), variants without width use x descriptors. Variants that end up with the
+     * same descriptor are only listed once.
+     */
+    public String srcset(ImageType imageType) {
+        StringBuilder builder = new StringBuilder();
+        Set<String> descriptors = new HashSet<>();
+        for (Variant variant : getVariants(imageType)) {
+            String descriptor = variant.getDescriptor();
+            if (!descriptors.add(descriptor)) {
+                continue;
+            }
+            if (builder.length() > 0) {
+                builder.append(", ");
+            }
+            builder.append(variant.getUrl())
+                    .append(' ')
+                    .append(descriptor);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * @return one picture source per image type in order of preference
+     */
+    public List<Source> sources() {
+        List<Source> result = new ArrayList<>(imageTypes.size());
+        for (ImageType imageType : imageTypes) {
+            result.add(new Source(imageType, imageType != null ? imageType.getMimeType() : null, srcset(imageType)));
+        }
+        return result;
+    }
+
+    @Getter
+    @ToString
+    @RequiredArgsConstructor
+    public static final class Variant {
+
+        /**
+         * requested width, 0 when the matrix has no widths
+         */
+        private final int width;
+
+        private final double dpr;
+
+        /**
+         * could be null
+         */
+        private final ImageType imageType;
+
+        private final String url;
+
+        /**
+         * srcset descriptor like "640w" or "2x"
+         */
+        public String getDescriptor() {
+            if (width > 0) {
+                return Math.round(width * dpr) + "w";
+            }
+            return (dpr == Math.rint(dpr) ? String.valueOf((long) dpr) : String.format(Locale.ROOT, "%s", dpr)) + "x";
+        }
+    }
+
+    /**
+     * data of a picture source element
+     */
+    @Getter
+    @ToString
+    @RequiredArgsConstructor
+    public static final class Source {
+
+        /**
+         * could be null
+         */
+        private final ImageType imageType;
+
+        /**
+         * mime type for the type attribute, null for the source type
+         */
+        private final String type;
+
+        private final String srcset;
+    }
+}
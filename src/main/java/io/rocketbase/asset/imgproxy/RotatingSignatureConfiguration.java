@@ -0,0 +1,225 @@
+package io.rocketbase.asset.imgproxy;
+
+import io.rocketbase.asset.imgproxy.instrumentation.UrlListener;
+import lombok.RequiredArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * {@link SignatureConfiguration} with hot-swappable key material for secret rotation.
+ * <p>
+ * Urls are always signed with the current key/salt pair while {@link SignatureVerifier} accepts every pair of the
+ * accepted set - the same way imgproxy handles multiple IMGPROXY_KEY/IMGPROXY_SALT pairs. The key ring is immutable and
+ * published via an atomic reference, so a rotation reaches all threads without locks. The hmac state of a new pair is
+ * prepared before it gets published.
+ * <p>
+ * typical rotation:
+ * <pre>
+ * configuration.accept(newKey, newSalt);  // 1. imgproxy knows the new pair, urls are still signed with the old one
+ * configuration.rotate(newKey, newSalt);  // 2. sign with the new pair, the old one stays accepted
+ * configuration.retire(oldKey, oldSalt);  // 3. once cached urls have expired
+ * </pre>
+ * Instances are compared by identity since their key material changes over time.
+ */
+public class RotatingSignatureConfiguration extends SignatureConfiguration {
+
+    private final AtomicReference<KeyRing> keyRing;
+
+    public RotatingSignatureConfiguration(String baseurl, String key, String salt) {
+        super(baseurl, key, salt);
+        if (key == null || salt == null) {
+            throw new IllegalArgumentException("key and salt are required for rotation");
+        }
+        KeyPair initial = new KeyPair(key, salt, UrlSigner.of(key, salt));
+        this.keyRing = new AtomicReference<>(new KeyRing(initial, Collections.singletonList(initial)));
+    }
+
+    /**
+     * Signs all further urls with the given pair. It gets accepted if it wasn't before, previous pairs stay accepted.
+     */
+    public RotatingSignatureConfiguration rotate(String key, String salt) {
+        KeyPair prepared = prepare(key, salt);
+        keyRing.updateAndGet(ring -> new KeyRing(ring.find(key, salt, prepared), ring.withAccepted(prepared)));
+        return this;
+    }
+
+    /**
+     * Accepts the given pair on verification without signing with it.
+     */
+    public RotatingSignatureConfiguration accept(String key, String salt) {
+        KeyPair prepared = prepare(key, salt);
+        keyRing.updateAndGet(ring -> new KeyRing(ring.current, ring.withAccepted(prepared)));
+        return this;
+    }
+
+    /**
+     * Stops accepting the given pair.
+     *
+     * @throws IllegalStateException when the pair is still used for signing
+     */
+    public RotatingSignatureConfiguration retire(String key, String salt) {
+        keyRing.updateAndGet(ring -> {
+            if (ring.current.matches(key, salt)) {
+                throw new IllegalStateException("current signing key can't be retired - rotate first");
+            }
+            List<KeyPair> accepted = new ArrayList<>(ring.accepted.size());
+            for (KeyPair pair : ring.accepted) {
+                if (!pair.matches(key, salt)) {
+                    accepted.add(pair);
+                }
+            }
+            return new KeyRing(ring.current, Collections.unmodifiableList(accepted));
+        });
+        return this;
+    }
+
+    /**
+     * @return key currently used for signing
+     */
+    @Override
+    public String getKey() {
+        return keyRing.get().current.key;
+    }
+
+    /**
+     * @return salt currently used for signing
+     */
+    @Override
+    public String getSalt() {
+        return keyRing.get().current.salt;
+    }
+
+    /**
+     * @return amount of accepted key/salt pairs including the current one
+     */
+    public int getAcceptedKeyCount() {
+        return keyRing.get().accepted.size();
+    }
+
+    @Override
+    UrlSigner getSigner() {
+        return keyRing.get().current.signer;
+    }
+
+    @Override
+    List<UrlSigner> getAcceptedSigners() {
+        return keyRing.get().signers;
+    }
+
+    @Override
+    public RotatingSignatureConfiguration numberOfSignatureBytes(int numberOfSignatureBytes) {
+        super.numberOfSignatureBytes(numberOfSignatureBytes);
+        return this;
+    }
+
+    @Override
+    public RotatingSignatureConfiguration sourceUrlEncryptionKey(String sourceUrlEncryptionKey) {
+        super.sourceUrlEncryptionKey(sourceUrlEncryptionKey);
+        return this;
+    }
+
+    @Override
+    public RotatingSignatureConfiguration listener(UrlListener listener) {
+        super.listener(listener);
+        return this;
+    }
+
+    @Override
+    public RotatingSignatureConfiguration presets(PresetRegistry presets) {
+        super.presets(presets);
+        return this;
+    }
+
+    @Override
+    public RotatingSignatureConfiguration sizeSnapping(SizeSnapping sizeSnapping) {
+        super.sizeSnapping(sizeSnapping);
+        return this;
+    }
+
+    @Override
+    public RotatingSignatureConfiguration routing(ConsistentHashRing routing) {
+        super.routing(routing);
+        return this;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o;
+    }
+
+    @Override
+    protected boolean canEqual(Object other) {
+        return this == other;
+    }
+
+    @Override
+    public int hashCode() {
+        return System.identityHashCode(this);
+    }
+
+    private KeyPair prepare(String key, String salt) {
+        if (key == null || salt == null) {
+            throw new IllegalArgumentException("key and salt are required");
+        }
+        KeyPair existing = keyRing.get().find(key, salt, null);
+        // the key schedule runs before publishing, threads only clone the prepared state afterwards
+        return existing != null ? existing : new KeyPair(key, salt, UrlSigner.of(key, salt));
+    }
+
+    @RequiredArgsConstructor
+    private static final class KeyPair {
+        private final String key;
+        private final String salt;
+        private final UrlSigner signer;
+
+        boolean matches(String key, String salt) {
+            return this.key.equals(key) && this.salt.equals(salt);
+        }
+    }
+
+    private static final class KeyRing {
+
+        private final KeyPair current;
+
+        private final List<KeyPair> accepted;
+
+        /**
+         * signers of accepted - current first
+         */
+        private final List<UrlSigner> signers;
+
+        KeyRing(KeyPair current, List<KeyPair> accepted) {
+            this.current = current;
+            this.accepted = accepted;
+            List<UrlSigner> signers = new ArrayList<>(accepted.size());
+            signers.add(current.signer);
+            for (KeyPair pair : accepted) {
+                if (pair != current) {
+                    signers.add(pair.signer);
+                }
+            }
+            this.signers = Collections.unmodifiableList(signers);
+        }
+
+        KeyPair find(String key, String salt, KeyPair fallback) {
+            for (KeyPair pair : accepted) {
+                if (pair.matches(key, salt)) {
+                    return pair;
+                }
+            }
+            return fallback;
+        }
+
+        List<KeyPair> withAccepted(KeyPair pair) {
+            if (find(pair.key, pair.salt, null) != null) {
+                return accepted;
+            }
+            List<KeyPair> result = new ArrayList<>(accepted);
+            result.add(pair);
+            return Collections.unmodifiableList(result);
+        }
+    }
+}
@@ -1,19 +1,20 @@
 package io.rocketbase.asset.imgproxy;
 
-import com.google.common.hash.HashCode;
-import com.google.common.hash.Hashing;
-import com.google.common.io.BaseEncoding;
 import io.rocketbase.asset.imgproxy.options.GravityType;
 import io.rocketbase.asset.imgproxy.options.ImageType;
 import io.rocketbase.asset.imgproxy.options.ResizeType;
 import io.rocketbase.asset.imgproxy.options.WatermarkPositionType;
 import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
-import lombok.SneakyThrows;
 
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
-import java.util.ArrayList;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
 import java.util.List;
 import java.util.regex.Pattern;
 
@@ -43,7 +44,14 @@ public class Signature {
 
     private final SignatureConfiguration configuration;
 
-    private List<String> processingOptions = new ArrayList<String>();
+    /**
+     * typed slots - repeated calls replace earlier values and the path is rendered in canonical order
+     */
+    private ProcessingOptions options = new ProcessingOptions();
+
+    private boolean encryptSource;
+
+    private SignedUrlCache cache;
 
 
     public static Signature of(SignatureConfiguration configuration) {
@@ -54,7 +62,10 @@ public class Signature {
      * Meta-option that defines the width, height, enlarge, and extend. All arguments are optional and can be omited to use their default values.
      */
     public Signature size(int width, int height, boolean enlarge, boolean extend) {
-        processingOptions.add(createProcessingOption("s", width, height, enlarge, extend));
+        int snappedWidth = snap(width);
+        int snappedHeight = snap(height);
+        report(SnappingReport.SIZE, width, height, snappedWidth, snappedHeight);
+        options.size(snappedWidth, snappedHeight, ProcessingOptions.flag(enlarge), ProcessingOptions.flag(extend));
         return this;
     }
 
@@ -62,7 +73,10 @@ public class Signature {
      * Meta-option that defines the width, height, enlarge, and extend. All arguments are optional and can be omited to use their default values.
      */
     public Signature size(int width, int height, boolean enlarge) {
-        processingOptions.add(createProcessingOption("s", width, height, enlarge));
+        int snappedWidth = snap(width);
+        int snappedHeight = snap(height);
+        report(SnappingReport.SIZE, width, height, snappedWidth, snappedHeight);
+        options.size(snappedWidth, snappedHeight, ProcessingOptions.flag(enlarge), ProcessingOptions.NONE);
         return this;
     }
 
@@ -70,7 +84,10 @@ public class Signature {
      * Meta-option that defines the width, height, enlarge, and extend. All arguments are optional and can be omited to use their default values.
      */
     public Signature size(int width, int height) {
-        processingOptions.add(createProcessingOption("s", width, height));
+        int snappedWidth = snap(width);
+        int snappedHeight = snap(height);
+        report(SnappingReport.SIZE, width, height, snappedWidth, snappedHeight);
+        options.size(snappedWidth, snappedHeight, ProcessingOptions.NONE, ProcessingOptions.NONE);
         return this;
     }
 
@@ -78,7 +95,10 @@ public class Signature {
      * Meta-option that defines the resizing type, width, height, enlarge, and extend.
      */
     public Signature resize(ResizeType resizeType, int width, int height, boolean enlarge, boolean extend) {
-        processingOptions.add(createProcessingOption("rs", resizeType.name(), width, height, enlarge, extend));
+        int snappedWidth = snap(width);
+        int snappedHeight = snap(height);
+        report(SnappingReport.RESIZE, width, height, snappedWidth, snappedHeight);
+        options.resize(resizeType, snappedWidth, snappedHeight, ProcessingOptions.flag(enlarge), ProcessingOptions.flag(extend));
         return this;
     }
 
@@ -86,7 +106,10 @@ public class Signature {
      * Meta-option that defines the resizing type, width, height, enlarge, and extend.
      */
     public Signature resize(ResizeType resizeType, int width, int height, boolean enlarge) {
-        processingOptions.add(createProcessingOption("rs", resizeType.name(), width, height, enlarge));
+        int snappedWidth = snap(width);
+        int snappedHeight = snap(height);
+        report(SnappingReport.RESIZE, width, height, snappedWidth, snappedHeight);
+        options.resize(resizeType, snappedWidth, snappedHeight, ProcessingOptions.flag(enlarge), ProcessingOptions.NONE);
         return this;
     }
 
@@ -94,7 +117,10 @@ public class Signature {
      * Meta-option that defines the resizing type, width, height, enlarge, and extend.
      */
     public Signature resize(ResizeType resizeType, int width, int height) {
-        processingOptions.add(createProcessingOption("rs", resizeType.name(), width, height));
+        int snappedWidth = snap(width);
+        int snappedHeight = snap(height);
+        report(SnappingReport.RESIZE, width, height, snappedWidth, snappedHeight);
+        options.resize(resizeType, snappedWidth, snappedHeight, ProcessingOptions.NONE, ProcessingOptions.NONE);
         return this;
     }
 
@@ -102,7 +128,7 @@ public class Signature {
      * Defines how imgproxy will resize the source image.
      */
     public Signature resize(ResizeType resizeType) {
-        processingOptions.add(createProcessingOption("rt", resizeType.name()));
+        options.resizingType(resizeType);
         return this;
     }
 
@@ -111,7 +137,17 @@ public class Signature {
      * Default: 0
      */
     public Signature width(int width) {
-        processingOptions.add(createProcessingOption("w", width));
+        int snappedWidth = snap(width);
+        report(SnappingReport.WIDTH, width, 0, snappedWidth, 0);
+        options.width(snappedWidth);
+        return this;
+    }
+
+    /**
+     * width without {@link SizeSnapping} - variant ladders are chosen on purpose
+     */
+    Signature exactWidth(int width) {
+        options.width(width);
         return this;
     }
 
@@ -120,7 +156,9 @@ public class Signature {
      * Default: 0
      */
     public Signature height(int height) {
-        processingOptions.add(createProcessingOption("h", height));
+        int snappedHeight = snap(height);
+        report(SnappingReport.HEIGHT, 0, height, 0, snappedHeight);
+        options.height(snappedHeight);
         return this;
     }
 
@@ -129,7 +167,19 @@ public class Signature {
      * Default: true
      */
     public Signature dpr(boolean useDpr) {
-        processingOptions.add(createProcessingOption("dpr", useDpr));
+        options.dpr(useDpr ? 1 : 0);
+        return this;
+    }
+
+    /**
+     * Multiplies the image dimensions according to this factor for HiDPI (Retina) devices.
+     * Default: 1
+     */
+    public Signature dpr(double dpr) {
+        if (dpr <= 0) {
+            throw new IllegalArgumentException("dpr must be greater than 0");
+        }
+        options.dpr(dpr);
         return this;
     }
 
@@ -138,7 +188,7 @@ public class Signature {
      * Default: false
      */
     public Signature enlarge(boolean enlarge) {
-        processingOptions.add(createProcessingOption("el", enlarge));
+        options.enlarge(enlarge);
         return this;
     }
 
@@ -147,7 +197,7 @@ public class Signature {
      * Default: false
      */
     public Signature extend(boolean extend) {
-        processingOptions.add(createProcessingOption("ex", extend));
+        options.extend(extend);
         return this;
     }
 
@@ -159,7 +209,7 @@ public class Signature {
         if (!gravityType.isFocalPointAllowed()) {
             throw new IllegalArgumentException(gravityType + " is not allowed with offset");
         }
-        processingOptions.add(createProcessingOption("g", gravityType.name(), offsetX, offsetY));
+        options.gravity().offset(gravityType, offsetX, offsetY);
         return this;
     }
 
@@ -167,7 +217,7 @@ public class Signature {
      * When imgproxy needs to cut some parts of the image, it is guided by the gravity.
      */
     public Signature gravity(GravityType gravityType) {
-        processingOptions.add(createProcessingOption("g", gravityType.name()));
+        options.gravity().type(gravityType);
         return this;
     }
 
@@ -175,7 +225,7 @@ public class Signature {
      * focus point gravity. x and y are floating point numbers between 0 and 1 that define the coordinates of the center of the resulting image. Treat 0 and 1 as right/left for x and top/bottom for y
      */
     public Signature gravity(double focalX, double focalY) {
-        processingOptions.add(createProcessingOption("g", "fp", focalX, focalY));
+        options.gravity().focusPoint(focalX, focalY);
         return this;
     }
 
@@ -189,7 +239,10 @@ public class Signature {
         if (!gravityType.isFocalPointAllowed()) {
             throw new IllegalArgumentException(gravityType + " is not allowed with offset");
         }
-        processingOptions.add(createProcessingOption("c", width, height, gravityType.name(), offsetX, offsetY));
+        int snappedWidth = snap(width);
+        int snappedHeight = snap(height);
+        report(SnappingReport.CROP, width, height, snappedWidth, snappedHeight);
+        options.crop(snappedWidth, snappedHeight).offset(gravityType, offsetX, offsetY);
         return this;
     }
 
@@ -200,7 +253,10 @@ public class Signature {
      * gravity accepts the same values as gravity option.
      */
     public Signature crop(int width, int height, GravityType gravityType) {
-        processingOptions.add(createProcessingOption("c", width, height, gravityType.name()));
+        int snappedWidth = snap(width);
+        int snappedHeight = snap(height);
+        report(SnappingReport.CROP, width, height, snappedWidth, snappedHeight);
+        options.crop(snappedWidth, snappedHeight).type(gravityType);
         return this;
     }
 
@@ -211,7 +267,10 @@ public class Signature {
      * gravity accepts the same values as gravity option.
      */
     public Signature crop(int width, int height, double focalX, double focalY) {
-        processingOptions.add(createProcessingOption("c", width, height, "fp", focalX, focalY));
+        int snappedWidth = snap(width);
+        int snappedHeight = snap(height);
+        report(SnappingReport.CROP, width, height, snappedWidth, snappedHeight);
+        options.crop(snappedWidth, snappedHeight).focusPoint(focalX, focalY);
         return this;
     }
 
@@ -222,7 +281,10 @@ public class Signature {
      * Imgproxy will use the value of the gravity option.
      */
     public Signature crop(int width, int height) {
-        processingOptions.add(createProcessingOption("c", width, height));
+        int snappedWidth = snap(width);
+        int snappedHeight = snap(height);
+        report(SnappingReport.CROP, width, height, snappedWidth, snappedHeight);
+        options.crop(snappedWidth, snappedHeight);
         return this;
     }
 
@@ -235,7 +297,7 @@ public class Signature {
             throw new IllegalArgumentException("quality percentage must be between 1 and 100 inclusively");
         }
 
-        processingOptions.add(createProcessingOption("q", percentage));
+        options.quality(percentage);
         return this;
     }
 
@@ -248,7 +310,7 @@ public class Signature {
         if (!isByte(r) || !isByte(g) || !isByte(b)) {
             throw new IllegalArgumentException("r,g and b values must be between 0 and 255 inclusively");
         }
-        processingOptions.add(createProcessingOption("bg", r, g, b));
+        options.background(r, g, b);
         return this;
     }
 
@@ -261,17 +323,17 @@ public class Signature {
         if (!isHexColor(hexColor)) {
             throw new IllegalArgumentException("hexcolor must be a hexadecimalencoded string for 3 bytes like ffffff for white");
         }
-        processingOptions.add(createProcessingOption("bg", hexColor));
+        options.background(hexColor);
         return this;
     }
 
     public Signature blur(int sigma) {
-        processingOptions.add(createProcessingOption("bl", sigma));
+        options.blur(sigma);
         return this;
     }
 
     public Signature sharpen(int sigma) {
-        processingOptions.add(createProcessingOption("sh", sigma));
+        options.sharpen(sigma);
         return this;
     }
 
@@ -279,7 +341,7 @@ public class Signature {
      * Puts watermark on the processed image
      */
     public Signature watermark(double opacity, WatermarkPositionType position, int offsetX, int offsetY, double scale) {
-        processingOptions.add(createProcessingOption("wm", opacity, position.name(), offsetX, offsetY, scale));
+        options.watermark(opacity, position, offsetX, offsetY, scale);
         return this;
     }
 
@@ -287,7 +349,7 @@ public class Signature {
      * Puts watermark on the processed image
      */
     public Signature watermark(double opacity, WatermarkPositionType position, int offsetX, int offsetY) {
-        processingOptions.add(createProcessingOption("wm", opacity, position.name(), offsetX, offsetY));
+        options.watermark(opacity, position, offsetX, offsetY, Double.NaN);
         return this;
     }
 
@@ -295,7 +357,7 @@ public class Signature {
      * Puts watermark on the processed image
      */
     public Signature watermark(double opacity, WatermarkPositionType position) {
-        processingOptions.add(createProcessingOption("wm", opacity, position.name()));
+        options.watermark(opacity, position, ProcessingOptions.UNSET, 0, Double.NaN);
         return this;
     }
 
@@ -303,7 +365,7 @@ public class Signature {
      * Puts watermark on the processed image
      */
     public Signature watermark(double opacity) {
-        processingOptions.add(createProcessingOption("wm", opacity));
+        options.watermark(opacity, null, ProcessingOptions.UNSET, 0, Double.NaN);
         return this;
     }
 
@@ -311,7 +373,7 @@ public class Signature {
      * Defines a list of presets to be used by imgproxy. Feel free to use as many presets in a single URL as you need.
      */
     public Signature preset(String... presetNames) {
-        processingOptions.add(createProcessingOption("pr", (Object[]) presetNames));
+        options.preset(presetNames);
         return this;
     }
 
@@ -322,7 +384,26 @@ public class Signature {
      * It’s highly recommended to prefer cachebuster option over URL query string because the option can be properly signed.
      */
     public Signature cachebuster(String version) {
-        processingOptions.add(createProcessingOption("cb", version));
+        options.cachebuster(version);
+        return this;
+    }
+
+    /**
+     * imgproxy answers with 404 once the given unix timestamp (seconds) has passed - links to private assets die off.
+     * Every distinct timestamp is a distinct url for caches, prefer {@link #expiresAfter(Duration, Duration)}.
+     */
+    public Signature expires(long unixSeconds) {
+        options.expires(unixSeconds);
+        return this;
+    }
+
+    /**
+     * Expires at least ttl from now, rounded up to the next multiple of bucket. All urls generated within the same bucket
+     * get the same timestamp, so they stay byte-identical and cacheable. For precomputed urls per bucket see
+     * {@link ExpiringUrls}.
+     */
+    public Signature expiresAfter(Duration ttl, Duration bucket) {
+        options.expires(ExpiringUrls.bucketExpiry(System.currentTimeMillis() / 1000, ttl.getSeconds(), bucket.getSeconds()));
         return this;
     }
 
@@ -330,7 +411,7 @@ public class Signature {
      * Defines a filename for Content-Disposition header. When not specified, imgproxy will get filename from the source url.
      */
     public Signature filename(String filename) {
-        processingOptions.add(createProcessingOption("fn", filename));
+        options.filename(filename);
         return this;
     }
 
@@ -338,38 +419,111 @@ public class Signature {
      * Specifies the resulting image format. Alias for extension URL part.
      */
     public Signature format(String extension) {
-        processingOptions.add(createProcessingOption("f", extension));
+        options.format(extension);
+        return this;
+    }
+
+
+    /**
+     * Encrypts the source url with aes-cbc (/enc/%encrypted_source_url) to hide bucket names and internal paths.
+     * The iv is derived from the source url, so the same source always results in the same url.
+     * Needs {@link SignatureConfiguration#sourceUrlEncryptionKey(String)}.
+     */
+    public Signature encrypted() {
+        this.encryptSource = true;
+        return this;
+    }
+
+    /**
+     * rounds up via the configured {@link SizeSnapping}, 0 (auto) and disabled snapping keep the size
+     */
+    private int snap(int size) {
+        SizeSnapping snapping = configuration.getSizeSnapping();
+        return snapping != null && size > 0 ? Math.max(size, snapping.snap(size)) : size;
+    }
+
+    private void report(int option, int width, int height, int snappedWidth, int snappedHeight) {
+        SnappingReport report = configuration.getSnappingReport();
+        if (report != null) {
+            report.record(option, width, height, snappedWidth, snappedHeight);
+        }
+    }
+
+    /**
+     * @return independent copy of this chain, further builder calls on either side don't affect the other one
+     */
+    Signature copy() {
+        Signature copy = new Signature(configuration);
+        copy.options = options.copy();
+        copy.encryptSource = encryptSource;
+        copy.cache = cache;
+        return copy;
+    }
+
+    /**
+     * Serves generated urls from the given cache. Not a processing option, it doesn't change the resulting url.
+     */
+    public Signature cache(SignedUrlCache cache) {
+        this.cache = cache;
         return this;
     }
 
+    /**
+     * Freezes the current processing options into an immutable {@link SignatureTemplate} that can be shared across threads
+     * and reused for any number of source urls. Later changes on this signature don't affect the returned template.
+     */
+    public SignatureTemplate compile() {
+        return new SignatureTemplate(configuration, options, encryptSource, cache);
+    }
 
     public String url(String sourceUrl) {
         return url(sourceUrl, null);
     }
 
-    @SneakyThrows
     public String url(String sourceUrl, ImageType imageType) {
-        StringBuilder builder = new StringBuilder();
+        return compile().url(sourceUrl, imageType);
+    }
 
-        for (String processingOption : processingOptions) {
-            builder.append("/")
-                    .append(processingOption);
-        }
+    /**
+     * Freezes the current options into a handle that signs only when it gets rendered.
+     */
+    public LazyUrl lazyUrl(String sourceUrl) {
+        return lazyUrl(sourceUrl, null);
+    }
 
-        String url = BaseEncoding.base64Url()
-                .omitPadding()
-                .encode(sourceUrl.getBytes());
-        builder.append("/")
-                .append(url);
-        if (imageType != null) {
-            builder.append(".")
-                    .append(imageType.name());
-        }
-        String path = builder.toString();
-        String signature = signUrl(path, configuration.getKey(), configuration.getSalt(), configuration.getNumberOfSignatureBytes());
-        return configuration.getBaseurl() + "/" +
-                signature +
-                path;
+    /**
+     * Freezes the current options into a handle that signs only when it gets rendered.
+     */
+    public LazyUrl lazyUrl(String sourceUrl, ImageType imageType) {
+        return compile().lazyUrl(sourceUrl, imageType);
+    }
+
+    /**
+     * Bulk variant of {@link #url(String)} that signs all sources in parallel.
+     *
+     * @return urls in the same order as the given sources
+     */
+    public List<String> urls(Collection<String> sourceUrls) {
+        return compile().urls(sourceUrls);
+    }
+
+    /**
+     * Bulk variant of {@link #url(String, ImageType)} that signs all sources in parallel.
+     *
+     * @return urls in the same order as the given sources
+     */
+    public List<String> urls(Collection<String> sourceUrls, ImageType imageType) {
+        return compile().urls(sourceUrls, imageType);
+    }
+
+    /**
+     * Bulk variant of {@link #url(String, ImageType)} that signs all sources in parallel with an image type per source.
+     *
+     * @param imageTypes resulting image type per source url (same length as sourceUrls), could be null
+     * @return urls in the same order as the given sources
+     */
+    public String[] urls(String[] sourceUrls, ImageType[] imageTypes) {
+        return compile().urls(sourceUrls, imageTypes);
     }
 
     static String signUrl(String path, String key, String salt, int numberOfSignatureBytes) throws NoSuchAlgorithmException, InvalidKeyException {
@@ -377,11 +531,12 @@ public class Signature {
             return "notset";
         }
         String encodeString = salt + path;
-        HashCode hashCode = Hashing.hmacSha256(key.getBytes())
-                .hashBytes(encodeString.getBytes());
-        return BaseEncoding.base64Url()
-                .omitPadding()
-                .encode(hashCode.asBytes(), 0, numberOfSignatureBytes);
+        Mac mac = Mac.getInstance(UrlSigner.ALGORITHM);
+        mac.init(new SecretKeySpec(key.getBytes(), UrlSigner.ALGORITHM));
+        byte[] digest = mac.doFinal(encodeString.getBytes());
+        return Base64.getUrlEncoder()
+                .withoutPadding()
+                .encodeToString(Arrays.copyOf(digest, numberOfSignatureBytes));
     }
 
 
@@ -1,9 +1,14 @@
 package io.rocketbase.asset.imgproxy;
 
+import io.rocketbase.asset.imgproxy.instrumentation.UrlListener;
+import lombok.AccessLevel;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 
+import java.util.Collections;
+import java.util.List;
+
 @Getter
 @EqualsAndHashCode
 @RequiredArgsConstructor
@@ -17,13 +22,128 @@ public class SignatureConfiguration {
 
     private int numberOfSignatureBytes = 32;
 
+    /**
+     * keyed and salted hmac state, prepared once per configuration and shared by all signatures using it
+     */
+    @EqualsAndHashCode.Exclude
+    @Getter(value = AccessLevel.PACKAGE, lazy = true)
+    private final UrlSigner signer = UrlSigner.of(key, salt);
+
+    /**
+     * hex encoded aes key for encrypted source urls, see {@link #sourceUrlEncryptionKey(String)}
+     */
+    private String sourceUrlEncryptionKey;
+
+    @EqualsAndHashCode.Exclude
+    @Getter(AccessLevel.PACKAGE)
+    private SourceEncryptor sourceEncryptor;
+
+    /**
+     * opt-in instrumentation, null when disabled
+     */
+    @EqualsAndHashCode.Exclude
+    private volatile UrlListener listener;
+
+    /**
+     * server presets that replace matching options within compiled urls, null when disabled
+     */
+    @EqualsAndHashCode.Exclude
+    private volatile PresetRegistry presets;
+
+    /**
+     * spreads source urls over several imgproxy nodes, null to always use baseurl
+     */
+    @EqualsAndHashCode.Exclude
+    private volatile ConsistentHashRing routing;
+
+    /**
+     * rounds requested dimensions up to fewer distinct sizes, null when disabled
+     */
+    @EqualsAndHashCode.Exclude
+    private volatile SizeSnapping sizeSnapping;
+
+    /**
+     * distinct variants before and after snapping, null without size snapping
+     */
+    @EqualsAndHashCode.Exclude
+    private volatile SnappingReport snappingReport;
+
     public SignatureConfiguration(String baseurl) {
         this.baseurl = baseurl;
         this.key = null;
         this.salt = null;
     }
 
+    /**
+     * Enables {@link Signature#encrypted()} source urls. Same value as IMGPROXY_SOURCE_URL_ENCRYPTION_KEY - a hex encoded
+     * aes key of 16, 24 or 32 bytes.
+     */
+    public SignatureConfiguration sourceUrlEncryptionKey(String sourceUrlEncryptionKey) {
+        this.sourceEncryptor = SourceEncryptor.of(sourceUrlEncryptionKey);
+        this.sourceUrlEncryptionKey = sourceUrlEncryptionKey;
+        return this;
+    }
+
+    /**
+     * Registers a listener that gets notified about every generated url, null disables instrumentation again. Use
+     * {@link UrlListener#of(UrlListener...)} to register multiple.
+     */
+    public SignatureConfiguration listener(UrlListener listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    /**
+     * Replaces options covered by the given server presets with pr:%name in all urls compiled afterwards.
+     */
+    public SignatureConfiguration presets(PresetRegistry presets) {
+        this.presets = presets;
+        return this;
+    }
+
+    /**
+     * Rounds dimensions of size, resize, width, height and crop up via the given policy in all signatures created
+     * afterwards and starts a new {@link SnappingReport}. null disables snapping again.
+     */
+    public SignatureConfiguration sizeSnapping(SizeSnapping sizeSnapping) {
+        this.snappingReport = sizeSnapping != null ? new SnappingReport() : null;
+        this.sizeSnapping = sizeSnapping;
+        return this;
+    }
+
+    /**
+     * Picks the base url per source url via consistent hashing, so every imgproxy node keeps serving the same images
+     * out of its own cache. null routes everything to baseurl again.
+     */
+    public SignatureConfiguration routing(ConsistentHashRing routing) {
+        this.routing = routing;
+        return this;
+    }
+
+    /**
+     * @return base url responsible for the given source url - the configured one without routing
+     */
+    public String baseurl(String sourceUrl) {
+        ConsistentHashRing ring = routing;
+        return ring != null ? ring.baseurl(sourceUrl) : baseurl;
+    }
+
+    /**
+     * all signers an inbound url may be signed with - the current one included
+     */
+    List<UrlSigner> getAcceptedSigners() {
+        return Collections.singletonList(getSigner());
+    }
+
+    /**
+     * Same value as IMGPROXY_SIGNATURE_SIZE.
+     *
+     * @param numberOfSignatureBytes between 1 and 32 - the length of the hmac-sha256 digest
+     */
     public SignatureConfiguration numberOfSignatureBytes(int numberOfSignatureBytes) {
+        if (numberOfSignatureBytes < 1 || numberOfSignatureBytes > UrlSigner.DIGEST_LENGTH) {
+            throw new IllegalArgumentException("numberOfSignatureBytes must be between 1 and " + UrlSigner.DIGEST_LENGTH);
+        }
         this.numberOfSignatureBytes = numberOfSignatureBytes;
         return this;
     }
@@ -0,0 +1,241 @@
+package io.rocketbase.asset.imgproxy;
+
+import io.rocketbase.asset.imgproxy.options.ImageType;
+import lombok.AccessLevel;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Immutable and thread-safe snapshot of a {@link Signature} chain.
+ * <p>
+ * The processing options are joined once at compile time, so generating an url only encodes the source url and signs the
+ * resulting path. One template can be shared across threads and reused for any number of source urls.
+ * <p>
+ * Create it via {@link Signature#compile()}
+ */
+@Getter
+@EqualsAndHashCode(cacheStrategy = EqualsAndHashCode.CacheStrategy.LAZY)
+public final class SignatureTemplate {
+
+    private final SignatureConfiguration configuration;
+
+    /**
+     * joined processing options including the leading slash, empty when no option has been set
+     */
+    private final String optionPath;
+
+    private final int numberOfSignatureBytes;
+
+    /**
+     * true when the source url is aes encrypted (/enc/...) instead of only base64url encoded
+     */
+    private final boolean encryptSource;
+
+    @EqualsAndHashCode.Exclude
+    @Getter(AccessLevel.PACKAGE)
+    private final byte[] optionPathBytes;
+
+    @EqualsAndHashCode.Exclude
+    @Getter(AccessLevel.PACKAGE)
+    private final int optionCount;
+
+    @EqualsAndHashCode.Exclude
+    @Getter(AccessLevel.PACKAGE)
+    private final byte[] baseurlBytes;
+
+    /**
+     * optional cache in front of url generation, could be null
+     */
+    @EqualsAndHashCode.Exclude
+    private final SignedUrlCache cache;
+
+    SignatureTemplate(SignatureConfiguration configuration, ProcessingOptions processingOptions, boolean encryptSource, SignedUrlCache cache) {
+        this(configuration, processingOptions.toPath(), processingOptions.count(), encryptSource, cache);
+    }
+
+    private SignatureTemplate(SignatureConfiguration configuration, String optionPath, int optionCount, boolean encryptSource, SignedUrlCache cache) {
+        if (encryptSource && configuration.getSourceEncryptor() == null) {
+            throw new IllegalStateException("encrypted source urls need a sourceUrlEncryptionKey within the configuration");
+        }
+        this.configuration = configuration;
+        this.encryptSource = encryptSource;
+        PresetRegistry presets = configuration.getPresets();
+        this.optionPath = presets != null ? presets.substitute(optionPath) : optionPath;
+        this.numberOfSignatureBytes = configuration.getNumberOfSignatureBytes();
+        this.optionPathBytes = this.optionPath.getBytes(StandardCharsets.UTF_8);
+        this.optionCount = presets != null ? countOptions(this.optionPath) : optionCount;
+        this.baseurlBytes = configuration.getBaseurl().getBytes(StandardCharsets.UTF_8);
+        this.cache = cache;
+    }
+
+    /**
+     * Template for an already joined option path - used by the classes generated out of
+     * {@link io.rocketbase.asset.imgproxy.recipe.ImageRecipe}, where the path is a compile time constant.
+     *
+     * @param optionPath joined options with leading slashes like "/rs:fill:300:300:0/q:80", empty for none
+     */
+    public static SignatureTemplate of(SignatureConfiguration configuration, String optionPath) {
+        if (!optionPath.isEmpty() && (optionPath.charAt(0) != '/' || optionPath.endsWith("/"))) {
+            throw new IllegalArgumentException("optionPath needs a leading slash per option but was " + optionPath);
+        }
+        return new SignatureTemplate(configuration, optionPath, countOptions(optionPath), false, null);
+    }
+
+    public String url(String sourceUrl) {
+        return url(sourceUrl, null);
+    }
+
+    public String url(String sourceUrl, ImageType imageType) {
+        if (cache != null) {
+            return cache.url(this, sourceUrl, imageType);
+        }
+        return render(sourceUrl, imageType);
+    }
+
+    /**
+     * @return handle that signs on first use, see {@link LazyUrl}
+     */
+    public LazyUrl lazyUrl(String sourceUrl) {
+        return new LazyUrl(this, sourceUrl, null);
+    }
+
+    /**
+     * @param imageType could be null
+     * @return handle that signs on first use, see {@link LazyUrl}
+     */
+    public LazyUrl lazyUrl(String sourceUrl, ImageType imageType) {
+        return new LazyUrl(this, sourceUrl, imageType);
+    }
+
+    /**
+     * generates the url bypassing the cache
+     */
+    String render(String sourceUrl, ImageType imageType) {
+        return UrlRenderer.get()
+                .prepare(this, sourceUrl, imageType)
+                .toString(this);
+    }
+
+    /**
+     * Appends the url directly to the given target. Encoding and signing work on reusable per thread buffers, so no
+     * intermediate strings are created.
+     *
+     * @param imageType could be null
+     * @return the given target
+     */
+    public <A extends Appendable> A appendUrl(A target, String sourceUrl, ImageType imageType) throws IOException {
+        UrlRenderer.get()
+                .prepare(this, sourceUrl, imageType)
+                .writeTo(this, target);
+        return target;
+    }
+
+    /**
+     * Appends the url directly to the given builder. Encoding and signing work on reusable per thread buffers, so no
+     * intermediate strings are created.
+     *
+     * @param imageType could be null
+     * @return the given builder
+     */
+    public StringBuilder appendUrl(StringBuilder target, String sourceUrl, ImageType imageType) {
+        UrlRenderer.get()
+                .prepare(this, sourceUrl, imageType)
+                .writeTo(this, target);
+        return target;
+    }
+
+    /**
+     * Writes the url into the given char array starting at offset.
+     *
+     * @param imageType could be null
+     * @return amount of written chars
+     * @throws IllegalArgumentException when the url doesn't fit into the destination
+     */
+    public int writeUrl(char[] destination, int offset, String sourceUrl, ImageType imageType) {
+        return UrlRenderer.get()
+                .prepare(this, sourceUrl, imageType)
+                .writeTo(this, destination, offset);
+    }
+
+    /**
+     * Generates the urls for all given sources in parallel on the common fork/join pool.
+     *
+     * @return urls in the same order as the given sources
+     */
+    public List<String> urls(Collection<String> sourceUrls) {
+        return urls(sourceUrls, null);
+    }
+
+    /**
+     * Generates the urls for all given sources in parallel on the common fork/join pool.
+     *
+     * @param imageType resulting image type for all urls, could be null
+     * @return urls in the same order as the given sources
+     */
+    public List<String> urls(Collection<String> sourceUrls, ImageType imageType) {
+        return Arrays.asList(BulkUrlTask.urls(this, sourceUrls.toArray(new String[0]), null, imageType));
+    }
+
+    /**
+     * Generates the urls for all given sources in parallel on the common fork/join pool.
+     *
+     * @param imageTypes resulting image type per source url (same length as sourceUrls), could be null
+     * @return urls in the same order as the given sources
+     */
+    public String[] urls(String[] sourceUrls, ImageType[] imageTypes) {
+        return BulkUrlTask.urls(this, sourceUrls, imageTypes, null);
+    }
+
+    /**
+     * @return thread-safe mapping of source urls to urls - usable within parallel streams
+     */
+    public Function<String, String> asFunction() {
+        return asFunction(null);
+    }
+
+    /**
+     * @param imageType resulting image type for all urls, could be null
+     * @return thread-safe mapping of source urls to urls - usable within parallel streams
+     */
+    public Function<String, String> asFunction(ImageType imageType) {
+        return sourceUrl -> url(sourceUrl, imageType);
+    }
+
+    /**
+     * Lazily maps the given stream. Urls are generated by the thread that consumes them, so parallel streams sign in
+     * parallel.
+     *
+     * @param imageType resulting image type for all urls, could be null
+     */
+    public Stream<String> urls(Stream<String> sourceUrls, ImageType imageType) {
+        return sourceUrls.map(asFunction(imageType));
+    }
+
+    /**
+     * Lazily maps a cursor like iterator (database result, file lines) to urls. Call {@link Stream#parallel()} to sign in
+     * parallel - the iterator is then consumed in fixed batches, so memory stays flat regardless of the input size.
+     *
+     * @param imageType resulting image type for all urls, could be null
+     */
+    public Stream<String> urls(Iterator<String> sourceUrls, ImageType imageType) {
+        return StreamSupport.stream(new SourceUrlSpliterator(this, sourceUrls, imageType, SourceUrlSpliterator.DEFAULT_BATCH_SIZE), false);
+    }
+
+    private static int countOptions(String optionPath) {
+        int count = 0;
+        for (int i = 0; i < optionPath.length(); i++) {
+            count += optionPath.charAt(i) == '/' ? 1 : 0;
+        }
+        return count;
+    }
+}
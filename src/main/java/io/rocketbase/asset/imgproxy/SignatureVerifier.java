@@ -0,0 +1,198 @@
+package io.rocketbase.asset.imgproxy;
+
+import java.util.List;
+
+/**
+ * Parses inbound imgproxy urls and checks their signature against a {@link SignatureConfiguration}.
+ * <p>
+ * Supported formats:
+ * <p>
+ * /%signature/%processing_options/%encoded_source_url.%extension
+ * /%signature/%processing_options/plain/%source_url@%extension
+ * /%signature/%processing_options/enc/%encrypted_source_url.%extension
+ * <p>
+ * The url may start with the base url of the configuration, query and fragment are ignored. The hmac is recomputed
+ * exactly like {@link Signature#signUrl(String, String, String, int)} and compared in constant time. Parsing works on
+ * offsets and reusable per thread buffers, processing options and source url are only decoded on request.
+ * <p>
+ * Like imgproxy itself an unsigned configuration (without key or salt) accepts any signature.
+ */
+public final class SignatureVerifier {
+
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    private static final String PLAIN = "plain";
+
+    private static final String ENCRYPTED = "enc";
+
+    private final SignatureConfiguration configuration;
+
+    private SignatureVerifier(SignatureConfiguration configuration) {
+        this.configuration = configuration;
+    }
+
+    public static SignatureVerifier of(SignatureConfiguration configuration) {
+        return new SignatureVerifier(configuration);
+    }
+
+    /**
+     * @return length of the longest base url the given url starts with followed by '/', 0 for paths
+     */
+    private int baseurlLength(String url) {
+        int length = matchLength(url, configuration.getBaseurl(), 0);
+        ConsistentHashRing routing = configuration.getRouting();
+        if (routing != null) {
+            for (String baseurl : routing.getBaseurls()) {
+                length = matchLength(url, baseurl, length);
+            }
+        }
+        return length;
+    }
+
+    private static int matchLength(String url, String baseurl, int longest) {
+        int length = baseurl.length();
+        if (length > longest && url.length() > length && url.charAt(length) == '/' && url.startsWith(baseurl)) {
+            return length;
+        }
+        return longest;
+    }
+
+    /**
+     * @param url absolute url starting with the configured base url (or one of its routing base urls) or only its path starting with /%signature
+     */
+    public ParsedUrl verify(String url) {
+        int start = baseurlLength(url);
+        int end = url.length();
+        for (int i = start; i < end; i++) {
+            char c = url.charAt(i);
+            if (c == '?' || c == '#') {
+                end = i;
+                break;
+            }
+        }
+        if (start >= end || url.charAt(start) != '/') {
+            return ParsedUrl.malformed(url);
+        }
+        int signatureStart = start + 1;
+        int signatureEnd = url.indexOf('/', signatureStart);
+        if (signatureEnd < 0 || signatureEnd >= end - 1) {
+            return ParsedUrl.malformed(url);
+        }
+
+        // options contain ':' - the first segment without one starts the source
+        boolean plain = false;
+        boolean encrypted = false;
+        int sourceStart = -1;
+        int position = signatureEnd + 1;
+        while (position < end) {
+            int segmentEnd = url.indexOf('/', position);
+            if (segmentEnd < 0 || segmentEnd > end) {
+                segmentEnd = end;
+            }
+            if (segmentEnd - position == PLAIN.length() && url.startsWith(PLAIN, position)) {
+                plain = true;
+                sourceStart = segmentEnd + 1;
+                break;
+            }
+            if (segmentEnd - position == ENCRYPTED.length() && url.startsWith(ENCRYPTED, position)) {
+                encrypted = true;
+                sourceStart = segmentEnd + 1;
+                break;
+            }
+            if (!containsColon(url, position, segmentEnd)) {
+                sourceStart = position;
+                break;
+            }
+            position = segmentEnd + 1;
+        }
+        if (sourceStart < 0 || sourceStart >= end) {
+            return ParsedUrl.malformed(url);
+        }
+
+        int sourceEnd = end;
+        int extensionStart = -1;
+        for (int i = end - 1; i >= sourceStart; i--) {
+            char c = url.charAt(i);
+            if (c == (plain ? '@' : '.')) {
+                sourceEnd = i;
+                extensionStart = i + 1;
+                break;
+            }
+            if (!plain && c == '/') {
+                break;
+            }
+        }
+
+        boolean valid = verifySignature(url, signatureStart, signatureEnd, end);
+        return new ParsedUrl(url, valid, signatureStart, signatureEnd, sourceStart, sourceEnd, extensionStart, end, plain,
+                encrypted, configuration.getSourceEncryptor());
+    }
+
+    /**
+     * shortcut for verify(url).isValid()
+     */
+    public boolean isValid(String url) {
+        return verify(url).isValid();
+    }
+
+    private boolean verifySignature(String url, int signatureStart, int signatureEnd, int end) {
+        List<UrlSigner> signers = configuration.getAcceptedSigners();
+        if (!signers.get(0).isSigned()) {
+            return true;
+        }
+        int numberOfSignatureBytes = configuration.getNumberOfSignatureBytes();
+        if (UrlCodec.base64Length(numberOfSignatureBytes) != signatureEnd - signatureStart) {
+            return false;
+        }
+        Scratch scratch = SCRATCH.get();
+        int signatureLength = UrlCodec.decodeBase64Url(url, signatureStart, signatureEnd, scratch.signature, 0);
+        if (signatureLength != numberOfSignatureBytes) {
+            return false;
+        }
+        int pathLength = scratch.encodePath(url, signatureEnd, end);
+        // every accepted signer is checked, so the timing doesn't reveal which key matched
+        boolean valid = false;
+        for (int i = 0; i < signers.size(); i++) {
+            signers.get(i).digest(scratch.path, pathLength, scratch.digest);
+            valid |= constantTimeEquals(scratch.signature, scratch.digest, numberOfSignatureBytes);
+        }
+        return valid;
+    }
+
+    /**
+     * compares the first length bytes without returning early on the first difference
+     */
+    static boolean constantTimeEquals(byte[] a, byte[] b, int length) {
+        int difference = 0;
+        for (int i = 0; i < length; i++) {
+            difference |= a[i] ^ b[i];
+        }
+        return difference == 0;
+    }
+
+    private static boolean containsColon(String value, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (value.charAt(i) == ':') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class Scratch {
+
+        private byte[] path = new byte[512];
+
+        private final byte[] signature = new byte[UrlCodec.maxDecodedLength(UrlCodec.base64Length(UrlSigner.DIGEST_LENGTH))];
+
+        private final byte[] digest = new byte[UrlSigner.DIGEST_LENGTH];
+
+        int encodePath(String url, int from, int to) {
+            int maxLength = UrlCodec.maxUtf8Length(to - from);
+            if (path.length < maxLength) {
+                path = new byte[Math.max(maxLength, path.length * 2)];
+            }
+            return UrlCodec.encodeUtf8(url, from, to, path, 0);
+        }
+    }
+}
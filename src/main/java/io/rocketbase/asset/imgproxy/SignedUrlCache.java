@@ -0,0 +1,200 @@
+package io.rocketbase.asset.imgproxy;
+
+import io.rocketbase.asset.imgproxy.options.ImageType;
+import lombok.EqualsAndHashCode;
+import lombok.RequiredArgsConstructor;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded in-memory cache of finished urls keyed by configuration, signer, routing, processing options, source url and
+ * image type.
+ * <p>
+ * Lookups are lock-free reads on a {@link ConcurrentHashMap}. Eviction follows a clock with small frequency counters:
+ * every hit bumps the counter of an entry, the clock hand decrements counters while passing and evicts the first entry
+ * that has none left. Frequently requested urls therefore survive bursts of one-off urls.
+ * <p>
+ * usage:
+ * <pre>
+ * SignedUrlCache cache = SignedUrlCache.maximumSize(10_000);
+ * String url = Signature.of(configuration).size(300, 300).cache(cache).url(sourceUrl);
+ * </pre>
+ */
+public final class SignedUrlCache {
+
+    /**
+     * upper bound of the frequency counter - caps how many clock rounds an entry survives without hits
+     */
+    static final int MAX_FREQUENCY = 3;
+
+    private final int maximumSize;
+
+    private final ConcurrentHashMap<Key, Node> entries;
+
+    private final Node[] clock;
+
+    private int clockSize;
+
+    private int hand;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * optional second level that survives restarts, null when disabled
+     */
+    private volatile SignedUrlStore store;
+
+    private SignedUrlCache(int maximumSize) {
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("maximumSize must be at least 1");
+        }
+        this.maximumSize = maximumSize;
+        this.entries = new ConcurrentHashMap<>(Math.min(maximumSize, 1 << 16));
+        this.clock = new Node[maximumSize];
+    }
+
+    public static SignedUrlCache maximumSize(int maximumSize) {
+        return new SignedUrlCache(maximumSize);
+    }
+
+    /**
+     * Looks up misses within the given persistent store before signing and persists newly signed urls there.
+     */
+    public SignedUrlCache store(SignedUrlStore store) {
+        this.store = store;
+        return this;
+    }
+
+    /**
+     * returns the cached url or generates and caches it via the template
+     */
+    public String url(SignatureTemplate template, String sourceUrl, ImageType imageType) {
+        Key key = key(template, sourceUrl, imageType);
+        Node node = entries.get(key);
+        if (node != null) {
+            if (node.frequency < MAX_FREQUENCY) {
+                // racy increment is fine - the counter is only a hint for eviction
+                node.frequency++;
+            }
+            hits.increment();
+            return node.url;
+        }
+        misses.increment();
+        SignedUrlStore persistent = store;
+        String url = persistent != null ? persistent.url(template, sourceUrl, imageType) : template.render(sourceUrl, imageType);
+        insert(key, url);
+        return url;
+    }
+
+    /**
+     * looks up an url without generating it on a miss
+     *
+     * @return cached url or null
+     */
+    public String getIfPresent(SignatureTemplate template, String sourceUrl, ImageType imageType) {
+        Node node = entries.get(key(template, sourceUrl, imageType));
+        return node != null ? node.url : null;
+    }
+
+    public synchronized void invalidateAll() {
+        entries.clear();
+        for (int i = 0; i < clockSize; i++) {
+            clock[i] = null;
+        }
+        clockSize = 0;
+        hand = 0;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return hits / requests, 1.0 when nothing has been requested yet
+     */
+    public double getHitRate() {
+        long hitCount = getHits();
+        long requestCount = hitCount + getMisses();
+        return requestCount == 0 ? 1.0 : (double) hitCount / requestCount;
+    }
+
+    private static Key key(SignatureTemplate template, String sourceUrl, ImageType imageType) {
+        SignatureConfiguration configuration = template.getConfiguration();
+        return new Key(template, configuration.getSigner(), configuration.getRouting(), sourceUrl, imageType);
+    }
+
+    private synchronized void insert(Key key, String url) {
+        if (entries.containsKey(key)) {
+            return;
+        }
+        Node node = new Node(key, url);
+        if (clockSize < maximumSize) {
+            clock[clockSize++] = node;
+        } else {
+            while (true) {
+                Node candidate = clock[hand];
+                if (candidate.frequency > 0) {
+                    candidate.frequency--;
+                    hand = (hand + 1) % maximumSize;
+                } else {
+                    entries.remove(candidate.key, candidate);
+                    evictions.increment();
+                    clock[hand] = node;
+                    hand = (hand + 1) % maximumSize;
+                    break;
+                }
+            }
+        }
+        entries.put(key, node);
+    }
+
+    @Override
+    public String toString() {
+        return "SignedUrlCache{size=" + size() + ", maximumSize=" + maximumSize + ", hits=" + getHits() +
+                ", misses=" + getMisses() + ", evictions=" + getEvictions() + "}";
+    }
+
+    @RequiredArgsConstructor
+    @EqualsAndHashCode
+    private static final class Key {
+        private final SignatureTemplate template;
+        /**
+         * compared by identity - urls signed before a key rotation don't match anymore
+         */
+        private final UrlSigner signer;
+        /**
+         * compared by identity as well - the ring is immutable, so a changed routing never serves urls of other nodes
+         */
+        private final ConsistentHashRing routing;
+        private final String sourceUrl;
+        private final ImageType imageType;
+    }
+
+    @RequiredArgsConstructor
+    private static final class Node {
+        private final Key key;
+        private final String url;
+        private int frequency;
+    }
+}
@@ -0,0 +1,609 @@
+package io.rocketbase.asset.imgproxy;
+
+import io.rocketbase.asset.imgproxy.options.ImageType;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Persistent store of signed urls within a memory-mapped file, so a restarted jvm serves known urls right away instead of
+ * signing them again under peak traffic.
+ * <p>
+ * The file holds an open-addressing hash index (linear probing) followed by an append-only data region. Entries are keyed
+ * by processing options, source url and image type, the whole file by a fingerprint of the configuration: an hmac of the
+ * current key/salt over a constant, numberOfSignatureBytes, the base url, routing and source encryption key. Key and salt
+ * themselves never end up on disk. When the fingerprint changes - new key, salt or numberOfSignatureBytes, also via
+ * {@link RotatingSignatureConfiguration#rotate(String, String)} - the writer clears the file and readers stop using it.
+ * <p>
+ * One process opens the file for writing via {@link #open(Path, SignatureConfiguration, int)}, any number of processes
+ * on the host share it via {@link #openReadOnly(Path, SignatureConfiguration)}. Lookups are lock-free: a slot is only
+ * published after its record behind a memory fence, and every record is verified against the full key and a checksum of
+ * key and url. A concurrent write, a reset or a record torn by a crashed writer therefore only ever results in a miss.
+ * The store doesn't evict: once the index or data region is full further urls are just not persisted.
+ * <p>
+ * usage:
+ * <pre>
+ * SignedUrlStore store = SignedUrlStore.open(Paths.get("/var/cache/imgproxy-urls"), configuration, 1_000_000);
+ * SignedUrlCache cache = SignedUrlCache.maximumSize(10_000).store(store);
+ * String url = Signature.of(configuration).size(300, 300).cache(cache).url(sourceUrl);
+ * </pre>
+ */
+public final class SignedUrlStore implements Closeable {
+
+    static final int MAGIC = 0x49505853;
+
+    static final int VERSION = 2;
+
+    static final int HEADER_LENGTH = 64;
+
+    /**
+     * 8 bytes key hash (0 = empty) + 8 bytes record offset
+     */
+    static final int SLOT_LENGTH = 16;
+
+    /**
+     * average bytes per entry reserved for the data region
+     */
+    static final int DEFAULT_RECORD_LENGTH = 256;
+
+    private static final int FINGERPRINT_HIGH = 8;
+
+    private static final int FINGERPRINT_LOW = 16;
+
+    private static final int SLOT_COUNT = 24;
+
+    private static final int DATA_CAPACITY = 32;
+
+    private static final int DATA_END = 40;
+
+    private static final int GENERATION = 48;
+
+    private static final int ENTRY_COUNT = 56;
+
+    /**
+     * key length + url length + checksum of key and url
+     */
+    private static final int RECORD_HEADER = 16;
+
+    private static final byte[] FINGERPRINT_PROBE = "imgproxy-java/signed-url-store".getBytes(StandardCharsets.UTF_8);
+
+    private static final ThreadLocal<byte[][]> SCRATCH = ThreadLocal.withInitial(() -> new byte[][]{new byte[512], new byte[512]});
+
+    private final Path path;
+
+    private final SignatureConfiguration configuration;
+
+    private final boolean readOnly;
+
+    private final FileChannel channel;
+
+    private final FileLock lock;
+
+    private volatile Mapping mapping;
+
+    private volatile State state;
+
+    private volatile boolean closed;
+
+    /**
+     * Only written and read for the ordering of the volatile access. HotSpot emits hardware fences for it, so the order
+     * also holds for other processes sharing the mapping.
+     */
+    private volatile long fence;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private SignedUrlStore(Path path, SignatureConfiguration configuration, boolean readOnly, FileChannel channel, FileLock lock) {
+        this.path = path;
+        this.configuration = configuration;
+        this.readOnly = readOnly;
+        this.channel = channel;
+        this.lock = lock;
+        this.state = State.of(configuration);
+    }
+
+    /**
+     * Opens or creates the store for writing. An existing file with the same fingerprint is reused as it is, otherwise
+     * it's cleared.
+     *
+     * @param maximumEntries capacity of a new index, the data region gets 256 bytes per entry
+     * @throws IllegalStateException when another process has the file opened for writing
+     */
+    public static SignedUrlStore open(Path path, SignatureConfiguration configuration, int maximumEntries) throws IOException {
+        return open(path, configuration, maximumEntries, (long) maximumEntries * DEFAULT_RECORD_LENGTH);
+    }
+
+    /**
+     * @param dataBytes size of the data region of a new file - an entry takes its key, url and 16 bytes
+     */
+    public static SignedUrlStore open(Path path, SignatureConfiguration configuration, int maximumEntries, long dataBytes) throws IOException {
+        if (maximumEntries < 1 || dataBytes < 1) {
+            throw new IllegalArgumentException("maximumEntries and dataBytes must be at least 1");
+        }
+        int slotCount = Integer.highestOneBit(Math.max(maximumEntries + maximumEntries / 3, 2) - 1) << 1;
+        long length = HEADER_LENGTH + (long) slotCount * SLOT_LENGTH + dataBytes;
+        if (slotCount <= 0 || length > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("store would need " + length + " bytes but at most 2gb can be mapped");
+        }
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        FileLock lock;
+        try {
+            lock = channel.tryLock();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        if (lock == null) {
+            channel.close();
+            throw new IllegalStateException(path + " is opened for writing by another process");
+        }
+        SignedUrlStore store = new SignedUrlStore(path, configuration, false, channel, lock);
+        try {
+            synchronized (store) {
+                Mapping existing = store.map();
+                if (existing == null || !existing.matches(store.state)) {
+                    store.reset(slotCount, dataBytes);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            store.close();
+            throw e;
+        }
+        return store;
+    }
+
+    /**
+     * Shares a store written by another process. Lookups miss until the writer uses the same configuration.
+     */
+    public static SignedUrlStore openReadOnly(Path path, SignatureConfiguration configuration) throws IOException {
+        SignedUrlStore store = new SignedUrlStore(path, configuration, true, FileChannel.open(path, StandardOpenOption.READ), null);
+        synchronized (store) {
+            store.map();
+        }
+        return store;
+    }
+
+    /**
+     * looks up a persisted url
+     *
+     * @return url or null when unknown, the template belongs to another configuration or the store is stale
+     */
+    public String get(SignatureTemplate template, String sourceUrl, ImageType imageType) {
+        if (closed || template.getConfiguration() != configuration) {
+            return null;
+        }
+        Mapping current = current();
+        if (current == null) {
+            misses.increment();
+            return null;
+        }
+        byte[][] scratch = SCRATCH.get();
+        int keyLength = key(template, sourceUrl, imageType, scratch);
+        byte[] key = scratch[0];
+        long hash = hash(key, keyLength);
+        MappedByteBuffer buffer = current.buffer;
+        for (int probe = 0, slot = (int) hash & current.mask; probe < current.slotCount; probe++, slot = (slot + 1) & current.mask) {
+            int position = HEADER_LENGTH + slot * SLOT_LENGTH;
+            long slotHash = buffer.getLong(position);
+            if (slotHash == 0) {
+                break;
+            }
+            if (slotHash == hash) {
+                // no fence needed here - record bytes loaded too early fail the checksum and miss
+                String url = read(current, buffer.getLong(position + 8), hash, key, keyLength, scratch);
+                if (url != null && buffer.getLong(GENERATION) == current.generation) {
+                    hits.increment();
+                    return url;
+                }
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Persists the url. Ignored by read-only stores, for foreign templates and once the store is full.
+     *
+     * @return true when the url has been written
+     */
+    public synchronized boolean put(SignatureTemplate template, String sourceUrl, ImageType imageType, String url) {
+        if (readOnly || closed || template.getConfiguration() != configuration) {
+            return false;
+        }
+        Mapping current = current();
+        if (current == null) {
+            return false;
+        }
+        byte[][] scratch = SCRATCH.get();
+        int keyLength = key(template, sourceUrl, imageType, scratch);
+        byte[] key = scratch[0];
+        long hash = hash(key, keyLength);
+
+        MappedByteBuffer buffer = current.buffer;
+        int entries = buffer.getInt(ENTRY_COUNT);
+        if (entries >= current.slotCount - current.slotCount / 4) {
+            return false;
+        }
+        int slot = (int) hash & current.mask;
+        while (true) {
+            int position = HEADER_LENGTH + slot * SLOT_LENGTH;
+            long slotHash = buffer.getLong(position);
+            if (slotHash == 0) {
+                break;
+            }
+            if (slotHash == hash && read(current, buffer.getLong(position + 8), hash, key, keyLength, scratch) != null) {
+                return false;
+            }
+            slot = (slot + 1) & current.mask;
+        }
+        if (scratch[1].length < UrlCodec.maxUtf8Length(url.length())) {
+            scratch[1] = new byte[Math.max(UrlCodec.maxUtf8Length(url.length()), scratch[1].length * 2)];
+        }
+        byte[] urlBytes = scratch[1];
+        int urlLength = UrlCodec.encodeUtf8(url, 0, url.length(), urlBytes, 0);
+        long dataEnd = buffer.getLong(DATA_END);
+        int recordLength = RECORD_HEADER + keyLength + urlLength;
+        if (dataEnd + recordLength > current.dataCapacity) {
+            return false;
+        }
+
+        // record first, then the slot - readers only find complete records
+        int record = (int) (current.dataStart + dataEnd);
+        buffer.putInt(record, keyLength);
+        buffer.putInt(record + 4, urlLength);
+        buffer.putLong(record + 8, checksum(hash, urlBytes, urlLength));
+        for (int i = 0; i < keyLength; i++) {
+            buffer.put(record + RECORD_HEADER + i, key[i]);
+        }
+        for (int i = 0; i < urlLength; i++) {
+            buffer.put(record + RECORD_HEADER + keyLength + i, urlBytes[i]);
+        }
+        buffer.putLong(DATA_END, dataEnd + recordLength);
+        // volatile write followed by a volatile read: no store above moves below the slot stores
+        fence = dataEnd;
+        long published = fence;
+        int position = HEADER_LENGTH + slot * SLOT_LENGTH;
+        buffer.putLong(position + 8, published);
+        buffer.putLong(position, hash);
+        buffer.putInt(ENTRY_COUNT, entries + 1);
+        return true;
+    }
+
+    /**
+     * persisted url or a freshly rendered one that gets persisted
+     */
+    public String url(SignatureTemplate template, String sourceUrl, ImageType imageType) {
+        String url = get(template, sourceUrl, imageType);
+        if (url == null) {
+            url = template.render(sourceUrl, imageType);
+            put(template, sourceUrl, imageType, url);
+        }
+        return url;
+    }
+
+    /**
+     * @return amount of persisted urls, 0 while the store is stale
+     */
+    public int size() {
+        Mapping current = closed ? null : current();
+        return current != null ? current.buffer.getInt(ENTRY_COUNT) : 0;
+    }
+
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Forces persisted urls to the disk. Not needed for other processes on the host, they share the page cache.
+     */
+    public void flush() {
+        Mapping current = mapping;
+        if (!readOnly && !closed && current != null) {
+            current.buffer.force();
+        }
+    }
+
+    /**
+     * Closes the file, the mapping itself is released by the garbage collector.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        flush();
+        closed = true;
+        try {
+            if (lock != null) {
+                lock.release();
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SignedUrlStore{path=" + path + ", readOnly=" + readOnly + ", size=" + size() + ", hits=" + getHits() +
+                ", misses=" + getMisses() + "}";
+    }
+
+    /**
+     * @return mapping matching the current configuration, null while the file belongs to another fingerprint
+     */
+    private Mapping current() {
+        State expected = state;
+        if (!expected.isCurrent(configuration)) {
+            // key rotation or changed settings - read once per change
+            expected = State.of(configuration);
+            state = expected;
+        }
+        Mapping current = mapping;
+        if (current == null || current.buffer.getLong(GENERATION) != current.generation) {
+            current = remap();
+        }
+        if (current != null && current.matches(expected)) {
+            return current;
+        }
+        return readOnly ? null : resetFor(expected);
+    }
+
+    private synchronized Mapping remap() {
+        if (closed) {
+            return null;
+        }
+        try {
+            return map();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private synchronized Mapping resetFor(State expected) {
+        Mapping current = mapping;
+        if (closed || current == null || expected != state) {
+            return null;
+        }
+        if (!current.matches(expected)) {
+            try {
+                reset(current.slotCount, current.dataCapacity);
+            } catch (IOException e) {
+                return null;
+            }
+        }
+        return mapping;
+    }
+
+    /**
+     * maps the whole file with the geometry of its header
+     *
+     * @return null when the file has no valid header yet
+     */
+    private Mapping map() throws IOException {
+        long size = channel.size();
+        if (size < HEADER_LENGTH) {
+            mapping = null;
+            return null;
+        }
+        MappedByteBuffer buffer = channel.map(readOnly ? FileChannel.MapMode.READ_ONLY : FileChannel.MapMode.READ_WRITE, 0, Math.min(size, Integer.MAX_VALUE));
+        int slotCount = buffer.getInt(SLOT_COUNT);
+        long dataCapacity = buffer.getLong(DATA_CAPACITY);
+        boolean valid = buffer.getInt(0) == MAGIC && buffer.getInt(4) == VERSION && slotCount > 0 &&
+                Integer.bitCount(slotCount) == 1 && dataCapacity > 0 &&
+                HEADER_LENGTH + (long) slotCount * SLOT_LENGTH + dataCapacity <= buffer.capacity();
+        mapping = valid ? new Mapping(buffer, slotCount, dataCapacity, buffer.getLong(GENERATION)) : null;
+        return mapping;
+    }
+
+    /**
+     * clears the index and stamps the current fingerprint, the file never shrinks - readers keep valid mappings
+     */
+    private void reset(int slotCount, long dataCapacity) throws IOException {
+        long length = HEADER_LENGTH + (long) slotCount * SLOT_LENGTH + dataCapacity;
+        if (channel.size() < length) {
+            // sparse on most file systems, only touched pages take space
+            channel.write(ByteBuffer.wrap(new byte[1]), length - 1);
+        }
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.min(channel.size(), Integer.MAX_VALUE));
+        long generation = buffer.getInt(0) == MAGIC ? buffer.getLong(GENERATION) + 1 : 1;
+        // invalidate first - readers compare generation and fingerprint
+        buffer.putLong(GENERATION, generation);
+        buffer.putLong(FINGERPRINT_HIGH, 0);
+        buffer.putLong(FINGERPRINT_LOW, 0);
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(SLOT_COUNT, slotCount);
+        buffer.putLong(DATA_CAPACITY, dataCapacity);
+        buffer.putLong(DATA_END, 0);
+        buffer.putInt(ENTRY_COUNT, 0);
+        for (int position = HEADER_LENGTH; position < HEADER_LENGTH + slotCount * SLOT_LENGTH; position += 8) {
+            buffer.putLong(position, 0);
+        }
+        State current = state;
+        buffer.putLong(FINGERPRINT_LOW, current.fingerprintLow);
+        buffer.putLong(FINGERPRINT_HIGH, current.fingerprintHigh);
+        mapping = new Mapping(buffer, slotCount, dataCapacity, generation);
+    }
+
+    /**
+     * @return url of the record when its key equals key[0, keyLength) and the checksum matches, otherwise null
+     */
+    private static String read(Mapping mapping, long offset, long hash, byte[] key, int keyLength, byte[][] scratch) {
+        if (offset < 0 || offset + RECORD_HEADER + keyLength > mapping.dataCapacity) {
+            return null;
+        }
+        MappedByteBuffer buffer = mapping.buffer;
+        int record = (int) (mapping.dataStart + offset);
+        if (buffer.getInt(record) != keyLength) {
+            return null;
+        }
+        int urlLength = buffer.getInt(record + 4);
+        if (urlLength <= 0 || offset + RECORD_HEADER + keyLength + urlLength > mapping.dataCapacity) {
+            return null;
+        }
+        for (int i = 0; i < keyLength; i++) {
+            if (buffer.get(record + RECORD_HEADER + i) != key[i]) {
+                return null;
+            }
+        }
+        if (scratch[1].length < urlLength) {
+            scratch[1] = new byte[Math.max(urlLength, scratch[1].length * 2)];
+        }
+        byte[] url = scratch[1];
+        int start = record + RECORD_HEADER + keyLength;
+        for (int i = 0; i < urlLength; i++) {
+            url[i] = buffer.get(start + i);
+        }
+        if (buffer.getLong(record + 8) != checksum(hash, url, urlLength)) {
+            return null;
+        }
+        return new String(url, 0, urlLength, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * encryption flag, image type, numberOfSignatureBytes, option path length + bytes and the utf-8 source into scratch[0]
+     *
+     * @return key length
+     */
+    private static int key(SignatureTemplate template, String sourceUrl, ImageType imageType, byte[][] scratch) {
+        byte[] optionPath = template.getOptionPathBytes();
+        int capacity = 7 + optionPath.length + UrlCodec.maxUtf8Length(sourceUrl.length());
+        if (scratch[0].length < capacity) {
+            scratch[0] = new byte[Math.max(capacity, scratch[0].length * 2)];
+        }
+        byte[] key = scratch[0];
+        key[0] = (byte) (template.isEncryptSource() ? 1 : 0);
+        key[1] = (byte) (imageType != null ? imageType.ordinal() + 1 : 0);
+        key[2] = (byte) template.getNumberOfSignatureBytes();
+        key[3] = (byte) (optionPath.length >>> 24);
+        key[4] = (byte) (optionPath.length >>> 16);
+        key[5] = (byte) (optionPath.length >>> 8);
+        key[6] = (byte) optionPath.length;
+        System.arraycopy(optionPath, 0, key, 7, optionPath.length);
+        return UrlCodec.encodeUtf8(sourceUrl, 0, sourceUrl.length(), key, 7 + optionPath.length);
+    }
+
+    /**
+     * key hash combined with the url hash - the key bytes themselves are compared in full
+     */
+    private static long checksum(long hash, byte[] url, int urlLength) {
+        return hash * 31 + ConsistentHashRing.hash(url, 0, urlLength);
+    }
+
+    private static long hash(byte[] key, int length) {
+        long hash = ConsistentHashRing.hash(key, 0, length);
+        // 0 marks empty slots
+        return hash != 0 ? hash : 1;
+    }
+
+    private static final class Mapping {
+        private final MappedByteBuffer buffer;
+        private final int slotCount;
+        private final int mask;
+        private final long dataStart;
+        private final long dataCapacity;
+        private final long generation;
+
+        private Mapping(MappedByteBuffer buffer, int slotCount, long dataCapacity, long generation) {
+            this.buffer = buffer;
+            this.slotCount = slotCount;
+            this.mask = slotCount - 1;
+            this.dataStart = HEADER_LENGTH + (long) slotCount * SLOT_LENGTH;
+            this.dataCapacity = dataCapacity;
+            this.generation = generation;
+        }
+
+        boolean matches(State state) {
+            return buffer.getLong(FINGERPRINT_HIGH) == state.fingerprintHigh && buffer.getLong(FINGERPRINT_LOW) == state.fingerprintLow;
+        }
+    }
+
+    /**
+     * configuration parts the urls depend on, compared by identity per lookup - the fingerprint is only computed on changes
+     */
+    private static final class State {
+        private final UrlSigner signer;
+        private final ConsistentHashRing routing;
+        private final SourceEncryptor sourceEncryptor;
+        private final int numberOfSignatureBytes;
+        private final long fingerprintHigh;
+        private final long fingerprintLow;
+
+        private State(SignatureConfiguration configuration, UrlSigner signer, ConsistentHashRing routing, SourceEncryptor sourceEncryptor,
+                      int numberOfSignatureBytes) {
+            this.signer = signer;
+            this.routing = routing;
+            this.sourceEncryptor = sourceEncryptor;
+            this.numberOfSignatureBytes = numberOfSignatureBytes;
+            MessageDigest digest;
+            try {
+                digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 is not available", e);
+            }
+            digest.update(FINGERPRINT_PROBE);
+            digest.update(signer.isSigned() ? signer.digest(FINGERPRINT_PROBE) : UrlSigner.UNSIGNED.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) numberOfSignatureBytes);
+            update(digest, configuration.getBaseurl());
+            if (routing != null) {
+                int virtualNodes = routing.getVirtualNodes();
+                digest.update(new byte[]{(byte) (virtualNodes >>> 24), (byte) (virtualNodes >>> 16), (byte) (virtualNodes >>> 8), (byte) virtualNodes});
+                for (String baseurl : routing.getBaseurls()) {
+                    update(digest, baseurl);
+                }
+            }
+            update(digest, sourceEncryptor != null ? configuration.getSourceUrlEncryptionKey() : "");
+            byte[] hash = digest.digest();
+            long high = 0;
+            long low = 0;
+            for (int i = 0; i < 8; i++) {
+                high = high << 8 | (hash[i] & 0xff);
+                low = low << 8 | (hash[8 + i] & 0xff);
+            }
+            // all zero marks a reset in progress
+            this.fingerprintHigh = high;
+            this.fingerprintLow = high == 0 && low == 0 ? 1 : low;
+        }
+
+        static State of(SignatureConfiguration configuration) {
+            return new State(configuration, configuration.getSigner(), configuration.getRouting(), configuration.getSourceEncryptor(),
+                    configuration.getNumberOfSignatureBytes());
+        }
+
+        boolean isCurrent(SignatureConfiguration configuration) {
+            return signer == configuration.getSigner() && routing == configuration.getRouting() &&
+                    sourceEncryptor == configuration.getSourceEncryptor() && numberOfSignatureBytes == configuration.getNumberOfSignatureBytes();
+        }
+
+        private static void update(MessageDigest digest, String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            digest.update((byte) (bytes.length >>> 8));
+            digest.update((byte) bytes.length);
+            digest.update(bytes);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package io.rocketbase.asset.imgproxy;
+
+import java.util.Arrays;
+
+/**
+ * sorted distinct steps of a {@link SizeSnapping} policy - a snap is a binary search without allocation
+ */
+final class SizeLadder implements SizeSnapping {
+
+    private final int[] steps;
+
+    SizeLadder(int[] steps, int count) {
+        this.steps = Arrays.copyOf(steps, count);
+    }
+
+    @Override
+    public int snap(int size) {
+        int index = Arrays.binarySearch(steps, size);
+        if (index >= 0) {
+            return size;
+        }
+        index = -index - 1;
+        return index < steps.length ? steps[index] : size;
+    }
+
+    int[] getSteps() {
+        return steps.clone();
+    }
+
+    static int[] append(int[] steps, int count, int step) {
+        int[] result = count < steps.length ? steps : Arrays.copyOf(steps, steps.length * 2);
+        result[count] = step;
+        return result;
+    }
+}
@@ -0,0 +1,99 @@
+package io.rocketbase.asset.imgproxy;
+
+import java.util.Arrays;
+
+/**
+ * Rounds requested dimensions of size, resize, width, height and crop up to a ladder of allowed sizes, so near-duplicate
+ * requests like 317, 318 and 322 end up as one imgproxy render and one cdn object.
+ * <p>
+ * Registered via {@link SignatureConfiguration#sizeSnapping(SizeSnapping)}. A result below the requested size is ignored,
+ * so an image never gets smaller than asked for. 0 (auto) is never passed to the policy. How many distinct variants got
+ * collapsed is tracked within the {@link SnappingReport} of the configuration.
+ * <p>
+ * usage:
+ * <pre>
+ * // at most 10% larger than requested
+ * configuration.sizeSnapping(SizeSnapping.maxError(10));
+ * // fixed breakpoints of the design system, larger sizes are kept as requested
+ * configuration.sizeSnapping(SizeSnapping.breakpoints(320, 640, 960, 1280, 1920));
+ * </pre>
+ */
+@FunctionalInterface
+public interface SizeSnapping {
+
+    /**
+     * upper end of the generated ladders - larger sizes are kept as requested
+     */
+    int MAX_SIZE = 16384;
+
+    /**
+     * @param size requested size in pixels, always greater than 0
+     * @return size to render, values below size are ignored
+     */
+    int snap(int size);
+
+    /**
+     * Steps of min * ratio^n up to max, e.g. geometric(100, 2000, 1.2) gives 100, 120, 144, 173... Sizes below min are
+     * rounded up to min, sizes above max are kept.
+     */
+    static SizeSnapping geometric(int min, int max, double ratio) {
+        if (min < 1 || max < min) {
+            throw new IllegalArgumentException("min must be at least 1 and max not below min");
+        }
+        if (!(ratio > 1.0)) {
+            throw new IllegalArgumentException("ratio must be greater than 1");
+        }
+        int[] steps = new int[64];
+        int count = 0;
+        for (double step = min; Math.round(step) < max; step *= ratio) {
+            int rounded = (int) Math.round(step);
+            if (count == 0 || rounded > steps[count - 1]) {
+                steps = SizeLadder.append(steps, count++, rounded);
+            }
+        }
+        steps = SizeLadder.append(steps, count++, max);
+        return new SizeLadder(steps, count);
+    }
+
+    /**
+     * Rounds up to the next of the given sizes, sizes above the largest one are kept.
+     */
+    static SizeSnapping breakpoints(int... sizes) {
+        int[] steps = sizes.clone();
+        Arrays.sort(steps);
+        int count = 0;
+        for (int step : steps) {
+            if (step < 1) {
+                throw new IllegalArgumentException("breakpoints must be greater than 0");
+            }
+            if (count == 0 || step > steps[count - 1]) {
+                steps[count++] = step;
+            }
+        }
+        if (count == 0) {
+            throw new IllegalArgumentException("at least one breakpoint is needed");
+        }
+        return new SizeLadder(steps, count);
+    }
+
+    /**
+     * Fewest steps up to {@link #MAX_SIZE} so that no size gets more than the given percentage larger than requested.
+     * Small sizes stay exact while the percentage is less than one pixel.
+     */
+    static SizeSnapping maxError(double percent) {
+        if (!(percent > 0)) {
+            throw new IllegalArgumentException("percent must be greater than 0");
+        }
+        double factor = 1.0 + percent / 100.0;
+        int[] steps = new int[64];
+        int count = 0;
+        int step = 1;
+        while (step < MAX_SIZE) {
+            steps = SizeLadder.append(steps, count++, step);
+            // every size above the previous step snaps here, the worst one is previous + 1
+            step = Math.max(step + 1, (int) Math.floor((step + 1) * factor));
+        }
+        steps = SizeLadder.append(steps, count++, MAX_SIZE);
+        return new SizeLadder(steps, count);
+    }
+}
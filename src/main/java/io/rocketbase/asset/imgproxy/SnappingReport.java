@@ -0,0 +1,104 @@
+package io.rocketbase.asset.imgproxy;
+
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the distinct dimensions requested via size, resize, width, height and crop and the distinct ones left after
+ * {@link SizeSnapping} - the difference is the amount of renders and cdn objects saved.
+ * <p>
+ * Thread-safe. Only the first {@link #MAXIMUM_TRACKED} distinct requests are remembered, the counts are lower bounds
+ * afterwards - see {@link #isSaturated()}.
+ */
+public final class SnappingReport {
+
+    public static final int MAXIMUM_TRACKED = 100_000;
+
+    static final int SIZE = 1;
+
+    static final int RESIZE = 2;
+
+    static final int WIDTH = 3;
+
+    static final int HEIGHT = 4;
+
+    static final int CROP = 5;
+
+    private final LongAdder requests = new LongAdder();
+
+    private final LongAdder snapped = new LongAdder();
+
+    private final Set<Long> distinctRequested = ConcurrentHashMap.newKeySet();
+
+    private final Set<Long> distinctSnapped = ConcurrentHashMap.newKeySet();
+
+    private volatile boolean saturated;
+
+    void record(int option, int width, int height, int snappedWidth, int snappedHeight) {
+        requests.increment();
+        if (width != snappedWidth || height != snappedHeight) {
+            snapped.increment();
+        }
+        if (saturated) {
+            return;
+        }
+        if (distinctRequested.add(key(option, width, height))) {
+            distinctSnapped.add(key(option, snappedWidth, snappedHeight));
+            if (distinctRequested.size() >= MAXIMUM_TRACKED) {
+                saturated = true;
+            }
+        }
+    }
+
+    private static long key(int option, int width, int height) {
+        return ((long) option << 56) | ((long) (width & 0x0fffffff) << 28) | (height & 0x0fffffff);
+    }
+
+    /**
+     * @return amount of snapped calls
+     */
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    /**
+     * @return calls where at least one dimension got rounded up
+     */
+    public long getSnappedRequests() {
+        return snapped.sum();
+    }
+
+    /**
+     * @return distinct option + dimensions as requested
+     */
+    public int getDistinctRequested() {
+        return distinctRequested.size();
+    }
+
+    /**
+     * @return distinct option + dimensions after snapping
+     */
+    public int getDistinctSnapped() {
+        return distinctSnapped.size();
+    }
+
+    /**
+     * @return share of distinct variants saved between 0 and 1, e.g. 0.75 when 400 requested sizes became 100
+     */
+    public double getReduction() {
+        int requested = getDistinctRequested();
+        return requested == 0 ? 0.0 : 1.0 - (double) getDistinctSnapped() / requested;
+    }
+
+    public boolean isSaturated() {
+        return saturated;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "SnappingReport(requests=%d, snappedRequests=%d, distinctRequested=%d, distinctSnapped=%d, reduction=%.1f%%)",
+                getRequests(), getSnappedRequests(), getDistinctRequested(), getDistinctSnapped(), getReduction() * 100);
+    }
+}
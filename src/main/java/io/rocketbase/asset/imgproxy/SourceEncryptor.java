@@ -0,0 +1,128 @@
+package io.rocketbase.asset.imgproxy;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+
+/**
+ * AES-CBC encryption of source urls for imgproxy's /enc/%encrypted_source_url format.
+ * <p>
+ * The result is IV + ciphertext with PKCS#7 padding. The IV is derived from the source url via HMAC-SHA256 with a key
+ * derived from the encryption key, so the same source always results in the same url and CDN caches stay effective.
+ * Cipher and Mac instances are kept per thread and initialized from the prepared keys.
+ */
+final class SourceEncryptor {
+
+    static final int IV_LENGTH = 16;
+
+    private static final String TRANSFORMATION = "AES/CBC/PKCS5Padding";
+
+    private static final byte[] IV_KEY_LABEL = "imgproxy-java source url iv".getBytes(StandardCharsets.US_ASCII);
+
+    private final SecretKeySpec key;
+
+    private final UrlSigner ivSigner;
+
+    private final ThreadLocal<State> states;
+
+    private SourceEncryptor(SecretKeySpec key, UrlSigner ivSigner) {
+        this.key = key;
+        this.ivSigner = ivSigner;
+        this.states = ThreadLocal.withInitial(State::new);
+    }
+
+    /**
+     * @param hexKey hex encoded key of 16, 24 or 32 bytes - the value of IMGPROXY_SOURCE_URL_ENCRYPTION_KEY
+     */
+    static SourceEncryptor of(String hexKey) {
+        byte[] key = decodeHex(hexKey);
+        if (key.length != 16 && key.length != 24 && key.length != 32) {
+            throw new IllegalArgumentException("encryption key must be 16, 24 or 32 bytes hex encoded");
+        }
+        try {
+            Mac mac = Mac.getInstance(UrlSigner.ALGORITHM);
+            mac.init(new SecretKeySpec(key, UrlSigner.ALGORITHM));
+            byte[] ivKey = mac.doFinal(IV_KEY_LABEL);
+            return new SourceEncryptor(new SecretKeySpec(key, "AES"), UrlSigner.of(ivKey, new byte[0]));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("could not prepare source url encryption", e);
+        }
+    }
+
+    /**
+     * @return maximum amount of bytes {@link #encrypt(byte[], int, byte[], int)} writes for the given source length
+     */
+    static int encryptedLength(int length) {
+        return IV_LENGTH + (length / 16 + 1) * 16;
+    }
+
+    /**
+     * writes iv + ciphertext of source[0, length) into dst
+     *
+     * @return position after the last written byte
+     */
+    int encrypt(byte[] source, int length, byte[] dst, int offset) {
+        State state = states.get();
+        ivSigner.digest(source, length, state.digest);
+        System.arraycopy(state.digest, 0, dst, offset, IV_LENGTH);
+        try {
+            state.cipher.init(Cipher.ENCRYPT_MODE, key, new IvParameterSpec(state.digest, 0, IV_LENGTH));
+            return offset + IV_LENGTH + state.cipher.doFinal(source, 0, length, dst, offset + IV_LENGTH);
+        } catch (ShortBufferException e) {
+            throw new IllegalArgumentException("destination needs " + encryptedLength(length) + " bytes", e);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("could not encrypt source url", e);
+        }
+    }
+
+    /**
+     * @return decrypted bytes of iv + ciphertext or null when they can't be decrypted
+     */
+    byte[] decrypt(byte[] encrypted, int length) {
+        if (length < IV_LENGTH + 16 || (length - IV_LENGTH) % 16 != 0) {
+            return null;
+        }
+        try {
+            Cipher cipher = states.get().cipher;
+            cipher.init(Cipher.DECRYPT_MODE, key, new IvParameterSpec(encrypted, 0, IV_LENGTH));
+            return cipher.doFinal(encrypted, IV_LENGTH, length - IV_LENGTH);
+        } catch (GeneralSecurityException e) {
+            return null;
+        }
+    }
+
+    private static byte[] decodeHex(String hex) {
+        if (hex == null || hex.length() % 2 != 0) {
+            throw new IllegalArgumentException("encryption key must be hex encoded");
+        }
+        byte[] result = new byte[hex.length() / 2];
+        for (int i = 0; i < result.length; i++) {
+            int high = Character.digit(hex.charAt(i * 2), 16);
+            int low = Character.digit(hex.charAt(i * 2 + 1), 16);
+            if (high < 0 || low < 0) {
+                throw new IllegalArgumentException("encryption key must be hex encoded");
+            }
+            result[i] = (byte) (high << 4 | low);
+        }
+        return result;
+    }
+
+    private static final class State {
+
+        private final Cipher cipher;
+
+        private final byte[] digest = new byte[UrlSigner.DIGEST_LENGTH];
+
+        State() {
+            try {
+                cipher = Cipher.getInstance(TRANSFORMATION);
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("could not prepare " + TRANSFORMATION, e);
+            }
+        }
+    }
+}
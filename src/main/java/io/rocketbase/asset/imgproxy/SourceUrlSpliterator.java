@@ -0,0 +1,132 @@
+package io.rocketbase.asset.imgproxy;
+
+import io.rocketbase.asset.imgproxy.options.ImageType;
+
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+
+/**
+ * Maps the source urls of a cursor-like {@link Iterator} to urls and splits off fixed size batches for parallel streams.
+ * <p>
+ * {@link Spliterators#spliteratorUnknownSize(Iterator, int)} grows its batches with every split up to millions of
+ * elements, this one never buffers more than batchSize source urls per split, so memory stays flat for any input size.
+ * Urls of a split batch are generated by the thread that processes it.
+ */
+final class SourceUrlSpliterator implements Spliterator<String> {
+
+    static final int DEFAULT_BATCH_SIZE = 1024;
+
+    private final SignatureTemplate template;
+
+    private final Iterator<String> sourceUrls;
+
+    private final ImageType imageType;
+
+    private final int batchSize;
+
+    SourceUrlSpliterator(SignatureTemplate template, Iterator<String> sourceUrls, ImageType imageType, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be at least 1");
+        }
+        this.template = template;
+        this.sourceUrls = sourceUrls;
+        this.imageType = imageType;
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super String> action) {
+        if (!sourceUrls.hasNext()) {
+            return false;
+        }
+        action.accept(template.url(sourceUrls.next(), imageType));
+        return true;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super String> action) {
+        while (sourceUrls.hasNext()) {
+            action.accept(template.url(sourceUrls.next(), imageType));
+        }
+    }
+
+    @Override
+    public Spliterator<String> trySplit() {
+        if (!sourceUrls.hasNext()) {
+            return null;
+        }
+        String[] batch = new String[batchSize];
+        int size = 0;
+        while (size < batchSize && sourceUrls.hasNext()) {
+            batch[size++] = sourceUrls.next();
+        }
+        return new Batch(batch, size);
+    }
+
+    @Override
+    public long estimateSize() {
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | NONNULL;
+    }
+
+    /**
+     * already fetched source urls, urls get generated lazily while traversing
+     */
+    private final class Batch implements Spliterator<String> {
+
+        private final String[] sources;
+
+        private int position;
+
+        private final int end;
+
+        Batch(String[] sources, int end) {
+            this(sources, 0, end);
+        }
+
+        private Batch(String[] sources, int position, int end) {
+            this.sources = sources;
+            this.position = position;
+            this.end = end;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super String> action) {
+            if (position >= end) {
+                return false;
+            }
+            String source = sources[position];
+            // drop the reference early - only unprocessed source urls stay reachable
+            sources[position++] = null;
+            action.accept(template.url(source, imageType));
+            return true;
+        }
+
+        @Override
+        public Spliterator<String> trySplit() {
+            int middle = (position + end) >>> 1;
+            if (middle - position < BulkUrlTask.MIN_CHUNK_SIZE) {
+                return null;
+            }
+            Batch prefix = new Batch(sources, position, middle);
+            position = middle;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return end - position;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | NONNULL | SIZED | SUBSIZED;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package io.rocketbase.asset.imgproxy;
+
+import java.util.Arrays;
+
+/**
+ * Allocation free utf-8 and base64url (without padding) coding on caller supplied buffers.
+ */
+final class UrlCodec {
+
+    private static final byte[] BASE64_URL = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".getBytes();
+
+    private static final int[] BASE64_URL_DECODE = new int[128];
+
+    static {
+        Arrays.fill(BASE64_URL_DECODE, -1);
+        for (int i = 0; i < BASE64_URL.length; i++) {
+            BASE64_URL_DECODE[BASE64_URL[i]] = i;
+        }
+    }
+
+    private UrlCodec() {
+    }
+
+    /**
+     * @return maximum amount of bytes needed to encode the given amount of chars as utf-8
+     */
+    static int maxUtf8Length(int chars) {
+        // one char never takes more than 3 bytes - surrogate pairs take 4 bytes for 2 chars
+        return chars * 3;
+    }
+
+    /**
+     * encodes value[from, to) as utf-8 with a fast path for plain ascii. dst needs {@link #maxUtf8Length(int)} bytes.
+     *
+     * @return position after the last written byte
+     */
+    static int encodeUtf8(CharSequence value, int from, int to, byte[] dst, int offset) {
+        int position = offset;
+        int i = from;
+        for (; i < to; i++) {
+            char c = value.charAt(i);
+            if (c >= 0x80) {
+                break;
+            }
+            dst[position++] = (byte) c;
+        }
+        for (; i < to; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                dst[position++] = (byte) c;
+            } else if (c < 0x800) {
+                dst[position++] = (byte) (0xC0 | (c >> 6));
+                dst[position++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < to && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                dst[position++] = (byte) (0xF0 | (codePoint >> 18));
+                dst[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                dst[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                dst[position++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                // unpaired surrogate is replaced by '?' the same way String.getBytes does
+                dst[position++] = '?';
+            } else {
+                dst[position++] = (byte) (0xE0 | (c >> 12));
+                dst[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                dst[position++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return position;
+    }
+
+    static int base64Length(int length) {
+        return (length / 3) * 4 + (length % 3 == 0 ? 0 : length % 3 + 1);
+    }
+
+    /**
+     * base64url encoding without padding
+     *
+     * @return position after the last written byte
+     */
+    static int encodeBase64Url(byte[] src, int length, byte[] dst, int offset) {
+        int position = offset;
+        int i = 0;
+        for (int end = length - length % 3; i < end; i += 3) {
+            int bits = (src[i] & 0xFF) << 16 | (src[i + 1] & 0xFF) << 8 | (src[i + 2] & 0xFF);
+            dst[position++] = BASE64_URL[bits >>> 18];
+            dst[position++] = BASE64_URL[(bits >>> 12) & 0x3F];
+            dst[position++] = BASE64_URL[(bits >>> 6) & 0x3F];
+            dst[position++] = BASE64_URL[bits & 0x3F];
+        }
+        int remaining = length - i;
+        if (remaining == 1) {
+            int bits = (src[i] & 0xFF) << 16;
+            dst[position++] = BASE64_URL[bits >>> 18];
+            dst[position++] = BASE64_URL[(bits >>> 12) & 0x3F];
+        } else if (remaining == 2) {
+            int bits = (src[i] & 0xFF) << 16 | (src[i + 1] & 0xFF) << 8;
+            dst[position++] = BASE64_URL[bits >>> 18];
+            dst[position++] = BASE64_URL[(bits >>> 12) & 0x3F];
+            dst[position++] = BASE64_URL[(bits >>> 6) & 0x3F];
+        }
+        return position;
+    }
+
+    /**
+     * @return maximum amount of bytes base64url decoding of the given amount of chars results in
+     */
+    static int maxDecodedLength(int chars) {
+        return chars / 4 * 3 + 2;
+    }
+
+    /**
+     * decodes base64url value[from, to) skipping '/' separators and trailing padding. dst needs {@link #maxDecodedLength(int)} bytes.
+     *
+     * @return position after the last written byte or -1 when the value is not valid base64url
+     */
+    static int decodeBase64Url(CharSequence value, int from, int to, byte[] dst, int offset) {
+        while (to > from && value.charAt(to - 1) == '=') {
+            to--;
+        }
+        int position = offset;
+        int bits = 0;
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            char c = value.charAt(i);
+            if (c == '/') {
+                continue;
+            }
+            int decoded = c < 128 ? BASE64_URL_DECODE[c] : -1;
+            if (decoded < 0) {
+                return -1;
+            }
+            bits = bits << 6 | decoded;
+            if (++count == 4) {
+                dst[position++] = (byte) (bits >> 16);
+                dst[position++] = (byte) (bits >> 8);
+                dst[position++] = (byte) bits;
+                bits = 0;
+                count = 0;
+            }
+        }
+        if (count == 1) {
+            return -1;
+        } else if (count == 2) {
+            dst[position++] = (byte) (bits >> 4);
+        } else if (count == 3) {
+            dst[position++] = (byte) (bits >> 10);
+            dst[position++] = (byte) (bits >> 2);
+        }
+        return position;
+    }
+}
@@ -0,0 +1,467 @@
+package io.rocketbase.asset.imgproxy;
+
+import io.rocketbase.asset.imgproxy.options.ImageType;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.ToString;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Exports the urls of a {@link SignatureTemplate} for a file of source keys (one per line) - for feeds and sitemaps with
+ * millions of rows.
+ * <p>
+ * The input is split into line aligned chunks that parallel workers process. Url lengths only depend on the key length,
+ * so a first pass computes the exact byte offset of every chunk within the output. The second pass signs and writes the
+ * rows of each chunk directly into its memory-mapped region of the output file. Keys are read and urls written as bytes,
+ * there is no string per row.
+ * <p>
+ * usage:
+ * <pre>
+ * UrlExport.Result result = UrlExport.of(Signature.of(configuration).resize(ResizeType.fit, 800, 800).compile())
+ *         .sourcePrefix("s3://bucket/products/")
+ *         .imageType(ImageType.webp)
+ *         .format(LineFormat.csv())
+ *         .export(Paths.get("keys.txt"), Paths.get("feed.csv"));
+ * </pre>
+ */
+public final class UrlExport {
+
+    /**
+     * size of the mapped windows for reading and writing, regions above 2gb are processed window by window
+     */
+    static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * bytes copied at once out of the mapped input, lines are scanned within this heap block
+     */
+    private static final int BLOCK_SIZE = 64 * 1024;
+
+    /**
+     * chunks per worker - smaller chunks balance uneven key lengths
+     */
+    private static final int CHUNKS_PER_WORKER = 4;
+
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+    private final SignatureTemplate template;
+
+    private byte[] sourcePrefix = new byte[0];
+
+    private ImageType imageType;
+
+    private LineFormat format = LineFormat.plain();
+
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    private int windowSize = DEFAULT_WINDOW_SIZE;
+
+    private UrlExport(SignatureTemplate template) {
+        this.template = template;
+    }
+
+    public static UrlExport of(SignatureTemplate template) {
+        return new UrlExport(template);
+    }
+
+    /**
+     * prepended to every key to form the source url like s3://bucket/
+     */
+    public UrlExport sourcePrefix(String sourcePrefix) {
+        this.sourcePrefix = sourcePrefix.getBytes(StandardCharsets.UTF_8);
+        return this;
+    }
+
+    /**
+     * @param imageType could be null
+     */
+    public UrlExport imageType(ImageType imageType) {
+        this.imageType = imageType;
+        return this;
+    }
+
+    public UrlExport format(LineFormat format) {
+        this.format = format;
+        return this;
+    }
+
+    /**
+     * amount of worker threads, default: available processors
+     */
+    public UrlExport parallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be at least 1");
+        }
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    UrlExport windowSize(int windowSize) {
+        this.windowSize = windowSize;
+        return this;
+    }
+
+    /**
+     * Reads utf-8 source keys line by line (empty lines are skipped) and writes the formatted rows in input order.
+     * An existing output file gets replaced. The routing of the configuration must not change while the export runs.
+     */
+    public Result export(Path sourceKeys, Path output) throws IOException {
+        format.checkUrlPart(template.getBaseurlBytes(), "baseurl");
+        ConsistentHashRing routing = template.getConfiguration().getRouting();
+        if (routing != null) {
+            for (int node = 0; node < routing.getBaseurls().size(); node++) {
+                format.checkUrlPart(routing.baseurlBytes(node), "baseurl");
+            }
+        }
+        format.checkUrlPart(template.getOptionPathBytes(), "option path");
+        long start = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "imgproxy-export-" + THREAD_COUNTER.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try (FileChannel in = FileChannel.open(sourceKeys, StandardOpenOption.READ);
+             RandomAccessFile file = new RandomAccessFile(output.toFile(), "rw")) {
+            long[] bounds = chunkBounds(in, parallelism * CHUNKS_PER_WORKER);
+            int chunks = bounds.length - 1;
+
+            List<Callable<long[]>> measures = new ArrayList<>(chunks);
+            for (int i = 0; i < chunks; i++) {
+                long from = bounds[i];
+                long to = bounds[i + 1];
+                measures.add(() -> measure(in, from, to));
+            }
+            List<long[]> sizes = invokeAll(executor, measures);
+
+            byte[] header = format.getHeader();
+            byte[] footer = format.getFooter();
+            long[] offsets = new long[chunks + 1];
+            offsets[0] = header.length;
+            long rows = 0;
+            for (int i = 0; i < chunks; i++) {
+                offsets[i + 1] = offsets[i] + sizes.get(i)[0];
+                rows += sizes.get(i)[1];
+            }
+            long length = offsets[chunks] + footer.length;
+            file.setLength(length);
+            FileChannel out = file.getChannel();
+            out.write(ByteBuffer.wrap(header), 0);
+            out.write(ByteBuffer.wrap(footer), offsets[chunks]);
+
+            List<Callable<long[]>> writes = new ArrayList<>(chunks);
+            for (int i = 0; i < chunks; i++) {
+                long from = bounds[i];
+                long to = bounds[i + 1];
+                long offset = offsets[i];
+                long end = offsets[i + 1];
+                writes.add(() -> {
+                    write(in, from, to, out, offset, end);
+                    return null;
+                });
+            }
+            invokeAll(executor, writes);
+            // header and footer went through the channel, the rows were forced window by window
+            out.force(false);
+            return new Result(rows, length, System.nanoTime() - start);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @return chunk start positions, each right behind a line break, plus the input size
+     */
+    private static long[] chunkBounds(FileChannel in, int chunks) throws IOException {
+        long size = in.size();
+        int count = (int) Math.max(1, Math.min(chunks, size / 4096));
+        long[] bounds = new long[count + 1];
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        for (int i = 1; i < count; i++) {
+            long position = Math.max(size * i / count, bounds[i - 1]);
+            bounds[i] = lineStart(in, position, size, buffer);
+        }
+        bounds[count] = size;
+        return bounds;
+    }
+
+    private static long lineStart(FileChannel in, long position, long size, ByteBuffer buffer) throws IOException {
+        if (position == 0) {
+            return 0;
+        }
+        // a line starting exactly at position follows the break at position - 1
+        long current = position - 1;
+        while (current < size) {
+            // cast keeps Buffer.clear()Buffer even when compiled without --release 8
+            ((Buffer) buffer).clear();
+            int read = in.read(buffer, current);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return current + i + 1;
+                }
+            }
+            current += read;
+        }
+        return size;
+    }
+
+    /**
+     * @return output bytes and rows of the chunk
+     */
+    private long[] measure(FileChannel in, long from, long to) throws IOException {
+        LineReader reader = new LineReader(in, from, to, windowSize);
+        int signatureLength = template.getConfiguration().getSigner().isSigned() ?
+                UrlCodec.base64Length(template.getNumberOfSignatureBytes()) :
+                UrlSigner.UNSIGNED.length();
+        ConsistentHashRing routing = template.getConfiguration().getRouting();
+        int fixedUrlLength = 1 + signatureLength + template.getOptionPathBytes().length +
+                (template.isEncryptSource() ? "/enc/".length() : 1) +
+                (imageType != null ? imageType.name().length() + 1 : 0);
+        int baseurlLength = template.getBaseurlBytes().length;
+        byte[] source = new byte[256];
+        long bytes = 0;
+        long rows = 0;
+        while (reader.next()) {
+            int sourceLength = sourcePrefix.length + reader.length;
+            if (routing != null) {
+                // the base url depends on the source url, same lookup as within UrlRenderer
+                if (source.length < sourceLength) {
+                    source = new byte[Math.max(sourceLength, source.length * 2)];
+                }
+                System.arraycopy(sourcePrefix, 0, source, 0, sourcePrefix.length);
+                System.arraycopy(reader.line, reader.offset, source, sourcePrefix.length, reader.length);
+                baseurlLength = routing.baseurlBytes(routing.node(source, sourceLength)).length;
+            }
+            int payloadLength = template.isEncryptSource() ? SourceEncryptor.encryptedLength(sourceLength) : sourceLength;
+            int escapedKeyLength = format.escapedKeyLength(reader.line, reader.offset, reader.length);
+            bytes += format.rowLength(escapedKeyLength, baseurlLength + fixedUrlLength + UrlCodec.base64Length(payloadLength));
+            rows++;
+        }
+        return new long[]{bytes, rows};
+    }
+
+    private void write(FileChannel in, long from, long to, FileChannel out, long offset, long end) throws IOException {
+        LineReader reader = new LineReader(in, from, to, windowSize);
+        MappedWriter writer = new MappedWriter(out, offset, end, windowSize);
+        UrlRenderer renderer = UrlRenderer.get();
+        byte[] url = new byte[256];
+        byte[] row = new byte[1024];
+        while (reader.next()) {
+            renderer.prepare(template, sourcePrefix, reader.line, reader.offset, reader.length, imageType);
+            int urlLength = renderer.byteLength(template);
+            if (url.length < urlLength) {
+                url = new byte[Math.max(urlLength, url.length * 2)];
+            }
+            renderer.writeTo(template, url, 0);
+            int escapedKeyLength = format.escapedKeyLength(reader.line, reader.offset, reader.length);
+            int rowLength = format.rowLength(escapedKeyLength, urlLength);
+            if (row.length < rowLength) {
+                row = new byte[Math.max(rowLength, row.length * 2)];
+            }
+            format.writeRow(row, 0, reader.line, reader.offset, reader.length, escapedKeyLength, url, urlLength);
+            writer.write(row, rowLength);
+        }
+        writer.force();
+        if (writer.position != end) {
+            throw new IllegalStateException("chunk needed " + (writer.position - offset) + " bytes but " + (end - offset) + " were measured");
+        }
+    }
+
+    private static <T> List<T> invokeAll(ExecutorService executor, List<Callable<T>> tasks) throws IOException {
+        try {
+            List<T> result = new ArrayList<>(tasks.size());
+            for (Future<T> future : executor.invokeAll(tasks)) {
+                result.add(future.get());
+            }
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("export got interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new UncheckedIOException(new IOException(cause));
+        }
+    }
+
+    /**
+     * Reads the lines of a region window by window. The mapped window is copied block wise into a heap array that is
+     * scanned for line breaks, the current line without line break is {@link #line}[{@link #offset}, +{@link #length}).
+     */
+    private static final class LineReader {
+
+        private final FileChannel channel;
+
+        private final long end;
+
+        private final int windowSize;
+
+        private MappedByteBuffer window;
+
+        /**
+         * file position of the next byte to copy into the block
+         */
+        private long position;
+
+        private byte[] line = new byte[BLOCK_SIZE];
+
+        /**
+         * start of the unread bytes within line
+         */
+        private int start;
+
+        /**
+         * where the search for the next line break continues
+         */
+        private int scan;
+
+        private int limit;
+
+        private int offset;
+
+        private int length;
+
+        LineReader(FileChannel channel, long from, long to, int windowSize) {
+            this.channel = channel;
+            this.position = from;
+            this.end = to;
+            this.windowSize = windowSize;
+        }
+
+        boolean next() throws IOException {
+            while (true) {
+                while (scan < limit && line[scan] != '\n') {
+                    scan++;
+                }
+                if (scan == limit && position < end) {
+                    fill();
+                    continue;
+                }
+                if (start == limit) {
+                    return false;
+                }
+                // scan is at the line break or at the end of the region for a last line without one
+                offset = start;
+                length = scan - start;
+                start = scan = Math.min(scan + 1, limit);
+                if (length > 0 && line[offset + length - 1] == '\r') {
+                    length--;
+                }
+                if (length > 0) {
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * moves the unread bytes to the front and appends the next bytes of the region
+         */
+        private void fill() throws IOException {
+            int unread = limit - start;
+            if (unread == line.length) {
+                line = Arrays.copyOf(line, line.length * 2);
+            }
+            System.arraycopy(line, start, line, 0, unread);
+            scan -= start;
+            start = 0;
+            limit = unread;
+            if (window == null || !window.hasRemaining()) {
+                window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(windowSize, end - position));
+            }
+            int count = Math.min(line.length - limit, window.remaining());
+            window.get(line, limit, count);
+            limit += count;
+            position += count;
+        }
+    }
+
+    /**
+     * writes into a region of the output window by window
+     */
+    private static final class MappedWriter {
+
+        private final FileChannel channel;
+
+        private final long end;
+
+        private final int windowSize;
+
+        private MappedByteBuffer window;
+
+        private long position;
+
+        MappedWriter(FileChannel channel, long from, long to, int windowSize) {
+            this.channel = channel;
+            this.position = from;
+            this.end = to;
+            this.windowSize = windowSize;
+        }
+
+        void write(byte[] source, int length) throws IOException {
+            if (position + length > end) {
+                throw new IllegalStateException("row exceeds the measured region of the chunk");
+            }
+            int offset = 0;
+            while (offset < length) {
+                if (window == null || !window.hasRemaining()) {
+                    force();
+                    window = channel.map(FileChannel.MapMode.READ_WRITE, position, Math.min(windowSize, end - position));
+                }
+                int count = Math.min(window.remaining(), length - offset);
+                window.put(source, offset, count);
+                offset += count;
+                position += count;
+            }
+        }
+
+        /**
+         * writes the current window to the disk - export only returns once the rows are persisted
+         */
+        void force() {
+            if (window != null) {
+                window.force();
+            }
+        }
+    }
+
+    @Getter
+    @ToString
+    @RequiredArgsConstructor
+    public static final class Result {
+
+        private final long rows;
+
+        private final long bytes;
+
+        private final long durationNanos;
+
+        public double getUrlsPerSecond() {
+            return durationNanos > 0 ? rows * 1_000_000_000.0 / durationNanos : 0;
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package io.rocketbase.asset.imgproxy;
+
+import io.rocketbase.asset.imgproxy.instrumentation.UrlListener;
+import io.rocketbase.asset.imgproxy.options.ImageType;
+
+import java.io.IOException;
+
+/**
+ * Per thread scratch buffers to render a {@link SignatureTemplate} url without intermediate objects.
+ * <p>
+ * Rendering happens in two steps: {@link #prepare(SignatureTemplate, String, ImageType)} encodes the source url as utf-8,
+ * appends its base64url form to the option path and signs it. Afterwards one of the write methods emits the finished url.
+ * Buffers only grow, so in steady state a thread renders urls without any allocation on its own.
+ */
+final class UrlRenderer {
+
+    private static final ThreadLocal<UrlRenderer> RENDERERS = ThreadLocal.withInitial(UrlRenderer::new);
+
+    private static final byte[] UNSIGNED = UrlSigner.UNSIGNED.getBytes();
+
+    private static final byte[][] EXTENSIONS = new byte[ImageType.values().length][];
+
+    static {
+        for (ImageType imageType : ImageType.values()) {
+            EXTENSIONS[imageType.ordinal()] = ("." + imageType.name()).getBytes();
+        }
+    }
+
+    private static final byte[] SEPARATOR = "/".getBytes();
+
+    private static final byte[] ENCRYPTED = "/enc/".getBytes();
+
+    private byte[] source = new byte[256];
+
+    private byte[] encrypted = new byte[SourceEncryptor.encryptedLength(256)];
+
+    /**
+     * utf-8 option path followed by /%encoded_source_url.%extension or /enc/%encrypted_source_url.%extension - exactly the bytes that get signed
+     */
+    private byte[] path = new byte[512];
+
+    private int pathLength;
+
+    /**
+     * position within path where the ascii only source part starts
+     */
+    private int sourceOffset;
+
+    /**
+     * base url of the prepared url - differs per source url with {@link SignatureConfiguration#routing(ConsistentHashRing)}
+     */
+    private String baseurl;
+
+    private byte[] baseurlBytes;
+
+    private final byte[] digest = new byte[UrlSigner.DIGEST_LENGTH];
+
+    private final byte[] signature = new byte[UrlCodec.base64Length(UrlSigner.DIGEST_LENGTH)];
+
+    private int signatureLength;
+
+    private final StringBuilder builder = new StringBuilder(256);
+
+    static UrlRenderer get() {
+        return RENDERERS.get();
+    }
+
+    UrlRenderer prepare(SignatureTemplate template, String sourceUrl, ImageType imageType) {
+        // read once - the only cost of disabled instrumentation is this null check
+        UrlListener listener = template.getConfiguration().getListener();
+        long start = listener != null ? System.nanoTime() : 0L;
+        ensureSourceCapacity(UrlCodec.maxUtf8Length(sourceUrl.length()));
+        int sourceLength = UrlCodec.encodeUtf8(sourceUrl, 0, sourceUrl.length(), source, 0);
+        return prepare(template, sourceLength, imageType, sourceUrl.length(), listener, start);
+    }
+
+    /**
+     * prepares the source url prefix + key given as utf-8 bytes, without decoding them into a string
+     */
+    UrlRenderer prepare(SignatureTemplate template, byte[] prefix, byte[] key, int keyOffset, int keyLength, ImageType imageType) {
+        UrlListener listener = template.getConfiguration().getListener();
+        long start = listener != null ? System.nanoTime() : 0L;
+        ensureSourceCapacity(prefix.length + keyLength);
+        System.arraycopy(prefix, 0, source, 0, prefix.length);
+        System.arraycopy(key, keyOffset, source, prefix.length, keyLength);
+        return prepare(template, prefix.length + keyLength, imageType, prefix.length + keyLength, listener, start);
+    }
+
+    private void ensureSourceCapacity(int capacity) {
+        if (source.length < capacity) {
+            source = new byte[Math.max(capacity, source.length * 2)];
+        }
+    }
+
+    private UrlRenderer prepare(SignatureTemplate template, int sourceLength, ImageType imageType, int sourceUrlLength, UrlListener listener, long start) {
+        ConsistentHashRing routing = template.getConfiguration().getRouting();
+        if (routing != null) {
+            // routed by the plain source url, so encrypted and plain urls of an image end up on the same node
+            int node = routing.node(source, sourceLength);
+            baseurl = routing.baseurl(node);
+            baseurlBytes = routing.baseurlBytes(node);
+        } else {
+            baseurl = template.getConfiguration().getBaseurl();
+            baseurlBytes = template.getBaseurlBytes();
+        }
+        byte[] payload = source;
+        int payloadLength = sourceLength;
+        if (template.isEncryptSource()) {
+            if (encrypted.length < SourceEncryptor.encryptedLength(sourceLength)) {
+                encrypted = new byte[Math.max(SourceEncryptor.encryptedLength(sourceLength), encrypted.length * 2)];
+            }
+            payload = encrypted;
+            payloadLength = template.getConfiguration().getSourceEncryptor().encrypt(source, sourceLength, encrypted, 0);
+        }
+
+        byte[] optionPath = template.getOptionPathBytes();
+        byte[] separator = template.isEncryptSource() ? ENCRYPTED : SEPARATOR;
+        byte[] extension = imageType != null ? EXTENSIONS[imageType.ordinal()] : null;
+        int length = optionPath.length + separator.length + UrlCodec.base64Length(payloadLength) + (extension != null ? extension.length : 0);
+        if (path.length < length) {
+            path = new byte[Math.max(length, path.length * 2)];
+        }
+        System.arraycopy(optionPath, 0, path, 0, optionPath.length);
+        sourceOffset = optionPath.length;
+        System.arraycopy(separator, 0, path, sourceOffset, separator.length);
+        int position = UrlCodec.encodeBase64Url(payload, payloadLength, path, sourceOffset + separator.length);
+        if (extension != null) {
+            System.arraycopy(extension, 0, path, position, extension.length);
+            position += extension.length;
+        }
+        pathLength = position;
+        long encoded = listener != null ? System.nanoTime() : 0L;
+
+        UrlSigner signer = template.getConfiguration().getSigner();
+        if (signer.isSigned()) {
+            signer.digest(path, pathLength, digest);
+            signatureLength = UrlCodec.encodeBase64Url(digest, template.getNumberOfSignatureBytes(), signature, 0);
+        } else {
+            System.arraycopy(UNSIGNED, 0, signature, 0, UNSIGNED.length);
+            signatureLength = UNSIGNED.length;
+        }
+        if (listener != null) {
+            listener.onUrlGenerated(template.getConfiguration(), imageType, signer.isSigned(), sourceUrlLength,
+                    template.getOptionCount(), encoded - start, System.nanoTime() - encoded);
+        }
+        return this;
+    }
+
+    /**
+     * @return amount of chars of the prepared url
+     */
+    int length(SignatureTemplate template) {
+        return baseurl.length() + 1 + signatureLength + template.getOptionPath().length() + pathLength - sourceOffset;
+    }
+
+    void writeTo(SignatureTemplate template, Appendable out) throws IOException {
+        out.append(baseurl)
+                .append('/');
+        for (int i = 0; i < signatureLength; i++) {
+            out.append((char) signature[i]);
+        }
+        out.append(template.getOptionPath());
+        for (int i = sourceOffset; i < pathLength; i++) {
+            out.append((char) path[i]);
+        }
+    }
+
+    void writeTo(SignatureTemplate template, StringBuilder out) {
+        out.ensureCapacity(out.length() + length(template));
+        out.append(baseurl)
+                .append('/');
+        for (int i = 0; i < signatureLength; i++) {
+            out.append((char) signature[i]);
+        }
+        out.append(template.getOptionPath());
+        for (int i = sourceOffset; i < pathLength; i++) {
+            out.append((char) path[i]);
+        }
+    }
+
+    /**
+     * @return amount of written chars
+     */
+    int writeTo(SignatureTemplate template, char[] destination, int offset) {
+        int length = length(template);
+        if (offset < 0 || destination.length - offset < length) {
+            throw new IllegalArgumentException("destination needs " + length + " chars starting at offset " + offset);
+        }
+        baseurl.getChars(0, baseurl.length(), destination, offset);
+        int position = offset + baseurl.length();
+        destination[position++] = '/';
+        for (int i = 0; i < signatureLength; i++) {
+            destination[position++] = (char) signature[i];
+        }
+        String optionPath = template.getOptionPath();
+        optionPath.getChars(0, optionPath.length(), destination, position);
+        position += optionPath.length();
+        for (int i = sourceOffset; i < pathLength; i++) {
+            destination[position++] = (char) path[i];
+        }
+        return position - offset;
+    }
+
+    /**
+     * writes the url as utf-8 bytes, the destination needs {@link #byteLength(SignatureTemplate)} bytes from offset
+     *
+     * @return amount of written bytes
+     */
+    int writeTo(SignatureTemplate template, byte[] destination, int offset) {
+        System.arraycopy(baseurlBytes, 0, destination, offset, baseurlBytes.length);
+        int position = offset + baseurlBytes.length;
+        destination[position++] = '/';
+        System.arraycopy(signature, 0, destination, position, signatureLength);
+        position += signatureLength;
+        System.arraycopy(path, 0, destination, position, pathLength);
+        position += pathLength;
+        return position - offset;
+    }
+
+    /**
+     * @return amount of utf-8 bytes of the prepared url
+     */
+    int byteLength(SignatureTemplate template) {
+        return baseurlBytes.length + 1 + signatureLength + pathLength;
+    }
+
+    String toString(SignatureTemplate template) {
+        builder.setLength(0);
+        writeTo(template, builder);
+        return builder.toString();
+    }
+}
@@ -0,0 +1,151 @@
+package io.rocketbase.asset.imgproxy;
+
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+
+/**
+ * Prepared HMAC-SHA256 signer for one key/salt pair.
+ * <p>
+ * The key schedule runs once when the signer is created, every thread then works on its own clone of the keyed {@link Mac}.
+ * A {@link Mac} always resets to its keyed state after {@link Mac#doFinal()}, so the salt is kept as cached bytes and fed
+ * in front of the path - for salts shorter than one SHA-256 block that is a plain buffer copy.
+ */
+final class UrlSigner {
+
+    static final String ALGORITHM = "HmacSHA256";
+
+    static final String UNSIGNED = "notset";
+
+    static final int DIGEST_LENGTH = 32;
+
+    /**
+     * SHA-256 compresses 64 byte blocks - absorbing less than that only fills a buffer and isn't worth a midstate
+     */
+    static final int BLOCK_LENGTH = 64;
+
+    private static final UrlSigner NOT_SET = new UrlSigner(null, null, null);
+
+    private final SecretKeySpec key;
+
+    private final Mac prototype;
+
+    private final byte[] salt;
+
+    private final ThreadLocal<Mac> macs;
+
+    private UrlSigner(SecretKeySpec key, Mac prototype, byte[] salt) {
+        this.key = key;
+        this.prototype = prototype;
+        this.salt = salt;
+        this.macs = prototype != null ? ThreadLocal.withInitial(this::copyPrototype) : null;
+    }
+
+    static UrlSigner of(String key, String salt) {
+        if (key == null || salt == null) {
+            return NOT_SET;
+        }
+        return of(key.getBytes(), salt.getBytes());
+    }
+
+    static UrlSigner of(byte[] key, byte[] salt) {
+        SecretKeySpec keySpec = new SecretKeySpec(key, ALGORITHM);
+        return new UrlSigner(keySpec, newMac(keySpec), salt);
+    }
+
+    boolean isSigned() {
+        return prototype != null;
+    }
+
+    /**
+     * calculates the full 32 byte hmac of salt + path
+     */
+    byte[] digest(byte[] path) {
+        Mac mac = macs.get();
+        mac.update(salt);
+        mac.update(path);
+        return mac.doFinal();
+    }
+
+    /**
+     * writes the full 32 byte hmac of salt + path[0, length) into digest without allocating an own result array
+     */
+    void digest(byte[] path, int length, byte[] digest) {
+        Mac mac = macs.get();
+        mac.update(salt);
+        mac.update(path, 0, length);
+        try {
+            mac.doFinal(digest, 0);
+        } catch (ShortBufferException e) {
+            throw new IllegalArgumentException("digest needs at least " + DIGEST_LENGTH + " bytes", e);
+        }
+    }
+
+    /**
+     * Snapshots the hmac state after absorbing salt + prefix[0, length), so paths sharing this prefix only hash their
+     * remaining bytes via {@link #digest(Mac, byte[], int, int, byte[])}.
+     *
+     * @return the midstate or null when the prefix is shorter than one block or the provider can't clone its state
+     */
+    Mac midstate(byte[] prefix, int length) {
+        if (!isSigned() || salt.length + length < BLOCK_LENGTH) {
+            return null;
+        }
+        Mac mac = macs.get();
+        mac.update(salt);
+        mac.update(prefix, 0, length);
+        try {
+            return (Mac) mac.clone();
+        } catch (CloneNotSupportedException e) {
+            return null;
+        } finally {
+            mac.reset();
+        }
+    }
+
+    /**
+     * writes the hmac of the midstate continued with path[offset, length) into digest
+     */
+    void digest(Mac midstate, byte[] path, int offset, int length, byte[] digest) {
+        try {
+            Mac mac = (Mac) midstate.clone();
+            mac.update(path, offset, length - offset);
+            mac.doFinal(digest, 0);
+        } catch (CloneNotSupportedException | ShortBufferException e) {
+            throw new IllegalStateException("could not continue midstate", e);
+        }
+    }
+
+    /**
+     * signs the given path the same way as {@link Signature#signUrl(String, String, String, int)}
+     */
+    String sign(String path, int numberOfSignatureBytes) {
+        if (!isSigned()) {
+            return UNSIGNED;
+        }
+        byte[] signature = new byte[UrlCodec.base64Length(numberOfSignatureBytes)];
+        int length = UrlCodec.encodeBase64Url(digest(path.getBytes(StandardCharsets.UTF_8)), numberOfSignatureBytes, signature, 0);
+        return new String(signature, 0, length, StandardCharsets.US_ASCII);
+    }
+
+    private Mac copyPrototype() {
+        try {
+            return (Mac) prototype.clone();
+        } catch (CloneNotSupportedException e) {
+            // provider without clone support - pay the key schedule once per thread instead
+            return newMac(key);
+        }
+    }
+
+    private static Mac newMac(SecretKeySpec key) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("could not prepare " + ALGORITHM + " signer", e);
+        }
+    }
+}
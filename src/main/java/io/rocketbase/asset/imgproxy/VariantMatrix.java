@@ -0,0 +1,296 @@
+package io.rocketbase.asset.imgproxy;
+
+import io.rocketbase.asset.imgproxy.instrumentation.UrlListener;
+import io.rocketbase.asset.imgproxy.options.ImageType;
+import lombok.RequiredArgsConstructor;
+
+import javax.crypto.Mac;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Generates all urls of a responsive image (srcset / picture) out of a base {@link Signature} chain multiplied by widths,
+ * device pixel ratios and image types.
+ * <p>
+ * Per source url the source is encoded only once. The option paths of all variants are compiled upfront and their
+ * common prefix is absorbed into a single hmac midstate that every variant continues from.
+ * <p>
+ * usage:
+ * <pre>
+ * VariantMatrix matrix = VariantMatrix.of(Signature.of(configuration).resize(ResizeType.fit, 0, 0).quality(80))
+ *         .widths(320, 640, 1280)
+ *         .dprs(1, 2)
+ *         .imageTypes(ImageType.avif, ImageType.webp, ImageType.jpg);
+ * ResponsiveImage image = matrix.render(sourceUrl);
+ * </pre>
+ * Configure the matrix once, afterwards render can be called from any thread.
+ */
+public final class VariantMatrix {
+
+    private final Signature base;
+
+    private int[] widths = new int[0];
+
+    private double[] dprs = {1};
+
+    private ImageType[] imageTypes = {null};
+
+    private volatile Plan plan;
+
+    private VariantMatrix(Signature base) {
+        this.base = base.copy();
+    }
+
+    /**
+     * @param base chain with all shared processing options, later changes on it don't affect the matrix
+     */
+    public static VariantMatrix of(Signature base) {
+        return new VariantMatrix(base);
+    }
+
+    public VariantMatrix widths(int... widths) {
+        for (int width : widths) {
+            if (width <= 0) {
+                throw new IllegalArgumentException("widths must be greater than 0");
+            }
+        }
+        this.widths = widths.clone();
+        this.plan = null;
+        return this;
+    }
+
+    /**
+     * Device pixel ratios per width, a dpr of 1 doesn't add the dpr option. Default: 1
+     */
+    public VariantMatrix dprs(double... dprs) {
+        if (dprs.length == 0) {
+            throw new IllegalArgumentException("at least one dpr is needed");
+        }
+        for (double dpr : dprs) {
+            if (dpr <= 0) {
+                throw new IllegalArgumentException("dprs must be greater than 0");
+            }
+        }
+        this.dprs = dprs.clone();
+        this.plan = null;
+        return this;
+    }
+
+    /**
+     * Resulting image types in order of preference. Default: only the source type without extension
+     */
+    public VariantMatrix imageTypes(ImageType... imageTypes) {
+        if (imageTypes.length == 0) {
+            throw new IllegalArgumentException("at least one imageType is needed");
+        }
+        this.imageTypes = imageTypes.clone();
+        this.plan = null;
+        return this;
+    }
+
+    public ResponsiveImage render(String sourceUrl) {
+        Plan current = plan();
+        return current.render(sourceUrl, current.steps);
+    }
+
+    /**
+     * Renders only the variants that aren't wider (width * dpr) than the source - larger ones would only upscale or return
+     * the source itself. When variants got skipped, one variant with the source width takes their place. Meant for chains
+     * without enlarge, the source width could be fetched via the imgproxy info endpoint.
+     *
+     * @param sourceWidth width of the source image, 0 or less when unknown
+     */
+    public ResponsiveImage render(String sourceUrl, int sourceWidth) {
+        Plan current = plan();
+        return current.render(sourceUrl, current.clamp(base, sourceWidth));
+    }
+
+    private Plan plan() {
+        Plan current = plan;
+        if (current == null) {
+            current = new Plan(base, widths, dprs, imageTypes);
+            plan = current;
+        }
+        return current;
+    }
+
+    @RequiredArgsConstructor
+    private static final class Step {
+        private final int width;
+        private final double dpr;
+        private final SignatureTemplate template;
+        /**
+         * option path starts with the shared prefix of the plan, so it can continue from the midstate
+         */
+        private final boolean shared;
+    }
+
+    /**
+     * compiled variants - immutable once created
+     */
+    private static final class Plan {
+
+        private final SignatureConfiguration configuration;
+
+        private final List<Step> steps = new ArrayList<>();
+
+        private final ImageType[] imageTypes;
+
+        private final int sharedPrefixLength;
+
+        private final boolean encryptSource;
+
+        Plan(Signature base, int[] widths, double[] dprs, ImageType[] imageTypes) {
+            this.imageTypes = imageTypes;
+            SignatureTemplate baseTemplate = base.compile();
+            this.configuration = baseTemplate.getConfiguration();
+            this.encryptSource = baseTemplate.isEncryptSource();
+            if (widths.length == 0) {
+                for (double dpr : dprs) {
+                    steps.add(new Step(0, dpr, variant(base, 0, dpr), true));
+                }
+            }
+            for (int width : widths) {
+                for (double dpr : dprs) {
+                    steps.add(new Step(width, dpr, variant(base, width, dpr), true));
+                }
+            }
+            int prefix = steps.get(0).template.getOptionPathBytes().length;
+            byte[] first = steps.get(0).template.getOptionPathBytes();
+            for (Step step : steps) {
+                byte[] optionPath = step.template.getOptionPathBytes();
+                prefix = Math.min(prefix, optionPath.length);
+                for (int i = 0; i < prefix; i++) {
+                    if (optionPath[i] != first[i]) {
+                        prefix = i;
+                        break;
+                    }
+                }
+            }
+            this.sharedPrefixLength = prefix;
+        }
+
+        /**
+         * @return steps not wider than the source plus one with the source width in place of the skipped ones
+         */
+        List<Step> clamp(Signature base, int sourceWidth) {
+            if (sourceWidth <= 0 || steps.get(0).width == 0) {
+                return steps;
+            }
+            List<Step> result = new ArrayList<>(steps.size());
+            boolean skipped = false;
+            boolean sourceWidthContained = false;
+            for (Step step : steps) {
+                long effectiveWidth = Math.round(step.width * step.dpr);
+                if (effectiveWidth > sourceWidth) {
+                    skipped = true;
+                } else {
+                    result.add(step);
+                    sourceWidthContained |= effectiveWidth == sourceWidth;
+                }
+            }
+            if (skipped && !sourceWidthContained) {
+                SignatureTemplate template = variant(base, sourceWidth, 1);
+                byte[] optionPath = template.getOptionPathBytes();
+                byte[] first = steps.get(0).template.getOptionPathBytes();
+                boolean shared = optionPath.length >= sharedPrefixLength;
+                for (int i = 0; shared && i < sharedPrefixLength; i++) {
+                    shared = optionPath[i] == first[i];
+                }
+                result.add(new Step(sourceWidth, 1, template, shared));
+            }
+            return result;
+        }
+
+        private static SignatureTemplate variant(Signature base, int width, double dpr) {
+            Signature variant = base.copy();
+            if (width > 0) {
+                variant.exactWidth(width);
+            }
+            if (dpr != 1) {
+                variant.dpr(dpr);
+            }
+            return variant.compile();
+        }
+
+        ResponsiveImage render(String sourceUrl, List<Step> steps) {
+            UrlListener listener = configuration.getListener();
+            long start = listener != null ? System.nanoTime() : 0L;
+            byte[] source = new byte[UrlCodec.maxUtf8Length(sourceUrl.length())];
+            int sourceLength = UrlCodec.encodeUtf8(sourceUrl, 0, sourceUrl.length(), source, 0);
+            String separator = "/";
+            if (encryptSource) {
+                byte[] encrypted = new byte[SourceEncryptor.encryptedLength(sourceLength)];
+                sourceLength = configuration.getSourceEncryptor().encrypt(source, sourceLength, encrypted, 0);
+                source = encrypted;
+                separator = "/enc/";
+            }
+            byte[] encoded = new byte[separator.length() + UrlCodec.base64Length(sourceLength)];
+            for (int i = 0; i < separator.length(); i++) {
+                encoded[i] = (byte) separator.charAt(i);
+            }
+            int encodedLength = UrlCodec.encodeBase64Url(source, sourceLength, encoded, separator.length());
+            String encodedSource = new String(encoded, 0, encodedLength, StandardCharsets.US_ASCII);
+            // the source gets encoded once for all variants - reported with the first one
+            long encodeNanos = listener != null ? System.nanoTime() - start : 0L;
+
+            UrlSigner signer = configuration.getSigner();
+            byte[] firstOptionPath = this.steps.get(0).template.getOptionPathBytes();
+            Mac midstate = signer.midstate(firstOptionPath, sharedPrefixLength);
+
+            int maxOptionPath = 0;
+            for (Step step : steps) {
+                maxOptionPath = Math.max(maxOptionPath, step.template.getOptionPathBytes().length);
+            }
+            byte[] path = new byte[maxOptionPath + encodedLength + 16];
+            byte[] digest = new byte[UrlSigner.DIGEST_LENGTH];
+            byte[] signature = new byte[UrlCodec.base64Length(UrlSigner.DIGEST_LENGTH)];
+            String baseurl = configuration.baseurl(sourceUrl);
+            StringBuilder builder = new StringBuilder(baseurl.length() + maxOptionPath + encodedLength + 64);
+
+            List<ResponsiveImage.Variant> variants = new ArrayList<>(steps.size() * imageTypes.length);
+            for (ImageType imageType : imageTypes) {
+                String extension = imageType != null ? "." + imageType.name() : "";
+                for (Step step : steps) {
+                    byte[] optionPath = step.template.getOptionPathBytes();
+                    System.arraycopy(optionPath, 0, path, 0, optionPath.length);
+                    System.arraycopy(encoded, 0, path, optionPath.length, encodedLength);
+                    int pathLength = optionPath.length + encodedLength;
+                    for (int i = 0; i < extension.length(); i++) {
+                        path[pathLength++] = (byte) extension.charAt(i);
+                    }
+
+                    long signStart = listener != null ? System.nanoTime() : 0L;
+                    builder.setLength(0);
+                    builder.append(baseurl)
+                            .append('/');
+                    if (!signer.isSigned()) {
+                        builder.append(UrlSigner.UNSIGNED);
+                    } else {
+                        if (midstate != null && step.shared) {
+                            signer.digest(midstate, path, sharedPrefixLength, pathLength, digest);
+                        } else {
+                            signer.digest(path, pathLength, digest);
+                        }
+                        int signatureLength = UrlCodec.encodeBase64Url(digest, step.template.getNumberOfSignatureBytes(), signature, 0);
+                        for (int i = 0; i < signatureLength; i++) {
+                            builder.append((char) signature[i]);
+                        }
+                    }
+                    builder.append(step.template.getOptionPath())
+                            .append(encodedSource)
+                            .append(extension);
+                    variants.add(new ResponsiveImage.Variant(step.width, step.dpr, imageType, builder.toString()));
+                    if (listener != null) {
+                        listener.onUrlGenerated(configuration, imageType, signer.isSigned(), sourceUrl.length(),
+                                step.template.getOptionCount(), encodeNanos, System.nanoTime() - signStart);
+                        encodeNanos = 0L;
+                    }
+                }
+            }
+            return new ResponsiveImage(sourceUrl, Arrays.asList(imageTypes), variants);
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package io.rocketbase.asset.imgproxy.client;
+
+import io.rocketbase.asset.imgproxy.SignatureTemplate;
+import io.rocketbase.asset.imgproxy.instrumentation.LatencyHistogram;
+import io.rocketbase.asset.imgproxy.options.ImageType;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Generates all variants of the given source urls and requests them once, so imgproxy and the caches in front of it are
+ * warm before real visitors arrive - after a deploy or a catalog import.
+ * <p>
+ * Urls are generated lazily while requesting. Concurrency, request rate and retries are bounded; server errors (5xx,
+ * 429) and io errors are retried with exponential backoff, other status codes count as done.
+ * <p>
+ * usage:
+ * <pre>
+ * WarmupReport report = CacheWarmer.of(client)
+ *         .sources(sourceUrls)
+ *         .variants(thumbnail, detail)
+ *         .imageTypes(ImageType.webp, ImageType.avif)
+ *         .concurrency(16)
+ *         .requestsPerSecond(200)
+ *         .run();
+ * </pre>
+ */
+public final class CacheWarmer {
+
+    public enum Method {
+        /**
+         * imgproxy renders the image but the body isn't transferred
+         */
+        HEAD,
+        GET
+    }
+
+    private final ImgproxyClient client;
+
+    private Collection<String> sources = Collections.emptyList();
+
+    private List<SignatureTemplate> variants = Collections.emptyList();
+
+    private List<ImageType> imageTypes = Collections.singletonList(null);
+
+    private Method method = Method.HEAD;
+
+    private int concurrency = 8;
+
+    private double requestsPerSecond;
+
+    private int maxRetries = 2;
+
+    private long retryBackoffMillis = 100;
+
+    private CacheWarmer(ImgproxyClient client) {
+        this.client = client;
+    }
+
+    public static CacheWarmer of(ImgproxyClient client) {
+        return new CacheWarmer(client);
+    }
+
+    public CacheWarmer sources(Collection<String> sources) {
+        this.sources = sources;
+        return this;
+    }
+
+    /**
+     * compiled option chains, every source url is requested with each of them
+     */
+    public CacheWarmer variants(SignatureTemplate... variants) {
+        this.variants = Arrays.asList(variants);
+        return this;
+    }
+
+    /**
+     * extensions to request per variant, by default only urls without extension
+     */
+    public CacheWarmer imageTypes(ImageType... imageTypes) {
+        this.imageTypes = Arrays.asList(imageTypes);
+        return this;
+    }
+
+    public CacheWarmer method(Method method) {
+        this.method = method;
+        return this;
+    }
+
+    /**
+     * maximum amount of requests in flight
+     */
+    public CacheWarmer concurrency(int concurrency) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("concurrency must be at least 1");
+        }
+        this.concurrency = concurrency;
+        return this;
+    }
+
+    /**
+     * upper bound of started requests per second including retries, 0 for unlimited
+     */
+    public CacheWarmer requestsPerSecond(double requestsPerSecond) {
+        if (requestsPerSecond < 0) {
+            throw new IllegalArgumentException("requestsPerSecond must not be negative");
+        }
+        this.requestsPerSecond = requestsPerSecond;
+        return this;
+    }
+
+    public CacheWarmer maxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+        return this;
+    }
+
+    /**
+     * delay before the first retry, doubles with every further attempt
+     */
+    public CacheWarmer retryBackoffMillis(long retryBackoffMillis) {
+        this.retryBackoffMillis = retryBackoffMillis;
+        return this;
+    }
+
+    /**
+     * requests all variants and blocks until every url is done
+     */
+    public WarmupReport run() throws InterruptedException {
+        // long - a large catalog times variants and image types easily passes Integer.MAX_VALUE
+        long total = (long) sources.size() * variants.size() * imageTypes.size();
+        Run run = new Run();
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "imgproxy-warmup-retry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long start = System.nanoTime();
+        try {
+            for (String source : sources) {
+                for (SignatureTemplate variant : variants) {
+                    for (ImageType imageType : imageTypes) {
+                        run.permits.acquire();
+                        run.start(variant.url(source, imageType), scheduler);
+                    }
+                }
+            }
+            // all permits back means every request including its retries is done
+            run.permits.acquire(concurrency);
+            run.permits.release(concurrency);
+        } finally {
+            scheduler.shutdownNow();
+        }
+        return new WarmupReport(total, run.succeeded.get(), run.failed.get(), run.retries.get(), System.nanoTime() - start,
+                run.latencies);
+    }
+
+    /**
+     * state of one {@link #run()}, a permit is held from the first attempt of an url until it's done
+     */
+    private final class Run {
+
+        private final Semaphore permits = new Semaphore(concurrency);
+
+        private final long intervalNanos = requestsPerSecond > 0 ? (long) (1_000_000_000L / requestsPerSecond) : 0;
+
+        private long nextStartNanos = System.nanoTime();
+
+        /**
+         * constant size no matter how many urls are requested
+         */
+        private final LatencyHistogram latencies = new LatencyHistogram();
+
+        private final AtomicLong succeeded = new AtomicLong();
+
+        private final AtomicLong failed = new AtomicLong();
+
+        private final AtomicLong retries = new AtomicLong();
+
+        /**
+         * first attempt of an url, the run thread waits for its start slot
+         */
+        void start(String url, ScheduledExecutorService scheduler) {
+            long startAt = reserveStart();
+            long wait;
+            while ((wait = startAt - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            request(url, 0, scheduler);
+        }
+
+        /**
+         * retry after the backoff - reschedules itself until its start slot instead of blocking the single retry thread
+         */
+        private void retry(String url, int attempt, ScheduledExecutorService scheduler) {
+            long wait = reserveStart() - System.nanoTime();
+            if (wait > 0) {
+                scheduler.schedule(() -> request(url, attempt, scheduler), wait, TimeUnit.NANOSECONDS);
+            } else {
+                request(url, attempt, scheduler);
+            }
+        }
+
+        private void request(String url, int attempt, ScheduledExecutorService scheduler) {
+            long start = System.nanoTime();
+            CompletableFuture<ImageResponse> request = method == Method.HEAD ? client.head(url) : client.fetch(url);
+            request.whenComplete((response, error) -> {
+                long latency = System.nanoTime() - start;
+                boolean retryable = error != null || response.getStatusCode() >= 500 || response.getStatusCode() == 429;
+                if (retryable && attempt < maxRetries) {
+                    retries.incrementAndGet();
+                    long delay = retryBackoffMillis << Math.min(attempt, 20);
+                    scheduler.schedule(() -> retry(url, attempt + 1, scheduler), delay, TimeUnit.MILLISECONDS);
+                    return;
+                }
+                (retryable ? failed : succeeded).incrementAndGet();
+                latencies.record(latency);
+                permits.release();
+            });
+        }
+
+        /**
+         * spaces request starts by the configured interval, called from the run thread and the retry thread
+         *
+         * @return System.nanoTime() at which the request may start
+         */
+        private long reserveStart() {
+            long now = System.nanoTime();
+            if (intervalNanos == 0) {
+                return now;
+            }
+            synchronized (this) {
+                long startAt = Math.max(nextStartNanos, now);
+                nextStartNanos = startAt + intervalNanos;
+                return startAt;
+            }
+        }
+    }
+}
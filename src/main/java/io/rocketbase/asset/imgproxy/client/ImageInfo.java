@@ -0,0 +1,114 @@
+package io.rocketbase.asset.imgproxy.client;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.ToString;
+
+/**
+ * Source image metadata returned by the imgproxy /info endpoint.
+ */
+@Getter
+@ToString
+@RequiredArgsConstructor
+public final class ImageInfo {
+
+    private final int width;
+
+    private final int height;
+
+    /**
+     * source format like "jpeg", could be null
+     */
+    private final String format;
+
+    /**
+     * source file size in bytes, -1 when unknown
+     */
+    private final long size;
+
+    /**
+     * @return the requested width, at most the source width - larger values only upscale or return the source
+     */
+    public int clampWidth(int width) {
+        return Math.min(width, this.width);
+    }
+
+    /**
+     * @return the requested height, at most the source height
+     */
+    public int clampHeight(int height) {
+        return Math.min(height, this.height);
+    }
+
+    /**
+     * parses the flat json object of the /info response, unknown fields are ignored
+     *
+     * @throws IllegalStateException when width or height are missing - clamping against them would yield -1
+     */
+    static ImageInfo parse(String json) {
+        long width = number(json, "width");
+        long height = number(json, "height");
+        if (width <= 0 || height <= 0) {
+            throw new IllegalStateException("imgproxy info response misses width or height: " + json);
+        }
+        return new ImageInfo((int) width, (int) height, string(json, "format"), number(json, "size"));
+    }
+
+    private static long number(String json, String field) {
+        int position = valueStart(json, field);
+        if (position < 0) {
+            return -1;
+        }
+        int end = position;
+        while (end < json.length() && (Character.isDigit(json.charAt(end)) || json.charAt(end) == '-')) {
+            end++;
+        }
+        return end > position ? Long.parseLong(json.substring(position, end)) : -1;
+    }
+
+    private static String string(String json, String field) {
+        int position = valueStart(json, field);
+        if (position < 0 || json.charAt(position) != '"') {
+            return null;
+        }
+        int end = json.indexOf('"', position + 1);
+        return end > 0 ? json.substring(position + 1, end) : null;
+    }
+
+    /**
+     * @return index of the first value character of a top-level field or -1
+     */
+    private static int valueStart(String json, String field) {
+        String name = "\"" + field + "\"";
+        int depth = 0;
+        for (int i = 0; i < json.length(); i++) {
+            char c = json.charAt(i);
+            if (c == '{' || c == '[') {
+                depth++;
+            } else if (c == '}' || c == ']') {
+                depth--;
+            } else if (c == '"') {
+                if (depth == 1 && json.startsWith(name, i)) {
+                    int colon = i + name.length();
+                    while (colon < json.length() && Character.isWhitespace(json.charAt(colon))) {
+                        colon++;
+                    }
+                    if (colon < json.length() && json.charAt(colon) == ':') {
+                        int value = colon + 1;
+                        while (value < json.length() && Character.isWhitespace(json.charAt(value))) {
+                            value++;
+                        }
+                        return value < json.length() ? value : -1;
+                    }
+                }
+                // skip the string including escaped quotes
+                for (i++; i < json.length() && json.charAt(i) != '"'; i++) {
+                    if (json.charAt(i) == '\\') {
+                        i++;
+                    }
+                }
+            }
+        }
+        return -1;
+    }
+}
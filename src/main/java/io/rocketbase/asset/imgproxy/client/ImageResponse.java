@@ -0,0 +1,32 @@
+package io.rocketbase.asset.imgproxy.client;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Fetched result of an imgproxy url. Coalesced requests share the same instance, so the body must not be modified.
+ */
+@Getter
+@RequiredArgsConstructor
+public final class ImageResponse {
+
+    private final String url;
+
+    private final int statusCode;
+
+    /**
+     * value of the Content-Type header, could be null
+     */
+    private final String contentType;
+
+    private final byte[] body;
+
+    public boolean isSuccessful() {
+        return statusCode >= 200 && statusCode < 300;
+    }
+
+    @Override
+    public String toString() {
+        return "ImageResponse{statusCode=" + statusCode + ", contentType=" + contentType + ", bytes=" + body.length + ", url=" + url + "}";
+    }
+}
@@ -0,0 +1,288 @@
+package io.rocketbase.asset.imgproxy.client;
+
+import io.rocketbase.asset.imgproxy.SignatureTemplate;
+import io.rocketbase.asset.imgproxy.options.ImageType;
+import lombok.RequiredArgsConstructor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Asynchronous http client to fetch processed images from imgproxy.
+ * <p>
+ * Built on {@link HttpURLConnection}, so it runs on java 8 and reuses connections via the jdk keep-alive pool (sized by the
+ * http.maxConnections system property). Concurrent requests for the same url are coalesced into one in-flight fetch whose
+ * result is shared. Requests per imgproxy node (scheme, host and port) are bounded - further ones wait in a queue
+ * without blocking a thread. The jdk keeps at most http.maxConnections (default 5) idle connections per host, so raise it
+ * together with {@link #maxConcurrentRequestsPerNode(int)} - otherwise the connections above it get closed after every
+ * request.
+ * <p>
+ * usage:
+ * <pre>
+ * // started with -Dhttp.maxConnections=16
+ * try (ImgproxyClient client = ImgproxyClient.create().maxConcurrentRequestsPerNode(16)) {
+ *     client.fetch(template, sourceUrl, ImageType.webp)
+ *           .thenAccept(response -> pdf.addImage(response.getBody()));
+ * }
+ * </pre>
+ */
+public final class ImgproxyClient implements AutoCloseable {
+
+    /**
+     * same as the jdk default of http.maxConnections, so every connection goes back into the keep-alive pool
+     */
+    static final int DEFAULT_MAX_CONCURRENT_REQUESTS_PER_NODE = 5;
+
+    /**
+     * upper bound of the initial body buffer - a bogus Content-Length must not allocate up front
+     */
+    static final int MAX_INITIAL_BODY_BUFFER = 1024 * 1024;
+
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+    private final ExecutorService executor;
+
+    private final boolean ownExecutor;
+
+    private final ConcurrentHashMap<String, CompletableFuture<ImageResponse>> inFlight = new ConcurrentHashMap<>();
+
+    private final ConcurrentHashMap<String, Node> nodes = new ConcurrentHashMap<>();
+
+    private volatile int maxConcurrentRequestsPerNode = DEFAULT_MAX_CONCURRENT_REQUESTS_PER_NODE;
+
+    private volatile int connectTimeoutMillis = 5_000;
+
+    private volatile int readTimeoutMillis = 30_000;
+
+    private ImgproxyClient(ExecutorService executor, boolean ownExecutor) {
+        this.executor = executor;
+        this.ownExecutor = ownExecutor;
+    }
+
+    /**
+     * client with its own daemon threads, released via {@link #close()}
+     */
+    public static ImgproxyClient create() {
+        return new ImgproxyClient(Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "imgproxy-client-" + THREAD_COUNTER.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }), true);
+    }
+
+    /**
+     * client running the blocking io on the given executor, it doesn't get shut down on {@link #close()}
+     */
+    public static ImgproxyClient create(ExecutorService executor) {
+        return new ImgproxyClient(executor, false);
+    }
+
+    /**
+     * default 5 - values above http.maxConnections close the surplus connections after each request
+     */
+    public ImgproxyClient maxConcurrentRequestsPerNode(int maxConcurrentRequestsPerNode) {
+        if (maxConcurrentRequestsPerNode < 1) {
+            throw new IllegalArgumentException("maxConcurrentRequestsPerNode must be at least 1");
+        }
+        this.maxConcurrentRequestsPerNode = maxConcurrentRequestsPerNode;
+        return this;
+    }
+
+    public ImgproxyClient connectTimeoutMillis(int connectTimeoutMillis) {
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        return this;
+    }
+
+    public ImgproxyClient readTimeoutMillis(int readTimeoutMillis) {
+        this.readTimeoutMillis = readTimeoutMillis;
+        return this;
+    }
+
+    /**
+     * @param imageType could be null
+     */
+    public CompletableFuture<ImageResponse> fetch(SignatureTemplate template, String sourceUrl, ImageType imageType) {
+        return fetch(template.url(sourceUrl, imageType));
+    }
+
+    /**
+     * Fetches the url via GET. While a fetch of the same url is in flight the same future is returned.
+     * <p>
+     * Completes with the response for every status code, exceptionally only on io errors.
+     */
+    public CompletableFuture<ImageResponse> fetch(String url) {
+        return request("GET", url);
+    }
+
+    /**
+     * Requests the url via HEAD - enough to let imgproxy and caches in front of it process the image. The response body
+     * is empty, concurrent HEAD requests for the same url are coalesced like {@link #fetch(String)}.
+     */
+    public CompletableFuture<ImageResponse> head(String url) {
+        return request("HEAD", url);
+    }
+
+    private CompletableFuture<ImageResponse> request(String method, String url) {
+        String key = method + " " + url;
+        CompletableFuture<ImageResponse> shared = inFlight.get(key);
+        if (shared == null) {
+            CompletableFuture<ImageResponse> future = new CompletableFuture<>();
+            shared = inFlight.putIfAbsent(key, future);
+            if (shared == null) {
+                shared = future;
+                start(new Request(key, method, url, future));
+            }
+        }
+        // every caller gets an own stage, cancelling it doesn't affect the other waiting callers
+        return shared.thenApply(response -> response);
+    }
+
+    private void start(Request request) {
+        Node node;
+        try {
+            node = nodes.computeIfAbsent(nodeKey(request.url), key -> new Node());
+        } catch (RuntimeException e) {
+            request.fail(e);
+            return;
+        }
+        node.submit(request);
+    }
+
+    /**
+     * @return amount of distinct requests currently in flight
+     */
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    @Override
+    public void close() {
+        if (ownExecutor) {
+            executor.shutdown();
+        }
+    }
+
+    static String nodeKey(String url) {
+        try {
+            URL parsed = new URL(url);
+            return parsed.getProtocol() + "://" + parsed.getAuthority();
+        } catch (IOException e) {
+            throw new IllegalArgumentException("invalid url " + url, e);
+        }
+    }
+
+    private ImageResponse execute(String method, String url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(connectTimeoutMillis);
+        connection.setReadTimeout(readTimeoutMillis);
+        connection.setRequestMethod(method);
+        try {
+            int statusCode = connection.getResponseCode();
+            InputStream stream = statusCode >= 400 ? connection.getErrorStream() : connection.getInputStream();
+            // reading the body completely hands the connection back to the keep-alive pool
+            byte[] body = stream != null ? readFully(stream, connection.getContentLength()) : new byte[0];
+            return new ImageResponse(url, statusCode, connection.getContentType(), body);
+        } catch (IOException e) {
+            connection.disconnect();
+            throw e;
+        }
+    }
+
+    static byte[] readFully(InputStream stream, int contentLength) throws IOException {
+        try (InputStream in = stream) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(contentLength > 0 ? Math.min(contentLength, MAX_INITIAL_BODY_BUFFER) : 8192);
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    @RequiredArgsConstructor
+    private final class Request {
+        private final String key;
+        private final String method;
+        private final String url;
+        private final CompletableFuture<ImageResponse> future;
+
+        /**
+         * leaves the coalescing window before completing, so callers reacting on the result already start a fresh fetch
+         */
+        void complete(ImageResponse response) {
+            inFlight.remove(key, future);
+            future.complete(response);
+        }
+
+        void fail(Throwable error) {
+            inFlight.remove(key, future);
+            future.completeExceptionally(error);
+        }
+    }
+
+    /**
+     * bounds concurrent requests against one imgproxy node, requests above the limit wait in a queue
+     */
+    private final class Node {
+
+        private final Queue<Request> queue = new ArrayDeque<>();
+
+        private int active;
+
+        void submit(Request request) {
+            synchronized (this) {
+                if (active >= maxConcurrentRequestsPerNode) {
+                    queue.add(request);
+                    return;
+                }
+                active++;
+            }
+            start(request);
+        }
+
+        private void start(Request request) {
+            try {
+                executor.execute(() -> run(request));
+            } catch (RuntimeException e) {
+                request.fail(e);
+                next();
+            }
+        }
+
+        private void run(Request request) {
+            try {
+                request.complete(execute(request.method, request.url));
+            } catch (IOException e) {
+                request.fail(new UncheckedIOException(e));
+            } catch (RuntimeException e) {
+                request.fail(e);
+            } finally {
+                next();
+            }
+        }
+
+        private void next() {
+            Request next;
+            synchronized (this) {
+                next = queue.poll();
+                if (next == null) {
+                    active--;
+                    return;
+                }
+            }
+            start(next);
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package io.rocketbase.asset.imgproxy.client;
+
+import io.rocketbase.asset.imgproxy.ResponsiveImage;
+import io.rocketbase.asset.imgproxy.Signature;
+import io.rocketbase.asset.imgproxy.SignatureConfiguration;
+import io.rocketbase.asset.imgproxy.SignatureTemplate;
+import io.rocketbase.asset.imgproxy.VariantMatrix;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Fetches source image metadata via the imgproxy /info endpoint (/info/%signature/%encoded_source_url) signed with the
+ * same {@link SignatureConfiguration} as the processing urls.
+ * <p>
+ * Results are cached per source url with a maximum size (least recently used entries are evicted) and a time to live.
+ * Concurrent lookups of the same source share one request, failed lookups aren't cached.
+ * <p>
+ * usage:
+ * <pre>
+ * InfoClient info = InfoClient.of(client, configuration).maximumSize(50_000).ttlMillis(TimeUnit.HOURS.toMillis(6));
+ * // no variants wider than the source, one variant with the source width instead
+ * ResponsiveImage image = info.render(matrix, sourceUrl).join();
+ * </pre>
+ */
+public final class InfoClient {
+
+    static final int DEFAULT_MAXIMUM_SIZE = 10_000;
+
+    static final long DEFAULT_TTL_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private final ImgproxyClient client;
+
+    private final SignatureConfiguration configuration;
+
+    /**
+     * without options the template only encodes and signs the source url
+     */
+    private final SignatureTemplate template;
+
+    private final LruMap entries = new LruMap();
+
+    private volatile long ttlNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_TTL_MILLIS);
+
+    private LongSupplier ticker = System::nanoTime;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private InfoClient(ImgproxyClient client, SignatureConfiguration configuration) {
+        this.client = client;
+        this.configuration = configuration;
+        this.template = Signature.of(configuration).compile();
+    }
+
+    public static InfoClient of(ImgproxyClient client, SignatureConfiguration configuration) {
+        return new InfoClient(client, configuration);
+    }
+
+    public InfoClient maximumSize(int maximumSize) {
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("maximumSize must be at least 1");
+        }
+        synchronized (entries) {
+            entries.maximumSize = maximumSize;
+        }
+        return this;
+    }
+
+    public InfoClient ttlMillis(long ttlMillis) {
+        if (ttlMillis <= 0) {
+            throw new IllegalArgumentException("ttlMillis must be greater than 0");
+        }
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        return this;
+    }
+
+    /**
+     * replaces the clock for tests
+     */
+    InfoClient ticker(LongSupplier ticker) {
+        this.ticker = ticker;
+        return this;
+    }
+
+    /**
+     * @return signed info url like http://imgproxy/info/%signature/%encoded_source_url
+     */
+    public String infoUrl(String sourceUrl) {
+        String url = template.url(sourceUrl);
+        String baseurl = configuration.baseurl(sourceUrl);
+        return baseurl + "/info" + url.substring(baseurl.length());
+    }
+
+    /**
+     * Cached metadata of the source. Completes exceptionally on io errors or when imgproxy doesn't answer with 2xx.
+     */
+    public CompletableFuture<ImageInfo> info(String sourceUrl) {
+        long now = ticker.getAsLong();
+        CompletableFuture<ImageInfo> future;
+        synchronized (entries) {
+            Entry entry = entries.get(sourceUrl);
+            if (entry != null && now - entry.expiresAt < 0) {
+                hits.increment();
+                return entry.future;
+            }
+            misses.increment();
+            future = new CompletableFuture<>();
+            entries.put(sourceUrl, new Entry(future, now + ttlNanos));
+        }
+        CompletableFuture<ImageInfo> pending = future;
+        client.fetch(infoUrl(sourceUrl)).whenComplete((response, error) -> {
+            if (error == null && !response.isSuccessful()) {
+                error = new IllegalStateException("imgproxy info request failed with status " + response.getStatusCode() + " for " + sourceUrl);
+            }
+            if (error != null) {
+                forget(sourceUrl, pending);
+                pending.completeExceptionally(error);
+                return;
+            }
+            try {
+                pending.complete(ImageInfo.parse(new String(response.getBody(), StandardCharsets.UTF_8)));
+            } catch (RuntimeException e) {
+                forget(sourceUrl, pending);
+                pending.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * failures aren't cached - removes the entry unless a newer request already replaced it
+     */
+    private void forget(String sourceUrl, CompletableFuture<ImageInfo> pending) {
+        synchronized (entries) {
+            Entry entry = entries.get(sourceUrl);
+            if (entry != null && entry.future == pending) {
+                entries.remove(sourceUrl);
+            }
+        }
+    }
+
+    /**
+     * renders the matrix without variants wider than the source, see {@link VariantMatrix#render(String, int)}
+     */
+    public CompletableFuture<ResponsiveImage> render(VariantMatrix matrix, String sourceUrl) {
+        return info(sourceUrl).thenApply(info -> matrix.render(sourceUrl, info.getWidth()));
+    }
+
+    public void invalidateAll() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    private static final class Entry {
+        private final CompletableFuture<ImageInfo> future;
+        private final long expiresAt;
+
+        Entry(CompletableFuture<ImageInfo> future, long expiresAt) {
+            this.future = future;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * access ordered map that drops the least recently used entry above the maximum size
+     */
+    private static final class LruMap extends LinkedHashMap<String, Entry> {
+
+        private int maximumSize = DEFAULT_MAXIMUM_SIZE;
+
+        LruMap() {
+            super(16, 0.75f, true);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, InfoClient.Entry> eldest) {
+            return size() > maximumSize;
+        }
+    }
+}
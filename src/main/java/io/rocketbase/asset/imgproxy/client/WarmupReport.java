@@ -0,0 +1,61 @@
+package io.rocketbase.asset.imgproxy.client;
+
+import io.rocketbase.asset.imgproxy.instrumentation.LatencyHistogram;
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.util.Locale;
+
+/**
+ * Result of a {@link CacheWarmer#run()} with throughput and latency percentiles of the final attempt per url.
+ * <p>
+ * Latencies are kept in a {@link LatencyHistogram}, so percentiles are accurate within a factor of two.
+ */
+@Getter
+public final class WarmupReport {
+
+    private final long requested;
+
+    private final long succeeded;
+
+    private final long failed;
+
+    private final long retries;
+
+    private final long durationNanos;
+
+    @Getter(AccessLevel.NONE)
+    private final LatencyHistogram latencies;
+
+    WarmupReport(long requested, long succeeded, long failed, long retries, long durationNanos, LatencyHistogram latencies) {
+        this.requested = requested;
+        this.succeeded = succeeded;
+        this.failed = failed;
+        this.retries = retries;
+        this.durationNanos = durationNanos;
+        this.latencies = latencies;
+    }
+
+    /**
+     * @return finished urls per second
+     */
+    public double getThroughput() {
+        return durationNanos > 0 ? (succeeded + failed) * 1_000_000_000.0 / durationNanos : 0;
+    }
+
+    /**
+     * @param percentile between 0 and 100, like 99.9
+     * @return upper bound of the latency bucket in milliseconds, 0 without any finished url
+     */
+    public double getLatencyMillis(double percentile) {
+        return latencies.getPercentileNanos(percentile) / 1_000_000.0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "WarmupReport{requested=%d, succeeded=%d, failed=%d, retries=%d, duration=%dms, " +
+                        "throughput=%.1f/s, p50=%.1fms, p90=%.1fms, p99=%.1fms, max=%.1fms}", requested, succeeded, failed, retries,
+                durationNanos / 1_000_000, getThroughput(), getLatencyMillis(50), getLatencyMillis(90), getLatencyMillis(99),
+                getLatencyMillis(100));
+    }
+}
@@ -0,0 +1,44 @@
+package io.rocketbase.asset.imgproxy.instrumentation;
+
+import io.rocketbase.asset.imgproxy.SignatureConfiguration;
+import io.rocketbase.asset.imgproxy.options.ImageType;
+
+/**
+ * {@link UrlListener} that emits a {@link UrlGenerationEvent} per generated url into a running flight recording.
+ * <p>
+ * Only this class and the event reference jdk.jfr, so they are never loaded unless the listener gets registered. When
+ * the event is disabled in the recording settings it costs a single check per url.
+ * <p>
+ * Listeners are notified after generation, so the events are instant events with a zero jfr duration. Encode and sign
+ * timings are recorded as own timespan fields.
+ * <p>
+ * usage:
+ * <pre>
+ * new SignatureConfiguration(baseurl, key, salt).listener(JfrUrlListener.INSTANCE);
+ * java -XX:StartFlightRecording:filename=imgproxy.jfr ...
+ * </pre>
+ */
+public final class JfrUrlListener implements UrlListener {
+
+    public static final JfrUrlListener INSTANCE = new JfrUrlListener();
+
+    private JfrUrlListener() {
+    }
+
+    @Override
+    public void onUrlGenerated(SignatureConfiguration configuration, ImageType imageType, boolean signed, int sourceUrlLength,
+                               int optionCount, long encodeNanos, long signNanos) {
+        UrlGenerationEvent event = new UrlGenerationEvent();
+        if (!event.shouldCommit()) {
+            return;
+        }
+        event.baseurl = configuration.getBaseurl();
+        event.imageType = imageType != null ? imageType.name() : null;
+        event.signed = signed;
+        event.sourceUrlLength = sourceUrlLength;
+        event.optionCount = optionCount;
+        event.encodeDuration = encodeNanos;
+        event.signDuration = signNanos;
+        event.commit();
+    }
+}
@@ -0,0 +1,98 @@
+package io.rocketbase.asset.imgproxy.instrumentation;
+
+import io.rocketbase.asset.imgproxy.SignatureConfiguration;
+import io.rocketbase.asset.imgproxy.options.ImageType;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link UrlListener} that aggregates counters and latency histograms for export to a metrics system.
+ * <p>
+ * All updates are {@link LongAdder} increments, so it can be shared across threads without contention. Register one
+ * instance per {@link SignatureConfiguration} to get per configuration numbers.
+ * <p>
+ * usage:
+ * <pre>
+ * MetricsListener metrics = new MetricsListener();
+ * SignatureConfiguration configuration = new SignatureConfiguration(baseurl, key, salt).listener(metrics);
+ * ...
+ * gauge("imgproxy.urls.signed", metrics.getSignedCount());
+ * gauge("imgproxy.sign.p99", metrics.getSignLatency().getPercentileNanos(99));
+ * </pre>
+ */
+public class MetricsListener implements UrlListener {
+
+    private final LongAdder signed = new LongAdder();
+
+    private final LongAdder unsigned = new LongAdder();
+
+    /**
+     * per {@link ImageType#ordinal()}, last slot for urls without image type
+     */
+    private final LongAdder[] imageTypes = new LongAdder[ImageType.values().length + 1];
+
+    private final LatencyHistogram encodeLatency = new LatencyHistogram();
+
+    private final LatencyHistogram signLatency = new LatencyHistogram();
+
+    private final LatencyHistogram totalLatency = new LatencyHistogram();
+
+    public MetricsListener() {
+        for (int i = 0; i < imageTypes.length; i++) {
+            imageTypes[i] = new LongAdder();
+        }
+    }
+
+    @Override
+    public void onUrlGenerated(SignatureConfiguration configuration, ImageType imageType, boolean signed, int sourceUrlLength,
+                               int optionCount, long encodeNanos, long signNanos) {
+        (signed ? this.signed : this.unsigned).increment();
+        imageTypes[imageType != null ? imageType.ordinal() : imageTypes.length - 1].increment();
+        encodeLatency.record(encodeNanos);
+        signLatency.record(signNanos);
+        totalLatency.record(encodeNanos + signNanos);
+    }
+
+    public long getCount() {
+        return signed.sum() + unsigned.sum();
+    }
+
+    public long getSignedCount() {
+        return signed.sum();
+    }
+
+    public long getUnsignedCount() {
+        return unsigned.sum();
+    }
+
+    /**
+     * @param imageType null counts urls without extension
+     */
+    public long getCount(ImageType imageType) {
+        return imageTypes[imageType != null ? imageType.ordinal() : imageTypes.length - 1].sum();
+    }
+
+    /**
+     * time spent on utf-8/base64 encoding and encryption of the source url
+     */
+    public LatencyHistogram getEncodeLatency() {
+        return encodeLatency;
+    }
+
+    /**
+     * time spent on hmac signing
+     */
+    public LatencyHistogram getSignLatency() {
+        return signLatency;
+    }
+
+    public LatencyHistogram getTotalLatency() {
+        return totalLatency;
+    }
+
+    @Override
+    public String toString() {
+        return "MetricsListener{signed=" + getSignedCount() + ", unsigned=" + getUnsignedCount() +
+                ", p50=" + totalLatency.getPercentileNanos(50) + "ns, p99=" + totalLatency.getPercentileNanos(99) + "ns}";
+    }
+}
@@ -0,0 +1,46 @@
+package io.rocketbase.asset.imgproxy.instrumentation;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight recorder event of a single generated url, emitted by {@link JfrUrlListener}.
+ * <p>
+ * Instant event: it's committed after the url has been generated without begin(), so its jfr duration is always zero.
+ * The measured work is within the encode and sign duration fields - use them instead of duration based views.
+ */
+@Name("io.rocketbase.imgproxy.UrlGeneration")
+@Label("Imgproxy Url Generation")
+@Category({"Imgproxy"})
+@Description("Encoding and signing of an imgproxy url - instant event, see the encode and sign durations")
+@StackTrace(false)
+class UrlGenerationEvent extends Event {
+
+    @Label("Base Url")
+    String baseurl;
+
+    @Label("Image Type")
+    String imageType;
+
+    @Label("Signed")
+    boolean signed;
+
+    @Label("Source Url Length")
+    int sourceUrlLength;
+
+    @Label("Option Count")
+    int optionCount;
+
+    @Label("Encode Duration")
+    @Timespan(Timespan.NANOSECONDS)
+    long encodeDuration;
+
+    @Label("Sign Duration")
+    @Timespan(Timespan.NANOSECONDS)
+    long signDuration;
+}
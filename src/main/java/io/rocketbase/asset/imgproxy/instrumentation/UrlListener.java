@@ -0,0 +1,38 @@
+package io.rocketbase.asset.imgproxy.instrumentation;
+
+import io.rocketbase.asset.imgproxy.SignatureConfiguration;
+import io.rocketbase.asset.imgproxy.options.ImageType;
+
+/**
+ * Opt-in callback for every generated url, registered via {@link SignatureConfiguration#listener(UrlListener)}.
+ * <p>
+ * Called synchronously on the generating thread, implementations have to be thread-safe and cheap. Without a registered
+ * listener url generation only pays a null check. Urls served from a cache don't trigger the listener.
+ */
+@FunctionalInterface
+public interface UrlListener {
+
+    /**
+     * @param configuration   configuration the url has been generated for
+     * @param imageType       requested image type, could be null
+     * @param signed          false for configurations without key/salt
+     * @param sourceUrlLength length of the source url in chars
+     * @param optionCount     amount of processing options
+     * @param encodeNanos     time spent to encode (and encrypt) the source url
+     * @param signNanos       time spent to sign the path
+     */
+    void onUrlGenerated(SignatureConfiguration configuration, ImageType imageType, boolean signed, int sourceUrlLength,
+                        int optionCount, long encodeNanos, long signNanos);
+
+    /**
+     * @return listener that forwards to all given listeners in order
+     */
+    static UrlListener of(UrlListener... listeners) {
+        UrlListener[] copy = listeners.clone();
+        return (configuration, imageType, signed, sourceUrlLength, optionCount, encodeNanos, signNanos) -> {
+            for (UrlListener listener : copy) {
+                listener.onUrlGenerated(configuration, imageType, signed, sourceUrlLength, optionCount, encodeNanos, signNanos);
+            }
+        };
+    }
+}
@@ -1,6 +1,18 @@
 package io.rocketbase.asset.imgproxy.options;
 
+import lombok.Getter;
+
 public enum ImageType {
 
-    jpg, png, webp, gif, ico, heic, tiff, avif
+    jpg("image/jpeg"), png("image/png"), webp("image/webp"), gif("image/gif"), ico("image/x-icon"), heic("image/heic"), tiff("image/tiff"), avif("image/avif");
+
+    /**
+     * content type as used within the type attribute of a picture source
+     */
+    @Getter
+    private final String mimeType;
+
+    ImageType(String mimeType) {
+        this.mimeType = mimeType;
+    }
 }
@@ -0,0 +1,40 @@
+package io.rocketbase.asset.imgproxy.recipe;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Repeatable;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Declares an option chain that is fixed at development time. The {@link ImageRecipeProcessor} generates a class per
+ * recipe within the package of the annotated type that holds the joined option path as string constant, so generating
+ * an url only encodes the source url and signs.
+ * <p>
+ * usage:
+ * <pre>
+ * &#64;ImageRecipe(name = "product-thumb", options = {"rs:fill:300:300", "q:80"})
+ * &#64;ImageRecipe(name = "product-detail", options = {"resize:fit:1200:1200:false", "sharpen:1"})
+ * public interface Recipes {
+ * }
+ *
+ * ProductThumbRecipe thumb = new ProductThumbRecipe(configuration);
+ * String url = thumb.url(sourceUrl, ImageType.webp);
+ * </pre>
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+@Repeatable(ImageRecipes.class)
+public @interface ImageRecipe {
+
+    /**
+     * name of the recipe, product-thumb results in the class ProductThumbRecipe
+     */
+    String name();
+
+    /**
+     * processing options in imgproxy url syntax, full names get replaced by their shortcuts and true/false by 1/0.
+     * The path keeps the given order.
+     */
+    String[] options();
+}
@@ -0,0 +1,156 @@
+package io.rocketbase.asset.imgproxy.recipe;
+
+import io.rocketbase.asset.imgproxy.PresetRegistry;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Generates a recipe class per {@link ImageRecipe}. Registered as service, so it runs when the library is on the
+ * compile classpath.
+ * <p>
+ * The generated class keeps the option path as constant and delegates to a {@link io.rocketbase.asset.imgproxy.SignatureTemplate}
+ * created out of it - no builder calls, no option joining at runtime.
+ */
+@SupportedAnnotationTypes({"io.rocketbase.asset.imgproxy.recipe.ImageRecipe", "io.rocketbase.asset.imgproxy.recipe.ImageRecipes"})
+public class ImageRecipeProcessor extends AbstractProcessor {
+
+    private final Set<String> generated = new HashSet<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        Set<Element> elements = new HashSet<>();
+        elements.addAll(roundEnv.getElementsAnnotatedWith(ImageRecipe.class));
+        elements.addAll(roundEnv.getElementsAnnotatedWith(ImageRecipes.class));
+        for (Element element : elements) {
+            for (ImageRecipe recipe : element.getAnnotationsByType(ImageRecipe.class)) {
+                generate(element, recipe);
+            }
+        }
+        return true;
+    }
+
+    private void generate(Element element, ImageRecipe recipe) {
+        String className = className(recipe.name());
+        if (className == null) {
+            error(element, "recipe name " + recipe.name() + " doesn't result in a valid class name");
+            return;
+        }
+        StringBuilder optionPath = new StringBuilder();
+        for (String option : recipe.options()) {
+            if (option.trim().isEmpty() || option.indexOf('/') >= 0) {
+                error(element, "recipe " + recipe.name() + " contains the invalid option '" + option + "', one option per entry without slashes");
+                return;
+            }
+            optionPath.append('/').append(PresetRegistry.normalize(option));
+        }
+        PackageElement packageElement = processingEnv.getElementUtils().getPackageOf(element);
+        String packageName = packageElement.isUnnamed() ? "" : packageElement.getQualifiedName().toString();
+        String qualifiedName = packageName.isEmpty() ? className : packageName + "." + className;
+        if (!generated.add(qualifiedName)) {
+            error(element, "recipe " + recipe.name() + " results in the class " + qualifiedName + " that already exists");
+            return;
+        }
+        try (Writer writer = processingEnv.getFiler().createSourceFile(qualifiedName, element).openWriter()) {
+            writer.write(source(packageName, className, recipe.name(), optionPath.toString()));
+        } catch (IOException e) {
+            error(element, "couldn't write " + qualifiedName + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * product-thumb and product_thumb result in ProductThumbRecipe
+     */
+    static String className(String name) {
+        StringBuilder builder = new StringBuilder();
+        boolean upper = true;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (!Character.isLetterOrDigit(c)) {
+                upper = true;
+                continue;
+            }
+            builder.append(upper ? Character.toUpperCase(c) : c);
+            upper = false;
+        }
+        if (builder.length() == 0 || !Character.isJavaIdentifierStart(builder.charAt(0))) {
+            return null;
+        }
+        return builder.append("Recipe").toString();
+    }
+
+    static String source(String packageName, String className, String recipeName, String optionPath) {
+        StringBuilder out = new StringBuilder();
+        if (!packageName.isEmpty()) {
+            out.append("package ").append(packageName).append(";\n\n");
+        }
+        out.append("import io.rocketbase.asset.imgproxy.SignatureConfiguration;\n")
+                .append("import io.rocketbase.asset.imgproxy.SignatureTemplate;\n")
+                .append("import io.rocketbase.asset.imgproxy.options.ImageType;\n\n")
+                .append("/**\n")
+                .append(" * recipe ").append(escapeComment(recipeName)).append(" - generated by ImageRecipeProcessor, don't edit\n")
+                .append(" */\n")
+                .append("public final class ").append(className).append(" {\n\n")
+                .append("    public static final String NAME = \"").append(escape(recipeName)).append("\";\n\n")
+                .append("    public static final String OPTION_PATH = \"").append(escape(optionPath)).append("\";\n\n")
+                .append("    private final SignatureTemplate template;\n\n")
+                .append("    public ").append(className).append("(SignatureConfiguration configuration) {\n")
+                .append("        this.template = SignatureTemplate.of(configuration, OPTION_PATH);\n")
+                .append("    }\n\n")
+                .append("    public String url(String sourceUrl) {\n")
+                .append("        return template.url(sourceUrl, null);\n")
+                .append("    }\n\n")
+                .append("    public String url(String sourceUrl, ImageType imageType) {\n")
+                .append("        return template.url(sourceUrl, imageType);\n")
+                .append("    }\n\n")
+                .append("    public StringBuilder appendUrl(StringBuilder target, String sourceUrl, ImageType imageType) {\n")
+                .append("        return template.appendUrl(target, sourceUrl, imageType);\n")
+                .append("    }\n\n")
+                .append("    public SignatureTemplate getTemplate() {\n")
+                .append("        return template;\n")
+                .append("    }\n")
+                .append("}\n");
+        return out.toString();
+    }
+
+    private static String escape(String value) {
+        StringBuilder builder = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                builder.append('\\').append(c);
+            } else if (c < 0x20) {
+                // unicode escapes get translated before lexing, control chars need octal escapes
+                builder.append(String.format("\\%03o", (int) c));
+            } else if (c > 0x7e) {
+                builder.append(String.format("\\u%04x", (int) c));
+            } else {
+                builder.append(c);
+            }
+        }
+        return builder.toString();
+    }
+
+    private static String escapeComment(String value) {
+        return escape(value).replace("*/", "*&#47;");
+    }
+
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+}
@@ -0,0 +1,16 @@
+package io.rocketbase.asset.imgproxy.recipe;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * container of repeated {@link ImageRecipe} annotations
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface ImageRecipes {
+
+    ImageRecipe[] value();
+}
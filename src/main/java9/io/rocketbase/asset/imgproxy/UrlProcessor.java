@@ -0,0 +1,225 @@
+package io.rocketbase.asset.imgproxy;
+
+import io.rocketbase.asset.imgproxy.options.ImageType;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * {@link Flow.Processor} that maps source urls to urls of a {@link SignatureTemplate}.
+ * <p>
+ * Never more than bufferSize source urls are requested from upstream ahead of the downstream demand. Urls are generated
+ * on the thread delivering the source url and buffered until the subscriber requests them, every consumed quarter of
+ * the buffer gets requested again from upstream. So a slow subscriber throttles the source instead of filling memory.
+ * <p>
+ * Only available on java 9+, supports a single subscriber.
+ * <p>
+ * usage:
+ * <pre>
+ * UrlProcessor processor = UrlProcessor.of(Signature.of(configuration).size(300, 300).compile(), ImageType.webp, 256);
+ * publisher.subscribe(processor);
+ * processor.subscribe(feedWriter);
+ * </pre>
+ */
+public final class UrlProcessor implements Flow.Processor<String, String>, Flow.Subscription {
+
+    static final int DEFAULT_BUFFER_SIZE = 256;
+
+    private final SignatureTemplate template;
+
+    private final ImageType imageType;
+
+    private final int bufferSize;
+
+    /**
+     * upstream gets requested again after this amount of delivered urls
+     */
+    private final int replenish;
+
+    private final Queue<String> buffer = new ConcurrentLinkedQueue<>();
+
+    private final AtomicReference<Flow.Subscriber<? super String>> downstream = new AtomicReference<>();
+
+    private final AtomicLong requested = new AtomicLong();
+
+    /**
+     * serializes drain loops - whoever increments from zero drains, others only mark missed work
+     */
+    private final AtomicInteger wip = new AtomicInteger();
+
+    private volatile Flow.Subscription upstream;
+
+    private volatile boolean done;
+
+    private volatile boolean cancelled;
+
+    private volatile Throwable error;
+
+    private boolean terminated;
+
+    /**
+     * delivered urls since the last upstream request, only touched within the drain loop
+     */
+    private int consumed;
+
+    private UrlProcessor(SignatureTemplate template, ImageType imageType, int bufferSize) {
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("bufferSize must be at least 1");
+        }
+        this.template = template;
+        this.imageType = imageType;
+        this.bufferSize = bufferSize;
+        this.replenish = Math.max(bufferSize / 4, 1);
+    }
+
+    public static UrlProcessor of(SignatureTemplate template) {
+        return new UrlProcessor(template, null, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * @param imageType  resulting image type for all urls, could be null
+     * @param bufferSize maximum amount of source urls requested ahead of the subscriber
+     */
+    public static UrlProcessor of(SignatureTemplate template, ImageType imageType, int bufferSize) {
+        return new UrlProcessor(template, imageType, bufferSize);
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        if (upstream != null) {
+            subscription.cancel();
+            return;
+        }
+        upstream = subscription;
+        if (cancelled) {
+            subscription.cancel();
+            return;
+        }
+        subscription.request(bufferSize);
+    }
+
+    @Override
+    public void onNext(String sourceUrl) {
+        if (done || cancelled) {
+            return;
+        }
+        String url;
+        try {
+            url = template.url(sourceUrl, imageType);
+        } catch (RuntimeException e) {
+            upstream.cancel();
+            onError(e);
+            return;
+        }
+        buffer.offer(url);
+        drain();
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        if (done) {
+            return;
+        }
+        error = throwable;
+        done = true;
+        drain();
+    }
+
+    @Override
+    public void onComplete() {
+        done = true;
+        drain();
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super String> subscriber) {
+        if (!downstream.compareAndSet(null, subscriber)) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException("UrlProcessor supports a single subscriber"));
+            return;
+        }
+        subscriber.onSubscribe(this);
+        drain();
+    }
+
+    @Override
+    public void request(long n) {
+        if (n <= 0) {
+            Flow.Subscription subscription = upstream;
+            if (subscription != null) {
+                subscription.cancel();
+            }
+            error = new IllegalArgumentException("requested amount must be positive but was " + n);
+            done = true;
+            buffer.clear();
+            drain();
+            return;
+        }
+        requested.getAndUpdate(current -> current + n < 0 ? Long.MAX_VALUE : current + n);
+        drain();
+    }
+
+    @Override
+    public void cancel() {
+        cancelled = true;
+        Flow.Subscription subscription = upstream;
+        if (subscription != null) {
+            subscription.cancel();
+        }
+    }
+
+    private void drain() {
+        if (wip.getAndIncrement() != 0) {
+            return;
+        }
+        int missed = 1;
+        do {
+            Flow.Subscriber<? super String> subscriber = downstream.get();
+            if (subscriber != null && !terminated) {
+                long demand = requested.get();
+                long emitted = 0;
+                while (emitted != demand && !cancelled) {
+                    String url = buffer.poll();
+                    if (url == null) {
+                        break;
+                    }
+                    subscriber.onNext(url);
+                    emitted++;
+                    if (++consumed == replenish) {
+                        consumed = 0;
+                        if (!done) {
+                            upstream.request(replenish);
+                        }
+                    }
+                }
+                if (cancelled) {
+                    buffer.clear();
+                } else if (done && buffer.isEmpty()) {
+                    // buffered urls are delivered before an error
+                    terminated = true;
+                    if (error != null) {
+                        subscriber.onError(error);
+                    } else {
+                        subscriber.onComplete();
+                    }
+                }
+                if (emitted != 0 && demand != Long.MAX_VALUE) {
+                    requested.addAndGet(-emitted);
+                }
+            }
+            missed = wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+}
@@ -0,0 +1,82 @@
+package io.rocketbase.asset.imgproxy;
+
+import io.rocketbase.asset.imgproxy.options.ImageType;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class BulkUrlTaskTest {
+
+    private static final SignatureConfiguration SIGNED_CONFIGURATION = new SignatureConfiguration("http://localhost:8080", "secret", "hello");
+
+    @Test
+    public void shouldCreateUrlsInInputOrder() {
+        // given
+        Signature signature = Signature.of(SIGNED_CONFIGURATION)
+                .size(300, 300)
+                .quality(80);
+        List<String> sources = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            sources.add("s3://bucket/catalog/product-" + i + ".jpg");
+        }
+
+        // when
+        List<String> urls = signature.urls(sources, ImageType.webp);
+
+        // then
+        assertThat(urls.size(), is(sources.size()));
+        for (int i = 0; i < sources.size(); i++) {
+            assertThat(urls.get(i), is(signature.url(sources.get(i), ImageType.webp)));
+        }
+    }
+
+    @Test
+    public void shouldCreateUrlsWithImageTypePerItem() {
+        // given
+        SignatureTemplate template = Signature.of(SIGNED_CONFIGURATION)
+                .width(600)
+                .compile();
+        String[] sources = new String[300];
+        ImageType[] imageTypes = new ImageType[sources.length];
+        for (int i = 0; i < sources.length; i++) {
+            sources[i] = "s3://bucket/catalog/product-" + i + ".jpg";
+            imageTypes[i] = i % 4 == 0 ? null : ImageType.values()[i % ImageType.values().length];
+        }
+
+        // when
+        String[] urls = template.urls(sources, imageTypes);
+
+        // then
+        for (int i = 0; i < sources.length; i++) {
+            assertThat(urls[i], is(template.url(sources[i], imageTypes[i])));
+        }
+    }
+
+    @Test
+    public void shouldHandleEmptyInput() {
+        assertThat(Signature.of(SIGNED_CONFIGURATION).urls(new ArrayList<>()).size(), is(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldNotAcceptDifferentLengths() {
+        Signature.of(SIGNED_CONFIGURATION)
+                .urls(new String[]{"a", "b"}, new ImageType[]{ImageType.png});
+    }
+
+    @Test
+    public void shouldCreateSmallBatchSequentially() {
+        // given
+        List<String> sources = Arrays.asList("s3://bucket/a.png", "s3://bucket/b.png");
+
+        // when
+        List<String> urls = Signature.of(SIGNED_CONFIGURATION).urls(sources);
+
+        // then
+        assertThat(urls.get(1), is(Signature.of(SIGNED_CONFIGURATION).url("s3://bucket/b.png")));
+    }
+}
@@ -0,0 +1,138 @@
+package io.rocketbase.asset.imgproxy;
+
+import io.rocketbase.asset.imgproxy.options.ImageType;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class ConsistentHashRingTest {
+
+    private static final String[] NODES = {"http://img1:8080", "http://img2:8080", "http://img3:8080", "http://img4:8080"};
+
+    private static final int KEYS = 20_000;
+
+    @Test
+    public void shouldSpreadKeysEvenly() {
+        // given
+        ConsistentHashRing ring = ConsistentHashRing.of(NODES);
+        Map<String, Integer> counts = new HashMap<>();
+
+        // when
+        for (int i = 0; i < KEYS; i++) {
+            counts.merge(ring.baseurl("s3://bucket/products/" + i + ".jpg"), 1, Integer::sum);
+        }
+
+        // then
+        assertThat(counts.size(), is(NODES.length));
+        for (int count : counts.values()) {
+            // 5000 expected per node
+            assertTrue("unbalanced " + counts, count > 3_750 && count < 6_250);
+        }
+    }
+
+    @Test
+    public void shouldOnlyMoveKeysOfChangedNode() {
+        // given
+        ConsistentHashRing ring = ConsistentHashRing.of(NODES);
+        ConsistentHashRing added = ring.with("http://img5:8080");
+        ConsistentHashRing removed = ring.without("http://img2:8080");
+
+        // when
+        int movedOnAdd = 0;
+        int movedOnRemove = 0;
+        for (int i = 0; i < KEYS; i++) {
+            String source = "s3://bucket/products/" + i + ".jpg";
+            String before = ring.baseurl(source);
+            String afterAdd = added.baseurl(source);
+            if (!before.equals(afterAdd)) {
+                movedOnAdd++;
+                assertThat(afterAdd, is("http://img5:8080"));
+            }
+            String afterRemove = removed.baseurl(source);
+            if (!before.equals(afterRemove)) {
+                movedOnRemove++;
+                assertThat(before, is("http://img2:8080"));
+            }
+        }
+
+        // then - about 1/5 and 1/4 of all keys
+        assertTrue("moved " + movedOnAdd, movedOnAdd > KEYS / 5 * 3 / 4 && movedOnAdd < KEYS / 5 * 5 / 4);
+        assertTrue("moved " + movedOnRemove, movedOnRemove > KEYS / 4 * 3 / 4 && movedOnRemove < KEYS / 4 * 5 / 4);
+    }
+
+    @Test
+    public void shouldBeIndependentOfRegistrationOrder() {
+        // given
+        ConsistentHashRing ring = ConsistentHashRing.of(NODES);
+        ConsistentHashRing reversed = ConsistentHashRing.of(NODES[3], NODES[2], NODES[1], NODES[0]);
+
+        // then
+        for (int i = 0; i < 1_000; i++) {
+            String source = "s3://bucket/" + i + ".png";
+            assertThat(reversed.baseurl(source), is(ring.baseurl(source)));
+        }
+    }
+
+    @Test
+    public void shouldResolveSameNodeForBytes() {
+        // given
+        ConsistentHashRing ring = ConsistentHashRing.of(NODES);
+        byte[] buffer = new byte[64];
+
+        for (int i = 0; i < 1_000; i++) {
+            // when
+            byte[] source = ("s3://bücket/" + i + ".png").getBytes(StandardCharsets.UTF_8);
+            System.arraycopy(source, 0, buffer, 0, source.length);
+
+            // then
+            assertThat(ring.baseurl(ring.node(buffer, source.length)), is(ring.baseurl("s3://bücket/" + i + ".png")));
+        }
+    }
+
+    @Test
+    public void shouldRenderRoutedUrls() {
+        // given
+        ConsistentHashRing ring = ConsistentHashRing.of(NODES);
+        SignatureConfiguration configuration = new SignatureConfiguration("http://localhost:8080", "secret", "hello").routing(ring);
+        SignatureConfiguration single = new SignatureConfiguration("http://localhost:8080", "secret", "hello");
+
+        for (int i = 0; i < 100; i++) {
+            String source = "s3://bucket/" + i + ".png";
+
+            // when
+            String url = Signature.of(configuration).size(300, 300).url(source, ImageType.webp);
+            String path = Signature.of(single).size(300, 300).url(source, ImageType.webp).substring("http://localhost:8080".length());
+
+            // then
+            assertThat(url, is(ring.baseurl(source) + path));
+            assertThat(configuration.baseurl(source), is(ring.baseurl(source)));
+            assertThat(SignatureVerifier.of(configuration).verify(url).isValid(), is(true));
+        }
+    }
+
+    @Test
+    public void shouldRouteVariantsOfSourceToOneNode() {
+        // given
+        ConsistentHashRing ring = ConsistentHashRing.of(NODES);
+        SignatureConfiguration configuration = new SignatureConfiguration("http://localhost:8080", "secret", "hello").routing(ring);
+
+        // when
+        ResponsiveImage image = VariantMatrix.of(Signature.of(configuration).quality(80)).widths(320, 640).render("s3://bucket/a.png");
+
+        // then
+        for (ResponsiveImage.Variant variant : image.getVariants()) {
+            assertTrue(variant.getUrl().startsWith(ring.baseurl("s3://bucket/a.png") + "/"));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectEmptyRing() {
+        ConsistentHashRing.of(NODES[0]).without(NODES[0]);
+    }
+}
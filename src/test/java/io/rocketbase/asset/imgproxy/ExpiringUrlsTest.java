@@ -0,0 +1,136 @@
+package io.rocketbase.asset.imgproxy;
+
+import io.rocketbase.asset.imgproxy.options.ImageType;
+import org.junit.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class ExpiringUrlsTest {
+
+    private static final SignatureConfiguration SIGNED_CONFIGURATION = new SignatureConfiguration("http://localhost:8080", "secret", "hello");
+
+    private static final String SOURCE_URL = "s3://bucket/private/a.png";
+
+    private final AtomicLong now = new AtomicLong(1_700_000_100_000L);
+
+    private final Clock clock = new Clock() {
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(now.get());
+        }
+    };
+
+    @Test
+    public void shouldRoundExpiryUpToBuckets() {
+        assertThat(ExpiringUrls.bucketExpiry(1000, 3600, 900), is(5400L));
+        assertThat(ExpiringUrls.bucketExpiry(1799, 3600, 900), is(5400L));
+        assertThat(ExpiringUrls.bucketExpiry(1800, 3600, 900), is(6300L));
+        assertThat(ExpiringUrls.bucketExpiry(0, 0, 60), is(60L));
+    }
+
+    @Test
+    public void shouldGenerateIdenticalUrlsWithinBucket() {
+        // given
+        ExpiringUrls urls = ExpiringUrls.of(Signature.of(SIGNED_CONFIGURATION).size(300, 300), Duration.ofHours(1), Duration.ofMinutes(15))
+                .clock(clock)
+                .executor(Runnable::run);
+
+        // when
+        String first = urls.url(SOURCE_URL, ImageType.webp);
+        now.addAndGet(Duration.ofMinutes(5).toMillis());
+        String second = urls.url(SOURCE_URL, ImageType.webp);
+
+        // then
+        long expiry = urls.getCurrentExpiry();
+        assertThat(second, is(first));
+        assertThat(expiry % 900, is(0L));
+        assertThat(expiry - now.get() / 1000 >= 3600, is(true));
+        assertThat(first, is(Signature.of(SIGNED_CONFIGURATION).size(300, 300).expires(expiry).url(SOURCE_URL, ImageType.webp)));
+        assertThat(first.contains("/exp:" + expiry + "/"), is(true));
+    }
+
+    @Test
+    public void shouldDropBucketOnKeyRotation() {
+        // given
+        RotatingSignatureConfiguration configuration = new RotatingSignatureConfiguration("http://localhost:8080", "secret", "hello");
+        ExpiringUrls urls = ExpiringUrls.of(Signature.of(configuration).size(300, 300), Duration.ofHours(1), Duration.ofMinutes(15))
+                .clock(clock)
+                .executor(Runnable::run);
+        String before = urls.url(SOURCE_URL, ImageType.webp);
+
+        // when
+        configuration.rotate("rotated", "salt");
+        String after = urls.url(SOURCE_URL, ImageType.webp);
+
+        // then
+        long expiry = urls.getCurrentExpiry();
+        assertThat(after.equals(before), is(false));
+        assertThat(after, is(Signature.of(configuration).size(300, 300).expires(expiry).url(SOURCE_URL, ImageType.webp)));
+    }
+
+    @Test
+    public void shouldPrepareNextBucketAhead() {
+        // given
+        List<Runnable> tasks = new ArrayList<>();
+        ExpiringUrls urls = ExpiringUrls.of(Signature.of(SIGNED_CONFIGURATION).size(300, 300), Duration.ofHours(1), Duration.ofMinutes(15))
+                .clock(clock)
+                .executor(tasks::add);
+        urls.url(SOURCE_URL);
+        long expiry = urls.getCurrentExpiry();
+        long nextStart = expiry - 3600;
+
+        // when
+        now.set((nextStart - 30) * 1000);
+        String beforeBoundary = urls.url(SOURCE_URL);
+        tasks.forEach(Runnable::run);
+        now.set(nextStart * 1000);
+        String afterBoundary = urls.url(SOURCE_URL);
+
+        // then
+        assertThat(tasks.size(), is(1));
+        assertThat(beforeBoundary.contains("/exp:" + expiry + "/"), is(true));
+        assertThat(urls.getCurrentExpiry(), is(expiry + 900));
+        assertThat(afterBoundary, is(Signature.of(SIGNED_CONFIGURATION).size(300, 300).expires(expiry + 900).url(SOURCE_URL)));
+    }
+
+    @Test
+    public void shouldKeepWorkingAboveMaximumSize() {
+        // given
+        ExpiringUrls urls = ExpiringUrls.of(Signature.of(SIGNED_CONFIGURATION), Duration.ofMinutes(10), Duration.ofMinutes(1))
+                .clock(clock)
+                .maximumSize(1);
+
+        // when
+        String a = urls.url("s3://bucket/a.png");
+        String b = urls.url("s3://bucket/b.png");
+
+        // then
+        assertThat(urls.url("s3://bucket/b.png"), is(b));
+        assertThat(a.equals(b), is(false));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectSubSecondBuckets() {
+        ExpiringUrls.of(Signature.of(SIGNED_CONFIGURATION), Duration.ofHours(1), Duration.ofMillis(500));
+    }
+}
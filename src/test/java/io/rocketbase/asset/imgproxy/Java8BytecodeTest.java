@@ -0,0 +1,116 @@
+package io.rocketbase.asset.imgproxy;
+
+import org.junit.Test;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Checks the compiled main classes for things that only fail at runtime on java 8: class files newer than 52 and calls
+ * of the covariant Buffer overrides like ByteBuffer.clear()ByteBuffer that javac on jdk 9+ links without --release 8.
+ */
+public class Java8BytecodeTest {
+
+    private static final List<String> BUFFER_METHODS = Arrays.asList("clear", "flip", "position", "limit", "mark", "reset", "rewind");
+
+    /**
+     * java 8 ignores the versioned entries of the multi-release jar
+     */
+    private static final String VERSIONED_CLASSES = Paths.get("META-INF", "versions").toString();
+
+    @Test
+    public void shouldRunOnJava8() throws Exception {
+        // given
+        Path classes = Paths.get(UrlExport.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(classes)) {
+            files = walk.filter(path -> path.toString().endsWith(".class")).collect(Collectors.toList());
+        }
+
+        // when
+        List<String> violations = new ArrayList<>();
+        for (Path file : files) {
+            String name = classes.relativize(file).toString();
+            if (name.startsWith(VERSIONED_CLASSES)) {
+                continue;
+            }
+            try (InputStream in = Files.newInputStream(file)) {
+                check(name, new DataInputStream(in), violations);
+            }
+        }
+
+        // then
+        assertThat(files.isEmpty(), is(false));
+        assertThat(violations.toString(), violations.isEmpty(), is(true));
+    }
+
+    private static void check(String name, DataInputStream in, List<String> violations) throws IOException {
+        in.readInt();
+        in.readUnsignedShort();
+        int major = in.readUnsignedShort();
+        if (major > 52) {
+            violations.add(name + " has class file version " + major);
+        }
+        int count = in.readUnsignedShort();
+        String[] utf8 = new String[count];
+        int[] first = new int[count];
+        int[] second = new int[count];
+        int[] tags = new int[count];
+        for (int i = 1; i < count; i++) {
+            int tag = in.readUnsignedByte();
+            tags[i] = tag;
+            switch (tag) {
+                case 1:
+                    utf8[i] = in.readUTF();
+                    break;
+                case 7:
+                case 8:
+                case 16:
+                case 19:
+                case 20:
+                    first[i] = in.readUnsignedShort();
+                    break;
+                case 15:
+                    in.readUnsignedByte();
+                    first[i] = in.readUnsignedShort();
+                    break;
+                case 5:
+                case 6:
+                    in.readLong();
+                    i++;
+                    break;
+                case 3:
+                case 4:
+                    in.readInt();
+                    break;
+                default:
+                    first[i] = in.readUnsignedShort();
+                    second[i] = in.readUnsignedShort();
+            }
+        }
+        for (int i = 1; i < count; i++) {
+            if (tags[i] != 10) {
+                continue;
+            }
+            String owner = utf8[first[first[i]]];
+            String method = utf8[first[second[i]]];
+            String descriptor = utf8[second[second[i]]];
+            if (owner.startsWith("java/nio/") && owner.endsWith("Buffer") && !owner.equals("java/nio/Buffer") &&
+                    BUFFER_METHODS.contains(method) && descriptor.endsWith(")L" + owner + ";")) {
+                violations.add(name + " calls " + owner + "." + method + descriptor);
+            }
+        }
+    }
+}
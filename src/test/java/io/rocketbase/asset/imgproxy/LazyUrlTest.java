@@ -0,0 +1,96 @@
+package io.rocketbase.asset.imgproxy;
+
+import io.rocketbase.asset.imgproxy.options.ImageType;
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class LazyUrlTest {
+
+    private final AtomicInteger signed = new AtomicInteger();
+
+    private final SignatureConfiguration configuration = new SignatureConfiguration("http://localhost:8080", "secret", "hello")
+            .listener((configuration, imageType, signed, sourceUrlLength, optionCount, encodeNanos, signNanos) -> this.signed.incrementAndGet());
+
+    @Test
+    public void shouldSignOnFirstUseOnly() throws Exception {
+        // given
+        Signature signature = Signature.of(configuration).size(300, 300);
+        LazyUrl url = signature.lazyUrl("s3://bucket/a.png", ImageType.webp);
+        signature.quality(10);
+
+        // when
+        assertThat(signed.get(), is(0));
+        assertThat(url.isRendered(), is(false));
+        StringWriter writer = new StringWriter();
+        url.appendTo(writer);
+        String expected = Signature.of(new SignatureConfiguration("http://localhost:8080", "secret", "hello")).size(300, 300)
+                .url("s3://bucket/a.png", ImageType.webp);
+
+        // then
+        assertThat(writer.toString(), is(expected));
+        assertThat(url.toString(), is(expected));
+        assertThat(url.length(), is(expected.length()));
+        assertThat(url.charAt(0), is('h'));
+        assertThat(url.subSequence(0, 4).toString(), is("http"));
+        assertThat(url.appendTo(new StringBuilder("<img src=\"")).toString(), is("<img src=\"" + expected));
+        assertThat(url.isRendered(), is(true));
+        assertThat(signed.get(), is(1));
+    }
+
+    @Test
+    public void shouldOnlySignRenderedHandles() {
+        // given
+        SignatureTemplate template = Signature.of(configuration).size(300, 300).compile();
+        List<LazyUrl> urls = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            urls.add(template.lazyUrl("s3://bucket/" + i + ".png"));
+        }
+
+        // when
+        StringBuilder page = new StringBuilder();
+        for (int i = 0; i < 10; i++) {
+            urls.get(i).appendTo(page).append('\n');
+        }
+
+        // then
+        assertThat(signed.get(), is(10));
+        assertThat(page.toString().startsWith(template.url("s3://bucket/0.png") + "\n"), is(true));
+    }
+
+    @Test
+    public void shouldPublishSameUrlAcrossThreads() throws Exception {
+        // given
+        LazyUrl url = Signature.of(configuration).size(300, 300).compile().lazyUrl("s3://bucket/shared.png");
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<String>> futures = new ArrayList<>();
+
+        // when
+        for (int i = 0; i < 16; i++) {
+            futures.add(executor.submit(url::toString));
+        }
+
+        // then
+        for (Future<String> future : futures) {
+            assertThat(future.get(5, TimeUnit.SECONDS), is(url.toString()));
+        }
+        executor.shutdown();
+        assertTrue(signed.get() >= 1 && signed.get() <= 4);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRequireSourceUrl() {
+        Signature.of(configuration).lazyUrl(null);
+    }
+}
@@ -0,0 +1,146 @@
+package io.rocketbase.asset.imgproxy;
+
+import io.rocketbase.asset.imgproxy.options.GravityType;
+import io.rocketbase.asset.imgproxy.options.ImageType;
+import io.rocketbase.asset.imgproxy.options.ResizeType;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class PresetRegistryTest {
+
+    private static final String SOURCE_URL = "s3://cdn.rocketbase.io/assets/rocketbase/logo-white-400x400-b2bf42d0ad.png";
+
+    private static SignatureConfiguration configuration(String presets) {
+        return new SignatureConfiguration("http://localhost:8080", "secret", "hello").presets(PresetRegistry.parse(presets));
+    }
+
+    @Test
+    public void shouldReplaceCoveredOptions() {
+        // given
+        SignatureConfiguration configuration = configuration("thumb=rs:fill:300:400:0/g:sm,web=q:80/bg:ffffff");
+
+        // when
+        SignatureTemplate template = Signature.of(configuration)
+                .resize(ResizeType.fill, 300, 400, false)
+                .gravity(GravityType.sm)
+                .quality(80)
+                .background("ffffff")
+                .width(320)
+                .compile();
+
+        // then
+        assertThat(template.getOptionPath(), is("/pr:thumb:web/w:320"));
+        assertThat(template.getOptionCount(), is(2));
+        assertThat(template.url(SOURCE_URL, ImageType.png), is(Signature.of(new SignatureConfiguration("http://localhost:8080", "secret", "hello"))
+                .preset("thumb", "web").width(320).url(SOURCE_URL, ImageType.png)));
+    }
+
+    @Test
+    public void shouldNormalizeFullNamesAndFlags() {
+        // given
+        SignatureConfiguration configuration = configuration("thumb=resize:fill:300:400:false/gravity:sm, big=enlarge:true");
+
+        // when
+        String path = Signature.of(configuration).resize(ResizeType.fill, 300, 400, false).gravity(GravityType.sm).enlarge(true)
+                .compile().getOptionPath();
+
+        // then
+        assertThat(path, is("/pr:thumb:big"));
+    }
+
+    @Test
+    public void shouldKeepOptionsThatArentFullyCovered() {
+        // given
+        SignatureConfiguration configuration = configuration("web=q:80/bg:ffffff");
+
+        // when
+        String path = Signature.of(configuration).quality(80).background("000000").compile().getOptionPath();
+
+        // then
+        assertThat(path, is("/q:80/bg:000000"));
+    }
+
+    @Test
+    public void shouldPickShortestCombination() {
+        // given
+        SignatureConfiguration configuration = configuration("a=q:80,b=bg:ffffff,ab=q:80/bg:ffffff,x=q:80/bl:2");
+
+        // when
+        String path = Signature.of(configuration).quality(80).background("ffffff").compile().getOptionPath();
+
+        // then
+        assertThat(path, is("/pr:ab"));
+    }
+
+    @Test
+    public void shouldNotMoveSizingOptionsOutOfOrder() {
+        // given - moving w:320 in front of rs would let rs override the width
+        SignatureConfiguration configuration = configuration("narrow=w:320");
+
+        // when
+        String path = Signature.of(configuration).resize(ResizeType.fill, 300, 400).width(320).compile().getOptionPath();
+
+        // then
+        assertThat(path, is("/rs:fill:300:400/w:320"));
+    }
+
+    @Test
+    public void shouldAppendToExplicitPresets() {
+        // given
+        SignatureConfiguration configuration = configuration("web=q:80/bg:ffffff");
+
+        // when
+        String path = Signature.of(configuration).preset("sharp").quality(80).background("ffffff").compile().getOptionPath();
+
+        // then
+        assertThat(path, is("/pr:sharp:web"));
+    }
+
+    @Test
+    public void shouldIgnoreDefaultPreset() {
+        // given
+        PresetRegistry registry = PresetRegistry.parse("default=q:80,web=bg:ffffff");
+
+        // when & then
+        assertThat(registry.size(), is(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectInvalidDefinition() {
+        PresetRegistry.parse("q:80");
+    }
+
+    @Test
+    public void shouldSearchOncePerOptionPath() {
+        // given
+        PresetRegistry presets = PresetRegistry.parse("web=q:80/bg:ffffff");
+        SignatureConfiguration configuration = new SignatureConfiguration("http://localhost:8080", "secret", "hello").presets(presets);
+        Signature signature = Signature.of(configuration).quality(80).background("ffffff");
+
+        // when
+        String first = signature.url(SOURCE_URL);
+        String second = signature.url(SOURCE_URL);
+
+        // then
+        assertThat(second, is(first));
+        assertThat(presets.memoized(), is(1));
+    }
+
+    @Test
+    public void shouldForgetSubstitutionsOnDefine() {
+        // given
+        PresetRegistry presets = PresetRegistry.parse("web=q:80/bg:ffffff");
+        SignatureConfiguration configuration = new SignatureConfiguration("http://localhost:8080", "secret", "hello").presets(presets);
+        Signature signature = Signature.of(configuration).quality(80).background("ffffff").width(320);
+        signature.compile();
+
+        // when
+        presets.define("s", "w:320");
+        String path = signature.compile().getOptionPath();
+
+        // then
+        assertThat(path, is("/pr:web:s"));
+    }
+}
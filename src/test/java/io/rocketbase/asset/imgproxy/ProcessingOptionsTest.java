@@ -0,0 +1,106 @@
+package io.rocketbase.asset.imgproxy;
+
+import io.rocketbase.asset.imgproxy.options.GravityType;
+import io.rocketbase.asset.imgproxy.options.ResizeType;
+import io.rocketbase.asset.imgproxy.options.WatermarkPositionType;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class ProcessingOptionsTest {
+
+    private static final SignatureConfiguration CONFIGURATION = new SignatureConfiguration("http://localhost:8080");
+
+    private static String path(Signature signature) {
+        return signature.compile().getOptionPath();
+    }
+
+    @Test
+    public void shouldRenderSameBytesForAnyCallOrder() {
+        // given
+        Signature first = Signature.of(CONFIGURATION).size(100, 100).quality(80).background("ffffff");
+        Signature second = Signature.of(CONFIGURATION).background("ffffff").quality(80).size(100, 100);
+
+        // when & then
+        assertThat(path(first), is("/s:100:100/q:80/bg:ffffff"));
+        assertThat(path(second), is(path(first)));
+        assertThat(first.url("s3://bucket/a.png"), is(second.url("s3://bucket/a.png")));
+    }
+
+    @Test
+    public void shouldReplaceRepeatedOptions() {
+        // given
+        Signature signature = Signature.of(CONFIGURATION)
+                .width(100)
+                .quality(60)
+                .width(300)
+                .gravity(GravityType.sm)
+                .gravity(0.5, 0.2)
+                .background(255, 0, 0)
+                .background("ffffff");
+
+        // when & then
+        assertThat(path(signature), is("/w:300/g:fp:0.5:0.2/q:60/bg:ffffff"));
+        assertThat(signature.compile().getOptionCount(), is(4));
+    }
+
+    @Test
+    public void shouldKeepMetaOptionSemantics() {
+        // width set after size overrides the width of size
+        assertThat(path(Signature.of(CONFIGURATION).size(100, 100).width(300)), is("/s:100:100/w:300"));
+        // size set after width overrides it
+        assertThat(path(Signature.of(CONFIGURATION).width(300).size(100, 100)), is("/s:100:100"));
+        // flags that size doesn't mention survive
+        assertThat(path(Signature.of(CONFIGURATION).enlarge(true).size(100, 100)), is("/s:100:100/el:1"));
+        assertThat(path(Signature.of(CONFIGURATION).enlarge(true).size(100, 100, false)), is("/s:100:100:0"));
+        // resize replaces size but keeps its flags that resize doesn't set
+        assertThat(path(Signature.of(CONFIGURATION).size(100, 100, true, true).resize(ResizeType.fit, 200, 200)),
+                is("/rs:fit:200:200/el:1/ex:1"));
+        assertThat(path(Signature.of(CONFIGURATION).resize(ResizeType.fill).resize(ResizeType.fit, 200, 200)), is("/rs:fit:200:200"));
+        assertThat(path(Signature.of(CONFIGURATION).resize(ResizeType.fit, 200, 200).resize(ResizeType.fill)), is("/rs:fit:200:200/rt:fill"));
+    }
+
+    @Test
+    public void shouldRenderAllOptionsInCanonicalOrder() {
+        // given
+        Signature signature = Signature.of(CONFIGURATION)
+                .expires(1700000000L)
+                .cachebuster("v2")
+                .filename("logo")
+                .format("png")
+                .watermark(0.5, WatermarkPositionType.ce, 10, 20, 0.3)
+                .sharpen(2)
+                .blur(3)
+                .background(1, 2, 3)
+                .quality(80)
+                .crop(100, 200, GravityType.no, 5, 6)
+                .gravity(GravityType.ce)
+                .dpr(2)
+                .extend(true)
+                .enlarge(false)
+                .height(60)
+                .width(600)
+                .resize(ResizeType.auto)
+                .preset("sharp", "blurry")
+                .preset("sharp");
+
+        // when & then
+        assertThat(path(signature), is("/pr:sharp:blurry/rt:auto/w:600/h:60/el:0/ex:1/dpr:2/g:ce/c:100:200:no:5:6/q:80" +
+                "/bg:1:2:3/bl:3/sh:2/wm:0.5:ce:10:20:0.3/f:png/fn:logo/cb:v2/exp:1700000000"));
+    }
+
+    @Test
+    public void shouldCopyIndependently() {
+        // given
+        Signature signature = Signature.of(CONFIGURATION).crop(100, 100, GravityType.no).gravity(GravityType.sm).preset("a");
+        Signature copy = signature.copy();
+
+        // when
+        copy.crop(200, 200, 0.5, 0.5).gravity(GravityType.ce).preset("b");
+
+        // then
+        assertThat(path(signature), is("/pr:a/g:sm/c:100:100:no"));
+        assertThat(path(copy), is("/pr:a:b/g:ce/c:200:200:fp:0.5:0.5"));
+    }
+}
@@ -0,0 +1,89 @@
+package io.rocketbase.asset.imgproxy;
+
+import io.rocketbase.asset.imgproxy.options.ImageType;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class RotatingSignatureConfigurationTest {
+
+    private static final String BASE_URL = "http://localhost:8080";
+
+    private static final String SOURCE_URL = "s3://cdn.rocketbase.io/assets/rocketbase/logo-white-400x400-b2bf42d0ad.png";
+
+    @Test
+    public void shouldSignWithCurrentKey() {
+        // given
+        RotatingSignatureConfiguration configuration = new RotatingSignatureConfiguration(BASE_URL, "secret", "hello");
+        SignatureTemplate template = Signature.of(configuration).size(100, 100).compile();
+
+        // when
+        String before = template.url(SOURCE_URL, ImageType.png);
+        configuration.rotate("other", "salt");
+        String after = template.url(SOURCE_URL, ImageType.png);
+
+        // then
+        assertThat(before, is(Signature.of(new SignatureConfiguration(BASE_URL, "secret", "hello")).size(100, 100).url(SOURCE_URL, ImageType.png)));
+        assertThat(after, is(Signature.of(new SignatureConfiguration(BASE_URL, "other", "salt")).size(100, 100).url(SOURCE_URL, ImageType.png)));
+        assertThat(configuration.getKey(), is("other"));
+        assertThat(configuration.getSalt(), is("salt"));
+    }
+
+    @Test
+    public void shouldVerifyAllAcceptedKeys() {
+        // given
+        RotatingSignatureConfiguration configuration = new RotatingSignatureConfiguration(BASE_URL, "secret", "hello");
+        SignatureVerifier verifier = SignatureVerifier.of(configuration);
+        String oldUrl = Signature.of(configuration).width(300).url(SOURCE_URL);
+        String upcomingUrl = Signature.of(new SignatureConfiguration(BASE_URL, "other", "salt")).width(300).url(SOURCE_URL);
+
+        // when & then
+        assertThat(verifier.isValid(upcomingUrl), is(false));
+        configuration.accept("other", "salt");
+        assertThat(Signature.of(configuration).width(300).url(SOURCE_URL), is(oldUrl));
+        assertThat(verifier.isValid(upcomingUrl), is(true));
+
+        configuration.rotate("other", "salt");
+        assertThat(configuration.getAcceptedKeyCount(), is(2));
+        assertThat(verifier.isValid(oldUrl), is(true));
+        assertThat(verifier.isValid(upcomingUrl), is(true));
+
+        configuration.retire("secret", "hello");
+        assertThat(configuration.getAcceptedKeyCount(), is(1));
+        assertThat(verifier.isValid(oldUrl), is(false));
+        assertThat(verifier.isValid(upcomingUrl), is(true));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldNotRetireCurrentKey() {
+        new RotatingSignatureConfiguration(BASE_URL, "secret", "hello")
+                .retire("secret", "hello");
+    }
+
+    @Test
+    public void shouldNotServeCachedUrlsOfPreviousKey() {
+        // given
+        RotatingSignatureConfiguration configuration = new RotatingSignatureConfiguration(BASE_URL, "secret", "hello");
+        SignedUrlCache cache = SignedUrlCache.maximumSize(10);
+        SignatureTemplate template = Signature.of(configuration).width(300).cache(cache).compile();
+        String before = template.url(SOURCE_URL);
+
+        // when
+        configuration.rotate("other", "salt");
+        String after = template.url(SOURCE_URL);
+
+        // then
+        assertThat(after, not(is(before)));
+        assertThat(cache.getMisses(), is(2L));
+    }
+
+    @Test
+    public void shouldCompareByIdentity() {
+        RotatingSignatureConfiguration configuration = new RotatingSignatureConfiguration(BASE_URL, "secret", "hello");
+        assertThat(configuration.equals(new RotatingSignatureConfiguration(BASE_URL, "secret", "hello")), is(false));
+        assertThat(new SignatureConfiguration(BASE_URL, "secret", "hello").equals(configuration), is(false));
+        assertThat(configuration.equals(configuration), is(true));
+    }
+}
@@ -0,0 +1,100 @@
+package io.rocketbase.asset.imgproxy;
+
+import io.rocketbase.asset.imgproxy.options.ImageType;
+import io.rocketbase.asset.imgproxy.options.ResizeType;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class SignatureTemplateTest {
+
+    private static final String BASE_URL = "http://localhost:8080";
+
+    private static final SignatureConfiguration SIGNED_CONFIGURATION = new SignatureConfiguration(BASE_URL, "secret", "hello");
+
+    private static final String SOURCE_URL = "s3://cdn.rocketbase.io/assets/rocketbase/logo-white-400x400-b2bf42d0ad.png";
+
+    private static final String ENCODED_SOURCE_URL = "czM6Ly9jZG4ucm9ja2V0YmFzZS5pby9hc3NldHMvcm9ja2V0YmFzZS9sb2dvLXdoaXRlLTQwMHg0MDAtYjJiZjQyZDBhZC5wbmc";
+
+    @Test
+    public void shouldCreateSameUrlAsSignature() {
+        // given
+        SignatureTemplate template = Signature.of(SIGNED_CONFIGURATION)
+                .size(100, 100)
+                .compile();
+
+        // when
+        String url = template.url(SOURCE_URL, ImageType.png);
+
+        // then
+        assertThat(template.getOptionPath(), is("/s:100:100"));
+        assertThat(url,
+                is(BASE_URL + "/fh2xh50cD5uXV9JSqu0Os8Re4Ii2TRgvEywvKPvJGJk/s:100:100/" + ENCODED_SOURCE_URL + ".png"));
+    }
+
+    @Test
+    public void shouldNotChangeAfterSignatureModification() {
+        // given
+        Signature signature = Signature.of(SIGNED_CONFIGURATION)
+                .resize(ResizeType.fit, 300, 300);
+        SignatureTemplate template = signature.compile();
+
+        // when
+        signature.quality(80);
+
+        // then
+        assertThat(template.getOptionPath(), is("/rs:fit:300:300"));
+        assertThat(signature.compile().getOptionPath(), is("/rs:fit:300:300/q:80"));
+    }
+
+    @Test
+    public void shouldCreateUrlWithoutOptions() {
+        // when
+        String url = Signature.of(new SignatureConfiguration(BASE_URL))
+                .compile()
+                .url(SOURCE_URL);
+
+        // then
+        assertThat(url, is(BASE_URL + "/notset/" + ENCODED_SOURCE_URL));
+    }
+
+    @Test
+    public void shouldCreateUrlsConcurrently() throws Exception {
+        // given
+        Signature signature = Signature.of(SIGNED_CONFIGURATION)
+                .resize(ResizeType.fill, 300, 400, false)
+                .quality(80);
+        SignatureTemplate template = signature.compile();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Callable<Boolean>> tasks = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            int offset = t;
+            tasks.add(() -> {
+                for (int i = 0; i < 200; i++) {
+                    String source = SOURCE_URL + "?v=" + (offset * 1000 + i);
+                    if (!template.url(source, ImageType.webp).equals(signature.url(source, ImageType.webp))) {
+                        return false;
+                    }
+                }
+                return true;
+            });
+        }
+
+        // when & then
+        try {
+            for (Future<Boolean> future : executor.invokeAll(tasks)) {
+                assertThat(future.get(), is(true));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
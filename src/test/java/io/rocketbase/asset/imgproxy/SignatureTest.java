@@ -350,6 +350,16 @@ public class SignatureTest {
                 .url(SOURCE_URL, ImageType.jpg);
     }
 
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectSignatureLongerThanDigest() {
+        new SignatureConfiguration("http://localhost:8080", "secret", "hello").numberOfSignatureBytes(33);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectEmptySignature() {
+        new SignatureConfiguration("http://localhost:8080", "secret", "hello").numberOfSignatureBytes(0);
+    }
+
     @Test
     public void shouldCreateBackgroundUrlWithRGB() {
         // given
@@ -0,0 +1,154 @@
+package io.rocketbase.asset.imgproxy;
+
+import io.rocketbase.asset.imgproxy.options.GravityType;
+import io.rocketbase.asset.imgproxy.options.ImageType;
+import io.rocketbase.asset.imgproxy.options.ResizeType;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class SignatureVerifierTest {
+
+    private static final String BASE_URL = "http://localhost:8080";
+
+    private static final SignatureConfiguration SIGNED_CONFIGURATION = new SignatureConfiguration(BASE_URL, "secret", "hello");
+
+    private static final String SOURCE_URL = "s3://cdn.rocketbase.io/assets/rocketbase/logo-white-400x400-b2bf42d0ad.png";
+
+    @Test
+    public void shouldVerifyGeneratedUrl() {
+        // given
+        String url = Signature.of(SIGNED_CONFIGURATION)
+                .resize(ResizeType.fill, 300, 400, false)
+                .gravity(GravityType.sm)
+                .url(SOURCE_URL, ImageType.png);
+
+        // when
+        ParsedUrl parsed = SignatureVerifier.of(SIGNED_CONFIGURATION).verify(url);
+
+        // then
+        assertThat(parsed.isValid(), is(true));
+        assertThat(parsed.getProcessingOptions(), is(Arrays.asList("rs:fill:300:400:0", "g:sm")));
+        assertThat(parsed.getSourceUrl(), is(SOURCE_URL));
+        assertThat(parsed.getExtension(), is("png"));
+        assertThat(parsed.getImageType(), is(ImageType.png));
+    }
+
+    @Test
+    public void shouldVerifyDocumentationExampleWithSplitSource() {
+        // when
+        ParsedUrl parsed = SignatureVerifier.of(SIGNED_CONFIGURATION)
+                .verify("/AfrOrF3gWeDA6VOlDG4TzxMv39O7MXnF4CXpKUwGqRM/fill/300/400/sm/0/aHR0cDovL2V4YW1w/bGUuY29tL2ltYWdl/cy9jdXJpb3NpdHku/anBn.png?utm=1");
+
+        // then
+        assertThat(parsed.isValid(), is(true));
+        assertThat(parsed.getPath(), is("/fill/300/400/sm/0/aHR0cDovL2V4YW1w/bGUuY29tL2ltYWdl/cy9jdXJpb3NpdHku/anBn.png"));
+        assertThat(parsed.getImageType(), is(ImageType.png));
+    }
+
+    @Test
+    public void shouldRejectTamperedOptions() {
+        // given
+        String url = Signature.of(SIGNED_CONFIGURATION)
+                .size(100, 100)
+                .url(SOURCE_URL);
+
+        // when
+        ParsedUrl parsed = SignatureVerifier.of(SIGNED_CONFIGURATION).verify(url.replace("s:100:100", "s:1000:1000"));
+
+        // then
+        assertThat(parsed.isValid(), is(false));
+        assertThat(parsed.isWellFormed(), is(true));
+        assertThat(parsed.getProcessingOptions(), is(Collections.singletonList("s:1000:1000")));
+    }
+
+    @Test
+    public void shouldRejectOtherKeyAndTruncatedSignature() {
+        // given
+        String url = Signature.of(new SignatureConfiguration(BASE_URL, "other", "hello"))
+                .size(100, 100)
+                .url(SOURCE_URL);
+        String truncated = Signature.of(new SignatureConfiguration(BASE_URL, "secret", "hello").numberOfSignatureBytes(8))
+                .size(100, 100)
+                .url(SOURCE_URL);
+
+        // when & then
+        assertThat(SignatureVerifier.of(SIGNED_CONFIGURATION).isValid(url), is(false));
+        assertThat(SignatureVerifier.of(SIGNED_CONFIGURATION).isValid(truncated), is(false));
+        assertThat(SignatureVerifier.of(new SignatureConfiguration(BASE_URL, "secret", "hello").numberOfSignatureBytes(8)).isValid(truncated), is(true));
+    }
+
+    @Test
+    public void shouldParsePlainSource() {
+        // given
+        String path = "/rs:fit:100:100/plain/http://example.com/images/curiosity%20m%C3%BCnchen.jpg@webp";
+        String signature = new SignatureConfiguration(BASE_URL, "secret", "hello").getSigner().sign(path, 32);
+
+        // when
+        ParsedUrl parsed = SignatureVerifier.of(SIGNED_CONFIGURATION).verify("/" + signature + path);
+
+        // then
+        assertThat(parsed.isValid(), is(true));
+        assertThat(parsed.isPlain(), is(true));
+        assertThat(parsed.getProcessingOptions(), is(Collections.singletonList("rs:fit:100:100")));
+        assertThat(parsed.getSourceUrl(), is("http://example.com/images/curiosity münchen.jpg"));
+        assertThat(parsed.getImageType(), is(ImageType.webp));
+    }
+
+    @Test
+    public void shouldNotParseMalformedUrls() {
+        SignatureVerifier verifier = SignatureVerifier.of(SIGNED_CONFIGURATION);
+        for (String url : Arrays.asList("", "/", "/signature", "/signature/", "/signature/rs:fit:100:100", "no-slash")) {
+            ParsedUrl parsed = verifier.verify(url);
+            assertThat(url, parsed.isValid(), is(false));
+            assertThat(url, parsed.isWellFormed(), is(false));
+            assertThat(url, parsed.getSourceUrl(), is(nullValue()));
+        }
+    }
+
+    @Test
+    public void shouldAcceptAnySignatureWhenUnsigned() {
+        // given
+        SignatureConfiguration unsigned = new SignatureConfiguration(BASE_URL);
+        String url = Signature.of(unsigned)
+                .width(300)
+                .url(SOURCE_URL);
+
+        // when
+        ParsedUrl parsed = SignatureVerifier.of(unsigned).verify(url);
+
+        // then
+        assertThat(parsed.isValid(), is(true));
+        assertThat(parsed.getSignature(), is("notset"));
+        assertThat(parsed.getExtension(), is(nullValue()));
+    }
+
+    @Test
+    public void shouldMatchLongestBaseurlBeforeSlash() {
+        // given
+        SignatureConfiguration configuration = new SignatureConfiguration("http://img", "secret", "hello")
+                .routing(ConsistentHashRing.of("http://img", "http://img2"));
+        SignatureConfiguration longer = new SignatureConfiguration("http://img2", "secret", "hello");
+        String url = Signature.of(longer).width(300).url(SOURCE_URL);
+
+        // when
+        ParsedUrl parsed = SignatureVerifier.of(configuration).verify(url);
+
+        // then
+        assertThat(parsed.isValid(), is(true));
+        assertThat(parsed.getSourceUrl(), is(SOURCE_URL));
+        assertThat(SignatureVerifier.of(new SignatureConfiguration("http://img", "secret", "hello")).verify(url).isValid(), is(false));
+    }
+
+    @Test
+    public void shouldCompareInConstantTime() {
+        assertThat(SignatureVerifier.constantTimeEquals(new byte[]{1, 2, 3}, new byte[]{1, 2, 3}, 3), is(true));
+        assertThat(SignatureVerifier.constantTimeEquals(new byte[]{1, 2, 3}, new byte[]{1, 2, 4}, 3), is(false));
+        assertThat(SignatureVerifier.constantTimeEquals(new byte[]{1, 2, 3}, new byte[]{1, 2, 4}, 2), is(true));
+    }
+}
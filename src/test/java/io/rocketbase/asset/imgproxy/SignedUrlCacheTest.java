@@ -0,0 +1,116 @@
+package io.rocketbase.asset.imgproxy;
+
+import io.rocketbase.asset.imgproxy.options.ImageType;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class SignedUrlCacheTest {
+
+    private static final SignatureConfiguration SIGNED_CONFIGURATION = new SignatureConfiguration("http://localhost:8080", "secret", "hello");
+
+    private static final String SOURCE_URL = "s3://cdn.rocketbase.io/assets/rocketbase/logo-white-400x400-b2bf42d0ad.png";
+
+    @Test
+    public void shouldServeSameUrlFromCache() {
+        // given
+        SignedUrlCache cache = SignedUrlCache.maximumSize(10);
+
+        // when
+        String first = Signature.of(SIGNED_CONFIGURATION).size(100, 100).cache(cache).url(SOURCE_URL, ImageType.png);
+        String second = Signature.of(SIGNED_CONFIGURATION).size(100, 100).cache(cache).url(SOURCE_URL, ImageType.png);
+
+        // then
+        assertThat(first, is(Signature.of(SIGNED_CONFIGURATION).size(100, 100).url(SOURCE_URL, ImageType.png)));
+        assertThat(second, is(first));
+        assertThat(cache.getHits(), is(1L));
+        assertThat(cache.getMisses(), is(1L));
+        assertThat(cache.size(), is(1));
+    }
+
+    @Test
+    public void shouldSeparateByOptionsImageTypeAndConfiguration() {
+        // given
+        SignedUrlCache cache = SignedUrlCache.maximumSize(10);
+        SignatureConfiguration shortSignature = new SignatureConfiguration("http://localhost:8080", "secret", "hello").numberOfSignatureBytes(8);
+
+        // when
+        String png = Signature.of(SIGNED_CONFIGURATION).size(100, 100).cache(cache).url(SOURCE_URL, ImageType.png);
+        String webp = Signature.of(SIGNED_CONFIGURATION).size(100, 100).cache(cache).url(SOURCE_URL, ImageType.webp);
+        String other = Signature.of(SIGNED_CONFIGURATION).size(200, 100).cache(cache).url(SOURCE_URL, ImageType.png);
+        String truncated = Signature.of(shortSignature).size(100, 100).cache(cache).url(SOURCE_URL, ImageType.png);
+
+        // then
+        assertThat(cache.getMisses(), is(4L));
+        assertThat(webp, is(Signature.of(SIGNED_CONFIGURATION).size(100, 100).url(SOURCE_URL, ImageType.webp)));
+        assertThat(other, is(Signature.of(SIGNED_CONFIGURATION).size(200, 100).url(SOURCE_URL, ImageType.png)));
+        assertThat(truncated, is(Signature.of(shortSignature).size(100, 100).url(SOURCE_URL, ImageType.png)));
+        assertThat(png.equals(truncated), is(false));
+    }
+
+    @Test
+    public void shouldSeparateByRouting() {
+        // given
+        SignedUrlCache cache = SignedUrlCache.maximumSize(10);
+        SignatureConfiguration configuration = new SignatureConfiguration("http://localhost:8080", "secret", "hello")
+                .routing(ConsistentHashRing.of("http://img1.localhost"));
+        String before = Signature.of(configuration).size(100, 100).cache(cache).url(SOURCE_URL, ImageType.png);
+
+        // when
+        configuration.routing(ConsistentHashRing.of("http://img2.localhost"));
+        String after = Signature.of(configuration).size(100, 100).cache(cache).url(SOURCE_URL, ImageType.png);
+        String again = Signature.of(configuration).size(100, 100).cache(cache).url(SOURCE_URL, ImageType.png);
+
+        // then
+        assertThat(before.startsWith("http://img1.localhost/"), is(true));
+        assertThat(after.startsWith("http://img2.localhost/"), is(true));
+        assertThat(again, is(after));
+        assertThat(cache.getMisses(), is(2L));
+        assertThat(cache.getHits(), is(1L));
+    }
+
+    @Test
+    public void shouldKeepFrequentlyUsedUrlsOnEviction() {
+        // given
+        SignedUrlCache cache = SignedUrlCache.maximumSize(4);
+        SignatureTemplate template = Signature.of(SIGNED_CONFIGURATION).width(300).cache(cache).compile();
+        template.url("s3://bucket/hot.png");
+        template.url("s3://bucket/hot.png");
+
+        // when
+        for (int i = 0; i < 20; i++) {
+            template.url("s3://bucket/cold-" + i + ".png");
+            template.url("s3://bucket/hot.png");
+        }
+
+        // then
+        assertThat(cache.size(), is(4));
+        assertThat(cache.getEvictions(), is(17L));
+        assertThat(cache.getIfPresent(template, "s3://bucket/hot.png", null), is(template.render("s3://bucket/hot.png", null)));
+        assertThat(cache.getIfPresent(template, "s3://bucket/cold-0.png", null), is(nullValue()));
+    }
+
+    @Test
+    public void shouldInvalidateAll() {
+        // given
+        SignedUrlCache cache = SignedUrlCache.maximumSize(2);
+        SignatureTemplate template = Signature.of(SIGNED_CONFIGURATION).cache(cache).compile();
+        template.url("s3://bucket/a.png");
+        template.url("s3://bucket/b.png");
+
+        // when
+        cache.invalidateAll();
+        template.url("s3://bucket/c.png");
+
+        // then
+        assertThat(cache.size(), is(1));
+        assertThat(cache.getEvictions(), is(0L));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldNotAcceptZeroSize() {
+        SignedUrlCache.maximumSize(0);
+    }
+}
@@ -0,0 +1,236 @@
+package io.rocketbase.asset.imgproxy;
+
+import io.rocketbase.asset.imgproxy.options.ImageType;
+import io.rocketbase.asset.imgproxy.options.ResizeType;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class SignedUrlStoreTest {
+
+    private static final String BASE_URL = "http://localhost:8080";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final AtomicInteger signed = new AtomicInteger();
+
+    private SignatureConfiguration configuration(String key) {
+        return new SignatureConfiguration(BASE_URL, key, "hello")
+                .listener((configuration, imageType, signed, sourceUrlLength, optionCount, encodeNanos, signNanos) -> this.signed.incrementAndGet());
+    }
+
+    private static int indexOf(byte[] bytes, byte[] part) {
+        for (int i = 0; i + part.length <= bytes.length; i++) {
+            if (Arrays.equals(Arrays.copyOfRange(bytes, i, i + part.length), part)) {
+                return i;
+            }
+        }
+        throw new IllegalStateException("not found");
+    }
+
+    @Test
+    public void shouldServeUrlsAfterRestart() throws Exception {
+        // given
+        Path path = folder.getRoot().toPath().resolve("urls.store");
+        SignatureConfiguration before = configuration("secret");
+        try (SignedUrlStore store = SignedUrlStore.open(path, before, 1_000)) {
+            SignatureTemplate template = Signature.of(before).resize(ResizeType.fill, 300, 300).compile();
+            for (int i = 0; i < 500; i++) {
+                store.url(template, "s3://bucket/größe-" + i + ".png", ImageType.webp);
+            }
+            assertThat(store.size(), is(500));
+        }
+        signed.set(0);
+
+        // when - new jvm, new configuration instance with the same key
+        SignatureConfiguration after = configuration("secret");
+        try (SignedUrlStore store = SignedUrlStore.open(path, after, 1_000)) {
+            SignatureTemplate template = Signature.of(after).resize(ResizeType.fill, 300, 300).compile();
+            SignedUrlCache cache = SignedUrlCache.maximumSize(100).store(store);
+
+            // then
+            for (int i = 0; i < 500; i++) {
+                String url = cache.url(template, "s3://bucket/größe-" + i + ".png", ImageType.webp);
+                assertThat(url, is(template.render("s3://bucket/größe-" + i + ".png", ImageType.webp)));
+            }
+            assertThat(store.getHits(), is(500L));
+            // only the comparison renders above signed
+            assertThat(signed.get(), is(500));
+        }
+    }
+
+    @Test
+    public void shouldKeepImageTypeAndOptionsApart() throws Exception {
+        // given
+        SignatureConfiguration configuration = configuration("secret");
+        try (SignedUrlStore store = SignedUrlStore.open(folder.getRoot().toPath().resolve("urls.store"), configuration, 100)) {
+            SignatureTemplate small = Signature.of(configuration).width(100).compile();
+            SignatureTemplate encrypted = Signature.of(configuration.sourceUrlEncryptionKey("1eb5b0e971ad7f45324c1bb15c947cb207c43152fa5c6c7f35c4f36e0c18e0f1"))
+                    .width(100).encrypted().compile();
+
+            // when
+            store.url(small, "a.png", null);
+
+            // then
+            assertThat(store.get(small, "a.png", ImageType.webp), nullValue());
+            assertThat(store.get(encrypted, "a.png", null), nullValue());
+            assertThat(store.get(Signature.of(configuration).width(10).compile(), "0a.png", null), nullValue());
+        }
+    }
+
+    @Test
+    public void shouldShareWithReadOnlyHandles() throws Exception {
+        // given
+        Path path = folder.getRoot().toPath().resolve("urls.store");
+        SignatureConfiguration configuration = configuration("secret");
+        SignatureTemplate template = Signature.of(configuration).width(300).compile();
+
+        try (SignedUrlStore writer = SignedUrlStore.open(path, configuration, 100);
+             SignedUrlStore reader = SignedUrlStore.openReadOnly(path, configuration)) {
+            // when
+            String url = writer.url(template, "a.png", ImageType.png);
+
+            // then
+            assertThat(reader.get(template, "a.png", ImageType.png), is(url));
+            assertThat(reader.put(template, "b.png", null, "x"), is(false));
+            assertThat(reader.isReadOnly(), is(true));
+            // a reader with another key never sees the urls
+            SignatureConfiguration other = configuration("other");
+            try (SignedUrlStore foreign = SignedUrlStore.openReadOnly(path, other)) {
+                assertThat(foreign.get(Signature.of(other).width(300).compile(), "a.png", ImageType.png), nullValue());
+            }
+        }
+    }
+
+    @Test
+    public void shouldInvalidateOnChangedConfiguration() throws Exception {
+        // given
+        Path path = folder.getRoot().toPath().resolve("urls.store");
+        SignatureConfiguration configuration = configuration("secret");
+        try (SignedUrlStore store = SignedUrlStore.open(path, configuration, 100)) {
+            store.url(Signature.of(configuration).width(300).compile(), "a.png", null);
+        }
+
+        // when - another key
+        SignatureConfiguration rotated = configuration("rotated");
+        try (SignedUrlStore store = SignedUrlStore.open(path, rotated, 100)) {
+            // then
+            assertThat(store.size(), is(0));
+            store.url(Signature.of(rotated).width(300).compile(), "a.png", null);
+        }
+
+        // when - shorter signatures
+        SignatureConfiguration shorter = configuration("rotated").numberOfSignatureBytes(8);
+        try (SignedUrlStore store = SignedUrlStore.open(path, shorter, 100)) {
+            // then
+            assertThat(store.size(), is(0));
+        }
+    }
+
+    @Test
+    public void shouldResetOnKeyRotation() throws Exception {
+        // given
+        Path path = folder.getRoot().toPath().resolve("urls.store");
+        RotatingSignatureConfiguration configuration = new RotatingSignatureConfiguration(BASE_URL, "secret", "hello");
+        SignatureTemplate template = Signature.of(configuration).width(300).compile();
+
+        try (SignedUrlStore writer = SignedUrlStore.open(path, configuration, 100);
+             SignedUrlStore reader = SignedUrlStore.openReadOnly(path, configuration)) {
+            String before = writer.url(template, "a.png", null);
+            assertThat(reader.get(template, "a.png", null), is(before));
+
+            // when
+            configuration.rotate("next", "salt");
+
+            // then
+            assertThat(reader.get(template, "a.png", null), nullValue());
+            assertThat(writer.get(template, "a.png", null), nullValue());
+            String after = writer.url(template, "a.png", null);
+            assertThat(after, is(template.render("a.png", null)));
+            assertThat(reader.get(template, "a.png", null), is(after));
+            assertThat(writer.size(), is(1));
+        }
+    }
+
+    @Test
+    public void shouldMissTornRecords() throws Exception {
+        // given
+        Path path = folder.getRoot().toPath().resolve("urls.store");
+        SignatureConfiguration configuration = configuration("secret");
+        SignatureTemplate template = Signature.of(configuration).width(300).compile();
+        String url = template.render("a.png", null);
+        try (SignedUrlStore store = SignedUrlStore.open(path, configuration, 10)) {
+            store.put(template, "a.png", null, url);
+        }
+        byte[] file = Files.readAllBytes(path);
+        byte[] urlBytes = url.getBytes(StandardCharsets.UTF_8);
+        int start = indexOf(file, urlBytes);
+        // the last url byte never made it to the file
+        file[start + urlBytes.length - 1] = 0;
+        Files.write(path, file);
+
+        try (SignedUrlStore store = SignedUrlStore.open(path, configuration, 10)) {
+            // when
+            String persisted = store.get(template, "a.png", null);
+
+            // then
+            assertThat(persisted, nullValue());
+            assertThat(store.getMisses(), is(1L));
+        }
+    }
+
+    @Test
+    public void shouldInvalidateOnChangedVirtualNodes() throws Exception {
+        // given
+        Path path = folder.getRoot().toPath().resolve("urls.store");
+        SignatureConfiguration configuration = configuration("secret")
+                .routing(ConsistentHashRing.of(1, Arrays.asList("http://img1.localhost", "http://img2.localhost")));
+        try (SignedUrlStore store = SignedUrlStore.open(path, configuration, 10)) {
+            store.url(Signature.of(configuration).width(300).compile(), "a.png", null);
+        }
+
+        // when - same lowest byte of the virtual node count
+        configuration.routing(ConsistentHashRing.of(257, Arrays.asList("http://img1.localhost", "http://img2.localhost")));
+        try (SignedUrlStore store = SignedUrlStore.open(path, configuration, 10)) {
+            // then
+            assertThat(store.size(), is(0));
+        }
+    }
+
+    @Test
+    public void shouldStopPersistingWhenFull() throws Exception {
+        // given
+        SignatureConfiguration configuration = configuration("secret");
+        SignatureTemplate template = Signature.of(configuration).width(300).compile();
+
+        try (SignedUrlStore store = SignedUrlStore.open(folder.getRoot().toPath().resolve("urls.store"), configuration, 3)) {
+            // when
+            for (int i = 0; i < 10; i++) {
+                store.url(template, i + ".png", null);
+            }
+
+            // then
+            assertThat(store.size(), is(3));
+            assertThat(store.url(template, "9.png", null), is(template.render("9.png", null)));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldAllowSingleWriter() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("urls.store");
+        try (SignedUrlStore store = SignedUrlStore.open(path, configuration("secret"), 10)) {
+            SignedUrlStore.open(path, configuration("secret"), 10).close();
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package io.rocketbase.asset.imgproxy;
+
+import io.rocketbase.asset.imgproxy.options.GravityType;
+import io.rocketbase.asset.imgproxy.options.ResizeType;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class SizeSnappingTest {
+
+    private static final String BASE_URL = "http://localhost:8080";
+
+    @Test
+    public void shouldSnapToGeometricSteps() {
+        // given
+        SizeSnapping snapping = SizeSnapping.geometric(100, 2000, 1.2);
+
+        // then
+        assertThat(snapping.snap(50), is(100));
+        assertThat(snapping.snap(100), is(100));
+        assertThat(snapping.snap(101), is(120));
+        assertThat(snapping.snap(121), is(144));
+        assertThat(snapping.snap(1999), is(2000));
+        assertThat(snapping.snap(2500), is(2500));
+    }
+
+    @Test
+    public void shouldSnapToBreakpoints() {
+        // given
+        SizeSnapping snapping = SizeSnapping.breakpoints(1280, 320, 640, 640);
+
+        // then
+        assertThat(snapping.snap(1), is(320));
+        assertThat(snapping.snap(320), is(320));
+        assertThat(snapping.snap(321), is(640));
+        assertThat(snapping.snap(1000), is(1280));
+        assertThat(snapping.snap(1281), is(1281));
+    }
+
+    @Test
+    public void shouldKeepMaxError() {
+        // given
+        SizeSnapping snapping = SizeSnapping.maxError(10);
+
+        for (int size = 1; size <= SizeSnapping.MAX_SIZE + 10; size++) {
+            // when
+            int snapped = snapping.snap(size);
+
+            // then
+            assertTrue(size + " -> " + snapped, snapped >= size && snapped <= size * 1.1);
+        }
+        // 317, 318 and 322 share one step
+        assertThat(snapping.snap(317), is(snapping.snap(322)));
+        assertTrue(((SizeLadder) snapping).getSteps().length < 120);
+    }
+
+    @Test
+    public void shouldSnapSignatureDimensions() {
+        // given
+        SignatureConfiguration configuration = new SignatureConfiguration(BASE_URL).sizeSnapping(SizeSnapping.breakpoints(320, 640));
+
+        // then
+        assertThat(Signature.of(configuration).width(317).url("a.png"), is(Signature.of(new SignatureConfiguration(BASE_URL)).width(320).url("a.png")));
+        assertThat(Signature.of(configuration).size(318, 0).url("a.png"), is(BASE_URL + "/notset/s:320:0/YS5wbmc"));
+        assertThat(Signature.of(configuration).resize(ResizeType.fill, 322, 500).url("a.png"), is(BASE_URL + "/notset/rs:fill:640:640/YS5wbmc"));
+        assertThat(Signature.of(configuration).height(700).url("a.png"), is(BASE_URL + "/notset/h:700/YS5wbmc"));
+        assertThat(Signature.of(configuration).crop(100, 0, GravityType.no).url("a.png"), is(BASE_URL + "/notset/c:320:0:no/YS5wbmc"));
+    }
+
+    @Test
+    public void shouldNeverRoundBelowRequest() {
+        // given
+        SignatureConfiguration configuration = new SignatureConfiguration(BASE_URL).sizeSnapping(size -> size / 2);
+
+        // then
+        assertThat(Signature.of(configuration).width(317).url("a.png"), is(BASE_URL + "/notset/w:317/YS5wbmc"));
+    }
+
+    @Test
+    public void shouldReportReducedVariants() {
+        // given
+        SignatureConfiguration configuration = new SignatureConfiguration(BASE_URL).sizeSnapping(SizeSnapping.maxError(10));
+
+        // when
+        for (int width = 300; width < 400; width++) {
+            Signature.of(configuration).width(width).url("a.png");
+            Signature.of(configuration).width(width).url("b.png");
+        }
+
+        // then
+        SnappingReport report = configuration.getSnappingReport();
+        assertThat(report.getRequests(), is(200L));
+        assertThat(report.getDistinctRequested(), is(100));
+        assertTrue(report.toString(), report.getDistinctSnapped() <= 4);
+        assertTrue(report.toString(), report.getReduction() >= 0.96);
+        assertThat(report.isSaturated(), is(false));
+    }
+
+    @Test
+    public void shouldKeepVariantMatrixWidths() {
+        // given
+        SignatureConfiguration configuration = new SignatureConfiguration(BASE_URL).sizeSnapping(SizeSnapping.breakpoints(500));
+
+        // when
+        ResponsiveImage image = VariantMatrix.of(Signature.of(configuration)).widths(320).render("a.png");
+
+        // then
+        assertThat(image.getVariants().get(0).getUrl(), is(BASE_URL + "/notset/w:320/YS5wbmc"));
+    }
+
+    @Test
+    public void shouldDisableSnapping() {
+        // given
+        SignatureConfiguration configuration = new SignatureConfiguration(BASE_URL).sizeSnapping(SizeSnapping.breakpoints(500)).sizeSnapping(null);
+
+        // then
+        assertThat(Signature.of(configuration).width(317).url("a.png"), is(BASE_URL + "/notset/w:317/YS5wbmc"));
+        assertThat(configuration.getSnappingReport(), nullValue());
+    }
+}
@@ -0,0 +1,113 @@
+package io.rocketbase.asset.imgproxy;
+
+import com.google.common.io.BaseEncoding;
+import io.rocketbase.asset.imgproxy.options.ImageType;
+import org.junit.Test;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class SourceEncryptorTest {
+
+    private static final String BASE_URL = "http://localhost:8080";
+
+    private static final String ENCRYPTION_KEY = "1eb5b0e971ad7f45324c1bb15c947cb207c43152fa5c6c7f35c4f36e0c18e0f1";
+
+    private static final String SOURCE_URL = "s3://internal-bucket/customers/4711/private/logo.png";
+
+    private static SignatureConfiguration configuration() {
+        return new SignatureConfiguration(BASE_URL, "secret", "hello").sourceUrlEncryptionKey(ENCRYPTION_KEY);
+    }
+
+    @Test
+    public void shouldCreateDecryptableEncryptedUrl() throws Exception {
+        // given
+        SignatureConfiguration configuration = configuration();
+
+        // when
+        String url = Signature.of(configuration)
+                .size(100, 100)
+                .encrypted()
+                .url(SOURCE_URL, ImageType.png);
+
+        // then
+        String prefix = BASE_URL + "/" + url.split("/")[3] + "/s:100:100/enc/";
+        assertThat(url.startsWith(prefix), is(true));
+        assertThat(url.endsWith(".png"), is(true));
+        byte[] encrypted = BaseEncoding.base64Url().decode(url.substring(prefix.length(), url.length() - ".png".length()));
+        Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+        cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(BaseEncoding.base16().lowerCase().decode(ENCRYPTION_KEY), "AES"),
+                new IvParameterSpec(Arrays.copyOf(encrypted, 16)));
+        assertThat(new String(cipher.doFinal(encrypted, 16, encrypted.length - 16), StandardCharsets.UTF_8), is(SOURCE_URL));
+        assertThat(SignatureVerifier.of(configuration).isValid(url), is(true));
+    }
+
+    @Test
+    public void shouldCreateDeterministicUrls() {
+        // given
+        SignatureTemplate template = Signature.of(configuration())
+                .width(300)
+                .encrypted()
+                .compile();
+
+        // when
+        String first = template.url(SOURCE_URL);
+        String second = Signature.of(configuration()).width(300).encrypted().url(SOURCE_URL);
+        String other = template.url(SOURCE_URL + "?v=2");
+
+        // then
+        assertThat(second, is(first));
+        assertThat(other, not(is(first)));
+    }
+
+    @Test
+    public void shouldExposeDecryptedSourceOnVerification() {
+        // given
+        SignatureConfiguration configuration = configuration();
+        String url = Signature.of(configuration)
+                .quality(80)
+                .encrypted()
+                .url(SOURCE_URL, ImageType.webp);
+
+        // when
+        ParsedUrl parsed = SignatureVerifier.of(configuration).verify(url);
+
+        // then
+        assertThat(parsed.isValid(), is(true));
+        assertThat(parsed.isEncrypted(), is(true));
+        assertThat(parsed.getProcessingOptions(), is(Arrays.asList("q:80")));
+        assertThat(parsed.getSourceUrl(), is(SOURCE_URL));
+        assertThat(parsed.getImageType(), is(ImageType.webp));
+    }
+
+    @Test
+    public void shouldEncryptVariantMatrix() {
+        // given
+        Signature base = Signature.of(configuration()).quality(80).encrypted();
+
+        // when
+        ResponsiveImage image = VariantMatrix.of(base).widths(320, 640).render(SOURCE_URL);
+
+        // then
+        assertThat(image.getVariants().get(1).getUrl(), is(base.copy().width(640).url(SOURCE_URL)));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldNotEncryptWithoutKey() {
+        Signature.of(new SignatureConfiguration(BASE_URL, "secret", "hello"))
+                .encrypted()
+                .url(SOURCE_URL);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldNotAcceptInvalidKeyLength() {
+        new SignatureConfiguration(BASE_URL).sourceUrlEncryptionKey("1eb5b0e971ad7f45");
+    }
+}
@@ -0,0 +1,82 @@
+package io.rocketbase.asset.imgproxy;
+
+import io.rocketbase.asset.imgproxy.options.ImageType;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class SourceUrlSpliteratorTest {
+
+    private static final SignatureConfiguration SIGNED_CONFIGURATION = new SignatureConfiguration("http://localhost:8080", "secret", "hello");
+
+    private static List<String> sourceUrls(int count) {
+        return IntStream.range(0, count)
+                .mapToObj(i -> "s3://cdn.rocketbase.io/assets/" + i + ".png")
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    public void shouldKeepOrderWithinParallelStream() {
+        // given
+        SignatureTemplate template = Signature.of(SIGNED_CONFIGURATION).size(100, 100).compile();
+        List<String> sourceUrls = sourceUrls(5_000);
+
+        // when
+        List<String> urls = template.urls(sourceUrls.iterator(), ImageType.webp)
+                .parallel()
+                .collect(Collectors.toList());
+
+        // then
+        assertThat(urls.size(), is(sourceUrls.size()));
+        for (int i = 0; i < sourceUrls.size(); i++) {
+            assertThat(urls.get(i), is(template.url(sourceUrls.get(i), ImageType.webp)));
+        }
+    }
+
+    @Test
+    public void shouldMapStream() {
+        // given
+        SignatureTemplate template = Signature.of(SIGNED_CONFIGURATION).size(100, 100).compile();
+        List<String> sourceUrls = sourceUrls(200);
+
+        // when
+        List<String> urls = template.urls(sourceUrls.parallelStream(), null)
+                .collect(Collectors.toList());
+
+        // then
+        assertThat(urls, is(sourceUrls.stream().map(template.asFunction()).collect(Collectors.toList())));
+        assertThat(urls.get(0), is(Signature.of(SIGNED_CONFIGURATION).size(100, 100).url(sourceUrls.get(0))));
+    }
+
+    @Test
+    public void shouldSplitFixedBatches() {
+        // given
+        SignatureTemplate template = Signature.of(SIGNED_CONFIGURATION).compile();
+        Iterator<String> sourceUrls = sourceUrls(250).iterator();
+        SourceUrlSpliterator spliterator = new SourceUrlSpliterator(template, sourceUrls, null, 100);
+
+        // when
+        Spliterator<String> first = spliterator.trySplit();
+        Spliterator<String> second = spliterator.trySplit();
+        Spliterator<String> third = spliterator.trySplit();
+        Spliterator<String> fourth = spliterator.trySplit();
+
+        // then
+        assertThat(first.estimateSize(), is(100L));
+        assertThat(second.estimateSize(), is(100L));
+        assertThat(third.estimateSize(), is(50L));
+        assertThat(fourth, is(nullValue()));
+        List<String> urls = new ArrayList<>();
+        first.forEachRemaining(urls::add);
+        assertThat(urls.get(99), is(template.url("s3://cdn.rocketbase.io/assets/99.png")));
+    }
+}
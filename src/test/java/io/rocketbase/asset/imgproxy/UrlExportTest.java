@@ -0,0 +1,186 @@
+package io.rocketbase.asset.imgproxy;
+
+import io.rocketbase.asset.imgproxy.options.ImageType;
+import io.rocketbase.asset.imgproxy.options.ResizeType;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class UrlExportTest {
+
+    private static final SignatureConfiguration SIGNED_CONFIGURATION = new SignatureConfiguration("http://localhost:8080", "secret", "hello");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final SignatureTemplate template = Signature.of(SIGNED_CONFIGURATION)
+            .resize(ResizeType.fit, 800, 800, false)
+            .quality(80)
+            .compile();
+
+    @Test
+    public void shouldExportPlainUrlsInInputOrder() throws Exception {
+        // given
+        List<String> keys = new ArrayList<>();
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            String key = "products/" + i + "/" + (i % 7 == 0 ? "größe-" : "image-") + i + ".png";
+            keys.add(key);
+            input.append(key).append(i % 3 == 0 ? "\r\n" : "\n");
+            if (i % 100 == 0) {
+                input.append('\n');
+            }
+        }
+        Path source = write(input.toString());
+        Path output = folder.getRoot().toPath().resolve("urls.txt");
+
+        // when
+        UrlExport.Result result = UrlExport.of(template)
+                .sourcePrefix("s3://bucket/")
+                .imageType(ImageType.webp)
+                .parallelism(3)
+                .windowSize(1000)
+                .export(source, output);
+
+        // then
+        List<String> lines = Files.readAllLines(output, StandardCharsets.UTF_8);
+        assertThat(result.getRows(), is(5000L));
+        assertThat(result.getBytes(), is(Files.size(output)));
+        assertThat(lines.size(), is(5000));
+        for (int i = 0; i < keys.size(); i++) {
+            assertThat(lines.get(i), is(template.url("s3://bucket/" + keys.get(i), ImageType.webp)));
+        }
+    }
+
+    @Test
+    public void shouldEscapeKeysWithinCsvAndXml() throws Exception {
+        // given
+        Path source = write("a.png\nb,\"c\".png\nd&e<f>.png");
+        Path csv = folder.getRoot().toPath().resolve("urls.csv");
+        Path xml = folder.getRoot().toPath().resolve("urls.xml");
+
+        // when
+        UrlExport.of(template).format(LineFormat.csv()).export(source, csv);
+        UrlExport.of(template).format(LineFormat.xml()).export(source, xml);
+
+        // then
+        assertThat(Files.readAllLines(csv, StandardCharsets.UTF_8), is(Arrays.asList(
+                "source,url",
+                "a.png," + template.url("a.png"),
+                "\"b,\"\"c\"\".png\"," + template.url("b,\"c\".png"),
+                "d&e<f>.png," + template.url("d&e<f>.png"))));
+        assertThat(Files.readAllLines(xml, StandardCharsets.UTF_8), is(Arrays.asList(
+                "<?xml version=\"1.0\" encoding=\"UTF-8\"?>",
+                "<images>",
+                "  <image source=\"a.png\">" + template.url("a.png") + "</image>",
+                "  <image source=\"b,&quot;c&quot;.png\">" + template.url("b,\"c\".png") + "</image>",
+                "  <image source=\"d&amp;e&lt;f&gt;.png\">" + template.url("d&e<f>.png") + "</image>",
+                "</images>")));
+    }
+
+    @Test
+    public void shouldSupportCustomRowsAndEncryptedSources() throws Exception {
+        // given
+        SignatureTemplate encrypted = Signature.of(new SignatureConfiguration("http://localhost:8080", "secret", "hello")
+                        .sourceUrlEncryptionKey("1eb5b0e971ad7f45324c1bb15c947cb207c43152fa5c6c7f35c4f36e0c18e0f1"))
+                .size(300, 300)
+                .encrypted()
+                .compile();
+        Path source = write("a.png\nlonger/key/b.png\n");
+        Path output = folder.getRoot().toPath().resolve("sitemap.xml");
+
+        // when
+        UrlExport.of(encrypted)
+                .format(LineFormat.xml("<urlset>\n", "<url><loc>https://shop/{key}</loc><image:loc>{url}</image:loc></url>\n", "</urlset>\n"))
+                .export(source, output);
+
+        // then
+        assertThat(Files.readAllLines(output, StandardCharsets.UTF_8), is(Arrays.asList(
+                "<urlset>",
+                "<url><loc>https://shop/a.png</loc><image:loc>" + encrypted.url("a.png") + "</image:loc></url>",
+                "<url><loc>https://shop/longer/key/b.png</loc><image:loc>" + encrypted.url("longer/key/b.png") + "</image:loc></url>",
+                "</urlset>")));
+    }
+
+    @Test
+    public void shouldMeasureRoutedBaseurls() throws Exception {
+        // given
+        SignatureTemplate routed = Signature.of(new SignatureConfiguration("http://localhost:8080", "secret", "hello")
+                        .routing(ConsistentHashRing.of("http://a", "http://node-b.example.com", "http://c.example.com:8080")))
+                .size(300, 300)
+                .compile();
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 300; i++) {
+            input.append("images/").append(i).append(".png\n");
+        }
+        Path output = folder.getRoot().toPath().resolve("routed.txt");
+
+        // when
+        UrlExport.of(routed).parallelism(2).windowSize(512).export(write(input.toString()), output);
+
+        // then
+        List<String> lines = Files.readAllLines(output, StandardCharsets.UTF_8);
+        for (int i = 0; i < 300; i++) {
+            assertThat(lines.get(i), is(routed.url("images/" + i + ".png")));
+        }
+    }
+
+    @Test
+    public void shouldExportKeysLongerThanTheScanBlock() throws Exception {
+        // given - keys above the 64kb block, the last one without line break
+        char[] filler = new char[100_000];
+        Arrays.fill(filler, 'x');
+        List<String> keys = Arrays.asList("a.png", new String(filler) + "-1.png", "b.png", new String(filler) + "-2.png");
+        Path output = folder.getRoot().toPath().resolve("long.txt");
+
+        // when
+        UrlExport.Result result = UrlExport.of(template).parallelism(1).export(write(String.join("\n", keys)), output);
+
+        // then
+        List<String> lines = Files.readAllLines(output, StandardCharsets.UTF_8);
+        assertThat(result.getRows(), is(4L));
+        for (int i = 0; i < keys.size(); i++) {
+            assertThat(lines.get(i), is(template.url(keys.get(i))));
+        }
+    }
+
+    @Test
+    public void shouldExportEmptyInput() throws Exception {
+        // given
+        Path output = folder.getRoot().toPath().resolve("empty.xml");
+
+        // when
+        UrlExport.Result result = UrlExport.of(template).format(LineFormat.xml()).export(write(""), output);
+
+        // then
+        assertThat(result.getRows(), is(0L));
+        assertThat(new String(Files.readAllBytes(output), StandardCharsets.UTF_8), is("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<images>\n</images>\n"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectUrlsThatNeedEscaping() throws Exception {
+        SignatureTemplate template = Signature.of(new SignatureConfiguration("http://localhost:8080/?a=1&b=2", "secret", "hello")).compile();
+        UrlExport.of(template).format(LineFormat.xml()).export(write("a.png"), folder.getRoot().toPath().resolve("out.xml"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRequireUrlPlaceholder() {
+        LineFormat.of("", "{key}\n", "");
+    }
+
+    private Path write(String content) throws Exception {
+        Path path = folder.newFile().toPath();
+        Files.write(path, content.getBytes(StandardCharsets.UTF_8));
+        return path;
+    }
+}
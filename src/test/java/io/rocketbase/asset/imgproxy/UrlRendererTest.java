@@ -0,0 +1,131 @@
+package io.rocketbase.asset.imgproxy;
+
+import com.google.common.io.BaseEncoding;
+import io.rocketbase.asset.imgproxy.options.ImageType;
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class UrlRendererTest {
+
+    private static final String BASE_URL = "http://localhost:8080";
+
+    private static final SignatureConfiguration SIGNED_CONFIGURATION = new SignatureConfiguration(BASE_URL, "secret", "hello");
+
+    private static final String SOURCE_URL = "s3://cdn.rocketbase.io/assets/rocketbase/logo-white-400x400-b2bf42d0ad.png";
+
+    @Test
+    public void shouldEncodeBase64UrlLikeGuava() {
+        for (int length = 0; length < 10; length++) {
+            // given
+            byte[] value = new byte[length];
+            for (int i = 0; i < length; i++) {
+                value[i] = (byte) (i * 83 + 250);
+            }
+            byte[] target = new byte[UrlCodec.base64Length(length)];
+
+            // when
+            int written = UrlCodec.encodeBase64Url(value, length, target, 0);
+
+            // then
+            assertThat(written, is(target.length));
+            assertThat(new String(target, StandardCharsets.US_ASCII), is(BaseEncoding.base64Url().omitPadding().encode(value)));
+        }
+    }
+
+    @Test
+    public void shouldRenderNonAsciiSourceAsUtf8() throws Exception {
+        // given
+        String source = "s3://bucket/bilder/größe-ü-€-😀.jpg";
+        SignatureTemplate template = Signature.of(SIGNED_CONFIGURATION)
+                .size(100, 100)
+                .compile();
+
+        // when
+        String url = template.url(source, ImageType.png);
+
+        // then
+        String path = "/s:100:100/" + BaseEncoding.base64Url().omitPadding().encode(source.getBytes(StandardCharsets.UTF_8)) + ".png";
+        assertThat(url, is(BASE_URL + "/" + Signature.signUrl(path, "secret", "hello", 32) + path));
+    }
+
+    @Test
+    public void shouldRenderIntoAppendable() throws Exception {
+        // given
+        SignatureTemplate template = Signature.of(SIGNED_CONFIGURATION)
+                .size(100, 100)
+                .filename("bild-ä.png")
+                .compile();
+        StringWriter writer = new StringWriter();
+        writer.append("<img src=\"");
+
+        // when
+        template.appendUrl(writer, SOURCE_URL, ImageType.png)
+                .append("\">");
+
+        // then
+        assertThat(writer.toString(), is("<img src=\"" + template.url(SOURCE_URL, ImageType.png) + "\">"));
+    }
+
+    @Test
+    public void shouldRenderIntoStringBuilder() {
+        // given
+        SignatureConfiguration configuration = new SignatureConfiguration(BASE_URL, "secret", "hello").numberOfSignatureBytes(8);
+        SignatureTemplate template = Signature.of(configuration)
+                .quality(80)
+                .compile();
+        StringBuilder builder = new StringBuilder();
+
+        // when
+        template.appendUrl(builder, SOURCE_URL, null)
+                .append(' ');
+        template.appendUrl(builder, SOURCE_URL, ImageType.webp);
+
+        // then
+        assertThat(builder.toString(), is(Signature.of(configuration).quality(80).url(SOURCE_URL) + " " +
+                Signature.of(configuration).quality(80).url(SOURCE_URL, ImageType.webp)));
+    }
+
+    @Test
+    public void shouldRenderIntoCharArray() {
+        // given
+        SignatureTemplate template = Signature.of(new SignatureConfiguration(BASE_URL))
+                .width(300)
+                .compile();
+        char[] destination = new char[512];
+
+        // when
+        int length = template.writeUrl(destination, 3, SOURCE_URL, ImageType.avif);
+
+        // then
+        assertThat(new String(destination, 3, length), is(template.url(SOURCE_URL, ImageType.avif)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldNotRenderIntoTooSmallCharArray() {
+        Signature.of(SIGNED_CONFIGURATION)
+                .compile()
+                .writeUrl(new char[32], 0, SOURCE_URL, null);
+    }
+
+    @Test
+    public void shouldGrowBuffersForLongSources() {
+        // given
+        StringBuilder source = new StringBuilder("s3://bucket/");
+        for (int i = 0; i < 500; i++) {
+            source.append("segment-").append(i).append('/');
+        }
+        SignatureTemplate template = Signature.of(SIGNED_CONFIGURATION).compile();
+
+        // when
+        String url = template.url(source.toString(), ImageType.jpg);
+
+        // then
+        String path = "/" + BaseEncoding.base64Url().omitPadding().encode(source.toString().getBytes(StandardCharsets.UTF_8)) + ".jpg";
+        assertThat(url, is(BASE_URL + "/" + new SignatureConfiguration(BASE_URL, "secret", "hello").getSigner().sign(path, 32) + path));
+    }
+}
@@ -0,0 +1,98 @@
+package io.rocketbase.asset.imgproxy;
+
+import com.google.common.hash.Hashing;
+import com.google.common.io.BaseEncoding;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class UrlSignerTest {
+
+    private static final String PATH = "/fill/300/400/sm/0/aHR0cDovL2V4YW1w/bGUuY29tL2ltYWdl/cy9jdXJpb3NpdHku/anBn.png";
+
+    @Test
+    public void shouldSignLikeSignUrl() throws Exception {
+        // given
+        UrlSigner signer = UrlSigner.of("secret", "hello");
+
+        // when
+        String signature = signer.sign(PATH, 32);
+
+        // then
+        assertThat(signature, is("AfrOrF3gWeDA6VOlDG4TzxMv39O7MXnF4CXpKUwGqRM"));
+        assertThat(signature, is(Signature.signUrl(PATH, "secret", "hello", 32)));
+    }
+
+    @Test
+    public void shouldSignRepeatedlyWithTruncatedSignature() throws Exception {
+        // given
+        String longSalt = "943b421c9eb07c830af81030552c86009268de4e532ba2ee2eab8247c6da0881943b421c9eb07c830af81030552c";
+        UrlSigner signer = UrlSigner.of("secret", longSalt);
+
+        // when & then
+        for (int i = 0; i < 3; i++) {
+            assertThat(signer.sign(PATH, 8), is(Signature.signUrl(PATH, "secret", longSalt, 8)));
+            assertThat(signer.sign(PATH + i, 32), is(Signature.signUrl(PATH + i, "secret", longSalt, 32)));
+        }
+    }
+
+    @Test
+    public void shouldMatchFormerGuavaImplementation() throws Exception {
+        for (int numberOfSignatureBytes = 1; numberOfSignatureBytes <= 32; numberOfSignatureBytes++) {
+            // given
+            String guava = BaseEncoding.base64Url()
+                    .omitPadding()
+                    .encode(Hashing.hmacSha256("secret".getBytes()).hashBytes(("hello" + PATH).getBytes()).asBytes(), 0, numberOfSignatureBytes);
+
+            // when
+            String signature = Signature.signUrl(PATH, "secret", "hello", numberOfSignatureBytes);
+
+            // then
+            assertThat(signature, is(guava));
+            assertThat(UrlSigner.of("secret", "hello").sign(PATH, numberOfSignatureBytes), is(guava));
+        }
+    }
+
+    @Test
+    public void shouldReturnNotSetWithoutKey() {
+        assertThat(UrlSigner.of(null, "hello").sign(PATH, 32), is("notset"));
+        assertThat(UrlSigner.of("secret", null).sign(PATH, 32), is("notset"));
+    }
+
+    @Test
+    public void shouldSignConcurrently() throws Exception {
+        // given
+        UrlSigner signer = new SignatureConfiguration("http://localhost", "secret", "hello").getSigner();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Callable<Boolean>> tasks = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            int offset = t;
+            tasks.add(() -> {
+                for (int i = 0; i < 500; i++) {
+                    String path = PATH + (offset * 1000 + i);
+                    if (!signer.sign(path, 32).equals(Signature.signUrl(path, "secret", "hello", 32))) {
+                        return false;
+                    }
+                }
+                return true;
+            });
+        }
+
+        // when & then
+        try {
+            for (Future<Boolean> future : executor.invokeAll(tasks)) {
+                assertThat(future.get(), is(true));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
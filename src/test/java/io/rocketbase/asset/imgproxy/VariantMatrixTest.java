@@ -0,0 +1,126 @@
+package io.rocketbase.asset.imgproxy;
+
+import io.rocketbase.asset.imgproxy.options.ImageType;
+import io.rocketbase.asset.imgproxy.options.ResizeType;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class VariantMatrixTest {
+
+    private static final SignatureConfiguration SIGNED_CONFIGURATION = new SignatureConfiguration("http://localhost:8080", "secret", "hello");
+
+    private static final String SOURCE_URL = "s3://cdn.rocketbase.io/assets/rocketbase/logo-white-400x400-b2bf42d0ad.png";
+
+    @Test
+    public void shouldCreateSameUrlsAsSingleSignatures() {
+        // given
+        Signature base = Signature.of(SIGNED_CONFIGURATION)
+                .resize(ResizeType.fit, 0, 0, false)
+                .quality(80)
+                .background("ffffff")
+                .cachebuster("version-2023-spring-collection-release");
+        VariantMatrix matrix = VariantMatrix.of(base)
+                .widths(320, 640)
+                .dprs(1, 2)
+                .imageTypes(ImageType.avif, ImageType.webp);
+
+        // when
+        ResponsiveImage image = matrix.render(SOURCE_URL);
+
+        // then
+        assertThat(image.getVariants().size(), is(8));
+        for (ResponsiveImage.Variant variant : image.getVariants()) {
+            Signature expected = base.copy().width(variant.getWidth());
+            if (variant.getDpr() != 1) {
+                expected.dpr(variant.getDpr());
+            }
+            assertThat(variant.getUrl(), is(expected.url(SOURCE_URL, variant.getImageType())));
+        }
+        assertThat(image.getVariants(ImageType.webp).get(3).getUrl().contains("/w:640/dpr:2/"), is(true));
+    }
+
+    @Test
+    public void shouldCreateSrcsetWithoutDuplicateDescriptors() {
+        // given
+        VariantMatrix matrix = VariantMatrix.of(Signature.of(new SignatureConfiguration("http://localhost:8080")))
+                .widths(320, 640)
+                .dprs(1, 2)
+                .imageTypes(ImageType.jpg);
+
+        // when
+        String srcset = matrix.render("s3://bucket/a.png").srcset(ImageType.jpg);
+
+        // then
+        assertThat(srcset, is("http://localhost:8080/notset/w:320/czM6Ly9idWNrZXQvYS5wbmc.jpg 320w, " +
+                "http://localhost:8080/notset/w:320/dpr:2/czM6Ly9idWNrZXQvYS5wbmc.jpg 640w, " +
+                "http://localhost:8080/notset/w:640/dpr:2/czM6Ly9idWNrZXQvYS5wbmc.jpg 1280w"));
+    }
+
+    @Test
+    public void shouldCreatePictureSourcesWithDensityDescriptors() {
+        // given
+        VariantMatrix matrix = VariantMatrix.of(Signature.of(SIGNED_CONFIGURATION).size(300, 300))
+                .dprs(1, 1.5, 2)
+                .imageTypes(ImageType.avif, ImageType.jpg);
+
+        // when
+        List<ResponsiveImage.Source> sources = matrix.render(SOURCE_URL).sources();
+
+        // then
+        assertThat(sources.size(), is(2));
+        assertThat(sources.get(0).getType(), is("image/avif"));
+        assertThat(sources.get(1).getType(), is("image/jpeg"));
+        assertThat(sources.get(1).getSrcset(), is(
+                Signature.of(SIGNED_CONFIGURATION).size(300, 300).url(SOURCE_URL, ImageType.jpg) + " 1x, " +
+                        Signature.of(SIGNED_CONFIGURATION).size(300, 300).dpr(1.5).url(SOURCE_URL, ImageType.jpg) + " 1.5x, " +
+                        Signature.of(SIGNED_CONFIGURATION).size(300, 300).dpr(2).url(SOURCE_URL, ImageType.jpg) + " 2x"));
+    }
+
+    @Test
+    public void shouldSkipVariantsWiderThanSource() {
+        // given
+        Signature base = Signature.of(SIGNED_CONFIGURATION).resize(ResizeType.fit, 0, 0, false).quality(80);
+        VariantMatrix matrix = VariantMatrix.of(base)
+                .widths(320, 640, 1280)
+                .dprs(1, 2)
+                .imageTypes(ImageType.webp);
+
+        // when
+        ResponsiveImage image = matrix.render(SOURCE_URL, 900);
+
+        // then
+        List<ResponsiveImage.Variant> variants = image.getVariants();
+        assertThat(variants.size(), is(4));
+        assertThat(variants.get(2).getDescriptor(), is("640w"));
+        assertThat(variants.get(3).getDescriptor(), is("900w"));
+        assertThat(variants.get(3).getUrl(), is(base.copy().width(900).url(SOURCE_URL, ImageType.webp)));
+        assertThat(variants.get(1).getUrl(), is(base.copy().width(320).dpr(2).url(SOURCE_URL, ImageType.webp)));
+    }
+
+    @Test
+    public void shouldKeepAllVariantsForLargeOrUnknownSource() {
+        // given
+        VariantMatrix matrix = VariantMatrix.of(Signature.of(SIGNED_CONFIGURATION).quality(80))
+                .widths(320, 640);
+
+        // when
+        ResponsiveImage large = matrix.render(SOURCE_URL, 4000);
+        ResponsiveImage unknown = matrix.render(SOURCE_URL, 0);
+        ResponsiveImage exact = matrix.render(SOURCE_URL, 320);
+
+        // then
+        assertThat(large.getVariants().size(), is(2));
+        assertThat(unknown.getVariants().size(), is(2));
+        assertThat(exact.getVariants().size(), is(1));
+        assertThat(exact.getVariants().get(0).getWidth(), is(320));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldNotAcceptInvalidWidth() {
+        VariantMatrix.of(Signature.of(SIGNED_CONFIGURATION)).widths(0);
+    }
+}
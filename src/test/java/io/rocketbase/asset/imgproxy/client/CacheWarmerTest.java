@@ -0,0 +1,224 @@
+package io.rocketbase.asset.imgproxy.client;
+
+import com.sun.net.httpserver.HttpServer;
+import io.rocketbase.asset.imgproxy.Signature;
+import io.rocketbase.asset.imgproxy.SignatureConfiguration;
+import io.rocketbase.asset.imgproxy.options.ImageType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class CacheWarmerTest {
+
+    private HttpServer server;
+
+    private SignatureConfiguration configuration;
+
+    private final Set<String> paths = ConcurrentHashMap.newKeySet();
+
+    private final Set<String> methods = ConcurrentHashMap.newKeySet();
+
+    private final AtomicInteger hits = new AtomicInteger();
+
+    private final AtomicInteger active = new AtomicInteger();
+
+    private final AtomicInteger maxActive = new AtomicInteger();
+
+    /**
+     * amount of 503 responses before the server recovers
+     */
+    private final AtomicInteger unavailable = new AtomicInteger();
+
+    @Before
+    public void startServer() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/", exchange -> {
+            hits.incrementAndGet();
+            maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            active.decrementAndGet();
+            paths.add(exchange.getRequestURI().getPath());
+            methods.add(exchange.getRequestMethod());
+            int status = unavailable.getAndUpdate(value -> Math.max(value - 1, 0)) > 0 ? 503 : 200;
+            exchange.sendResponseHeaders(status, -1);
+            exchange.close();
+        });
+        server.start();
+        configuration = new SignatureConfiguration("http://127.0.0.1:" + server.getAddress().getPort(), "secret", "hello");
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    public void shouldRequestAllVariants() throws Exception {
+        // given
+        List<String> sources = Arrays.asList("s3://bucket/a.png", "s3://bucket/b.png", "s3://bucket/c.png");
+
+        try (ImgproxyClient client = ImgproxyClient.create()) {
+            // when
+            WarmupReport report = CacheWarmer.of(client)
+                    .sources(sources)
+                    .variants(Signature.of(configuration).size(100, 100).compile(), Signature.of(configuration).size(300, 300).compile())
+                    .imageTypes(ImageType.webp, ImageType.avif)
+                    .run();
+
+            // then
+            assertThat(report.getRequested(), is(12L));
+            assertThat(report.getSucceeded(), is(12L));
+            assertThat(report.getFailed(), is(0L));
+            assertThat(paths.size(), is(12));
+            assertThat(methods, is(Collections.singleton("HEAD")));
+            String url = Signature.of(configuration).size(300, 300).url("s3://bucket/b.png", ImageType.avif);
+            assertTrue(paths.contains(url.substring(configuration.getBaseurl().length())));
+            assertTrue(report.getThroughput() > 0);
+            assertTrue(report.getLatencyMillis(50) <= report.getLatencyMillis(100));
+        }
+    }
+
+    @Test
+    public void shouldCountBeyondIntegerRange() throws Exception {
+        // given - reports a huge catalog but only iterates a single source
+        Collection<String> sources = new AbstractCollection<String>() {
+            @Override
+            public Iterator<String> iterator() {
+                return Collections.singletonList("s3://bucket/a.png").iterator();
+            }
+
+            @Override
+            public int size() {
+                return 1 << 30;
+            }
+        };
+
+        try (ImgproxyClient client = ImgproxyClient.create()) {
+            // when
+            WarmupReport report = CacheWarmer.of(client)
+                    .sources(sources)
+                    .variants(Signature.of(configuration).size(100, 100).compile(), Signature.of(configuration).size(300, 300).compile())
+                    .imageTypes(ImageType.webp, ImageType.avif)
+                    .run();
+
+            // then
+            assertThat(report.getRequested(), is(1L << 32));
+            assertThat(report.getSucceeded(), is(4L));
+            assertTrue(report.getLatencyMillis(99) > 0);
+        }
+    }
+
+    @Test
+    public void shouldRetryUnavailableServer() throws Exception {
+        // given
+        unavailable.set(2);
+
+        try (ImgproxyClient client = ImgproxyClient.create()) {
+            // when
+            WarmupReport report = CacheWarmer.of(client)
+                    .sources(Collections.singletonList("s3://bucket/a.png"))
+                    .variants(Signature.of(configuration).size(100, 100).compile())
+                    .method(CacheWarmer.Method.GET)
+                    .retryBackoffMillis(10)
+                    .run();
+
+            // then
+            assertThat(report.getSucceeded(), is(1L));
+            assertThat(report.getRetries(), is(2L));
+            assertThat(hits.get(), is(3));
+            assertThat(methods, is(Collections.singleton("GET")));
+        }
+    }
+
+    @Test
+    public void shouldFailAfterMaxRetries() throws Exception {
+        // given
+        unavailable.set(10);
+
+        try (ImgproxyClient client = ImgproxyClient.create()) {
+            // when
+            WarmupReport report = CacheWarmer.of(client)
+                    .sources(Collections.singletonList("s3://bucket/a.png"))
+                    .variants(Signature.of(configuration).size(100, 100).compile())
+                    .maxRetries(1)
+                    .retryBackoffMillis(10)
+                    .run();
+
+            // then
+            assertThat(report.getSucceeded(), is(0L));
+            assertThat(report.getFailed(), is(1L));
+            assertThat(hits.get(), is(2));
+        }
+    }
+
+    @Test
+    public void shouldBoundConcurrencyAndRate() throws Exception {
+        // given
+        List<String> sources = Arrays.asList("s3://bucket/1.png", "s3://bucket/2.png", "s3://bucket/3.png",
+                "s3://bucket/4.png", "s3://bucket/5.png", "s3://bucket/6.png", "s3://bucket/7.png", "s3://bucket/8.png",
+                "s3://bucket/9.png", "s3://bucket/10.png");
+
+        try (ImgproxyClient client = ImgproxyClient.create()) {
+            // when
+            WarmupReport report = CacheWarmer.of(client)
+                    .sources(sources)
+                    .variants(Signature.of(configuration).size(100, 100).compile())
+                    .concurrency(2)
+                    .requestsPerSecond(100)
+                    .run();
+
+            // then
+            assertThat(report.getSucceeded(), is(10L));
+            assertTrue(maxActive.get() <= 2);
+            // 10 starts spaced by 10ms
+            assertTrue(report.getDurationNanos() >= 90_000_000L);
+        }
+    }
+
+    @Test
+    public void shouldRateLimitRetries() throws Exception {
+        // given
+        unavailable.set(3);
+        List<String> sources = Arrays.asList("s3://bucket/1.png", "s3://bucket/2.png", "s3://bucket/3.png",
+                "s3://bucket/4.png");
+
+        try (ImgproxyClient client = ImgproxyClient.create()) {
+            // when
+            WarmupReport report = CacheWarmer.of(client)
+                    .sources(sources)
+                    .variants(Signature.of(configuration).size(100, 100).compile())
+                    .concurrency(4)
+                    .requestsPerSecond(50)
+                    .retryBackoffMillis(1)
+                    .run();
+
+            // then
+            assertThat(report.getSucceeded(), is(4L));
+            assertThat(report.getRetries(), is(3L));
+            assertThat(hits.get(), is(7));
+            // 7 starts including the retries spaced by 20ms
+            assertTrue(report.getDurationNanos() >= 120_000_000L);
+        }
+    }
+}
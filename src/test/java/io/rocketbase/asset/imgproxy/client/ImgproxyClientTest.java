@@ -0,0 +1,185 @@
+package io.rocketbase.asset.imgproxy.client;
+
+import com.sun.net.httpserver.HttpServer;
+import io.rocketbase.asset.imgproxy.Signature;
+import io.rocketbase.asset.imgproxy.SignatureConfiguration;
+import io.rocketbase.asset.imgproxy.options.ImageType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class ImgproxyClientTest {
+
+    private HttpServer server;
+
+    private String baseurl;
+
+    private final AtomicInteger hits = new AtomicInteger();
+
+    private final AtomicInteger active = new AtomicInteger();
+
+    private final AtomicInteger maxActive = new AtomicInteger();
+
+    private volatile CountDownLatch release = new CountDownLatch(0);
+
+    @Before
+    public void startServer() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/", exchange -> {
+            hits.incrementAndGet();
+            maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            active.decrementAndGet();
+            String path = exchange.getRequestURI().getPath();
+            byte[] body = ("image" + path).getBytes(StandardCharsets.UTF_8);
+            int status = path.contains("missing") ? 404 : 200;
+            exchange.getResponseHeaders().add("Content-Type", "image/webp");
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        baseurl = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    public void shouldFetchSignedUrl() throws Exception {
+        // given
+        SignatureConfiguration configuration = new SignatureConfiguration(baseurl, "secret", "hello");
+        String url = Signature.of(configuration).size(100, 100).url("s3://bucket/a.png", ImageType.webp);
+
+        try (ImgproxyClient client = ImgproxyClient.create()) {
+            // when
+            ImageResponse response = client.fetch(Signature.of(configuration).size(100, 100).compile(), "s3://bucket/a.png", ImageType.webp)
+                    .get(5, TimeUnit.SECONDS);
+
+            // then
+            assertThat(response.isSuccessful(), is(true));
+            assertThat(response.getContentType(), is("image/webp"));
+            assertThat(response.getUrl(), is(url));
+            assertThat(new String(response.getBody(), StandardCharsets.UTF_8), is("image" + url.substring(baseurl.length())));
+        }
+    }
+
+    @Test
+    public void shouldCoalesceConcurrentRequests() throws Exception {
+        // given
+        release = new CountDownLatch(1);
+        List<CompletableFuture<ImageResponse>> futures = new ArrayList<>();
+
+        try (ImgproxyClient client = ImgproxyClient.create()) {
+            // when
+            for (int i = 0; i < 20; i++) {
+                futures.add(client.fetch(baseurl + "/notset/w:300/same.png"));
+            }
+            assertThat(client.getInFlightCount(), is(1));
+            release.countDown();
+
+            // then
+            for (CompletableFuture<ImageResponse> future : futures) {
+                assertThat(future.get(5, TimeUnit.SECONDS).getStatusCode(), is(200));
+            }
+            assertThat(hits.get(), is(1));
+            assertThat(client.getInFlightCount(), is(0));
+
+            // a finished fetch isn't reused
+            client.fetch(baseurl + "/notset/w:300/same.png").get(5, TimeUnit.SECONDS);
+            assertThat(hits.get(), is(2));
+        }
+    }
+
+    @Test
+    public void shouldBoundConcurrencyPerNode() throws Exception {
+        // given
+        release = new CountDownLatch(1);
+        List<CompletableFuture<ImageResponse>> futures = new ArrayList<>();
+
+        try (ImgproxyClient client = ImgproxyClient.create().maxConcurrentRequestsPerNode(2)) {
+            // when
+            for (int i = 0; i < 10; i++) {
+                futures.add(client.fetch(baseurl + "/notset/w:300/" + i + ".png"));
+            }
+            for (int i = 0; i < 50 && hits.get() < 2; i++) {
+                Thread.sleep(100);
+            }
+            Thread.sleep(100);
+            assertThat(hits.get(), is(2));
+            release.countDown();
+
+            // then
+            for (CompletableFuture<ImageResponse> future : futures) {
+                future.get(5, TimeUnit.SECONDS);
+            }
+            assertThat(hits.get(), is(10));
+            assertThat(maxActive.get(), is(2));
+        }
+    }
+
+    @Test
+    public void shouldCompleteWithErrorStatus() throws Exception {
+        try (ImgproxyClient client = ImgproxyClient.create()) {
+            // when
+            ImageResponse response = client.fetch(baseurl + "/notset/missing.png").get(5, TimeUnit.SECONDS);
+
+            // then
+            assertThat(response.isSuccessful(), is(false));
+            assertThat(response.getStatusCode(), is(404));
+        }
+    }
+
+    @Test
+    public void shouldKeepSharedFetchWhenOneCallerCancels() throws Exception {
+        // given
+        release = new CountDownLatch(1);
+
+        try (ImgproxyClient client = ImgproxyClient.create()) {
+            CompletableFuture<ImageResponse> first = client.fetch(baseurl + "/notset/shared.png");
+            CompletableFuture<ImageResponse> second = client.fetch(baseurl + "/notset/shared.png");
+
+            // when
+            first.cancel(true);
+            release.countDown();
+
+            // then
+            assertThat(second.get(5, TimeUnit.SECONDS).getStatusCode(), is(200));
+        }
+    }
+
+    @Test
+    public void shouldNotTrustContentLengthForTheBuffer() throws Exception {
+        // given
+        byte[] body = "image".getBytes(StandardCharsets.UTF_8);
+
+        // when - a bogus header would otherwise allocate 2gb up front
+        byte[] read = ImgproxyClient.readFully(new ByteArrayInputStream(body), Integer.MAX_VALUE);
+
+        // then
+        assertThat(new String(read, StandardCharsets.UTF_8), is("image"));
+    }
+}
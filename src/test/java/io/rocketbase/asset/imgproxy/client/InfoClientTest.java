@@ -0,0 +1,190 @@
+package io.rocketbase.asset.imgproxy.client;
+
+import com.sun.net.httpserver.HttpServer;
+import io.rocketbase.asset.imgproxy.ResponsiveImage;
+import io.rocketbase.asset.imgproxy.Signature;
+import io.rocketbase.asset.imgproxy.SignatureConfiguration;
+import io.rocketbase.asset.imgproxy.VariantMatrix;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+
+public class InfoClientTest {
+
+    private HttpServer server;
+
+    private SignatureConfiguration configuration;
+
+    private final AtomicInteger hits = new AtomicInteger();
+
+    private volatile String lastPath;
+
+    @Before
+    public void startServer() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/", exchange -> {
+            hits.incrementAndGet();
+            lastPath = exchange.getRequestURI().getPath();
+            String source = new String(Base64.getUrlDecoder().decode(lastPath.substring(lastPath.lastIndexOf('/') + 1)), StandardCharsets.UTF_8);
+            boolean missing = source.contains("missing");
+            byte[] body = (source.contains("broken") ? "{\"format\": \"jpeg\"}" :
+                    "{\"format\": \"jpeg\", \"exif\": {\"width\": 1}, \"width\": 900, \"height\": 600, \"size\": 123456}")
+                    .getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(missing ? 404 : 200, missing ? -1 : body.length);
+            if (!missing) {
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            }
+            exchange.close();
+        });
+        server.start();
+        configuration = new SignatureConfiguration("http://127.0.0.1:" + server.getAddress().getPort(), "secret", "hello");
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    public void shouldSignInfoUrl() {
+        try (ImgproxyClient client = ImgproxyClient.create()) {
+            // when
+            String infoUrl = InfoClient.of(client, configuration).infoUrl("s3://bucket/a.png");
+
+            // then
+            String url = Signature.of(configuration).url("s3://bucket/a.png");
+            assertThat(infoUrl, is(configuration.getBaseurl() + "/info" + url.substring(configuration.getBaseurl().length())));
+        }
+    }
+
+    @Test
+    public void shouldParseAndCacheInfo() throws Exception {
+        try (ImgproxyClient client = ImgproxyClient.create()) {
+            InfoClient info = InfoClient.of(client, configuration);
+
+            // when
+            ImageInfo first = info.info("s3://bucket/a.png").get(5, TimeUnit.SECONDS);
+            ImageInfo second = info.info("s3://bucket/a.png").get(5, TimeUnit.SECONDS);
+
+            // then
+            assertThat(first.getWidth(), is(900));
+            assertThat(first.getHeight(), is(600));
+            assertThat(first.getFormat(), is("jpeg"));
+            assertThat(first.getSize(), is(123456L));
+            assertThat(first.clampWidth(1280), is(900));
+            assertThat(first.clampWidth(320), is(320));
+            assertThat(second == first, is(true));
+            assertThat(hits.get(), is(1));
+            assertThat(info.getHits(), is(1L));
+            assertThat(lastPath.startsWith("/info/"), is(true));
+        }
+    }
+
+    @Test
+    public void shouldExpireAndEvictEntries() throws Exception {
+        // given
+        AtomicLong now = new AtomicLong();
+
+        try (ImgproxyClient client = ImgproxyClient.create()) {
+            InfoClient info = InfoClient.of(client, configuration).maximumSize(2).ttlMillis(1_000).ticker(now::get);
+
+            // when
+            info.info("s3://bucket/a.png").get(5, TimeUnit.SECONDS);
+            now.addAndGet(TimeUnit.MILLISECONDS.toNanos(1_500));
+            info.info("s3://bucket/a.png").get(5, TimeUnit.SECONDS);
+            info.info("s3://bucket/b.png").get(5, TimeUnit.SECONDS);
+            info.info("s3://bucket/c.png").get(5, TimeUnit.SECONDS);
+
+            // then
+            assertThat(hits.get(), is(4));
+            assertThat(info.size(), is(2));
+        }
+    }
+
+    @Test
+    public void shouldNotCacheFailures() throws Exception {
+        try (ImgproxyClient client = ImgproxyClient.create()) {
+            InfoClient info = InfoClient.of(client, configuration);
+            CompletableFuture<ImageInfo> future = info.info("s3://bucket/missing.png");
+
+            // when
+            try {
+                future.get(5, TimeUnit.SECONDS);
+                fail("expected failure");
+            } catch (ExecutionException e) {
+                // then
+                assertThat(e.getCause(), instanceOf(IllegalStateException.class));
+            }
+            assertThat(info.size(), is(0));
+        }
+    }
+
+    @Test
+    public void shouldNotCacheUnparsableResponses() throws Exception {
+        try (ImgproxyClient client = ImgproxyClient.create()) {
+            InfoClient info = InfoClient.of(client, configuration);
+            CompletableFuture<ImageInfo> future = info.info("s3://bucket/broken.png");
+
+            // when
+            try {
+                future.get(5, TimeUnit.SECONDS);
+                fail("expected failure");
+            } catch (ExecutionException e) {
+                // then
+                assertThat(e.getCause(), instanceOf(IllegalStateException.class));
+            }
+            assertThat(info.size(), is(0));
+        }
+    }
+
+    @Test
+    public void shouldRenderMatrixClampedToSource() throws Exception {
+        // given
+        VariantMatrix matrix = VariantMatrix.of(Signature.of(configuration).quality(80)).widths(320, 640, 1280, 1920);
+
+        try (ImgproxyClient client = ImgproxyClient.create()) {
+            // when
+            ResponsiveImage image = InfoClient.of(client, configuration).render(matrix, "s3://bucket/a.png").get(5, TimeUnit.SECONDS);
+
+            // then
+            assertThat(image.getVariants().size(), is(3));
+            assertThat(image.getVariants().get(2).getWidth(), is(900));
+        }
+    }
+
+    @Test
+    public void shouldIgnoreMissingFields() {
+        // when
+        ImageInfo info = ImageInfo.parse("{\"width\":10,\"height\":20}");
+
+        // then
+        assertThat(info.getWidth(), is(10));
+        assertThat(info.getFormat(), nullValue());
+        assertThat(info.getSize(), is(-1L));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldRejectMissingDimensions() {
+        ImageInfo.parse("{\"width\":10,\"format\":\"png\"}");
+    }
+}
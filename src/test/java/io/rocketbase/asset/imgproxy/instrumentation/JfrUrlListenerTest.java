@@ -0,0 +1,53 @@
+package io.rocketbase.asset.imgproxy.instrumentation;
+
+import io.rocketbase.asset.imgproxy.Signature;
+import io.rocketbase.asset.imgproxy.SignatureConfiguration;
+import io.rocketbase.asset.imgproxy.options.ImageType;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class JfrUrlListenerTest {
+
+    private static final String SOURCE_URL = "s3://cdn.rocketbase.io/assets/rocketbase/logo-white-400x400-b2bf42d0ad.png";
+
+    @Test
+    public void shouldEmitEvents() throws Exception {
+        // given
+        SignatureConfiguration configuration = new SignatureConfiguration("http://localhost:8080", "secret", "hello")
+                .listener(JfrUrlListener.INSTANCE);
+        Path file = Files.createTempFile("imgproxy", ".jfr");
+
+        // when
+        try (Recording recording = new Recording()) {
+            recording.enable("io.rocketbase.imgproxy.UrlGeneration");
+            recording.start();
+            Signature.of(configuration).size(100, 100).quality(80).url(SOURCE_URL, ImageType.webp);
+            recording.stop();
+            recording.dump(file);
+        }
+
+        // then
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file).stream()
+                .filter(e -> e.getEventType().getName().equals("io.rocketbase.imgproxy.UrlGeneration"))
+                .collect(Collectors.toList());
+        Files.delete(file);
+        assertThat(events.size(), is(1));
+        assertThat(events.get(0).getString("imageType"), is("webp"));
+        assertThat(events.get(0).getBoolean("signed"), is(true));
+        assertThat(events.get(0).getInt("sourceUrlLength"), is(SOURCE_URL.length()));
+        assertThat(events.get(0).getInt("optionCount"), is(2));
+        // instant event - the timings live in own fields
+        assertThat(events.get(0).getDuration().isZero(), is(true));
+        assertThat(events.get(0).getDuration("signDuration").isNegative(), is(false));
+    }
+}
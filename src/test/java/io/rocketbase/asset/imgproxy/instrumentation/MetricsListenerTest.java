@@ -0,0 +1,107 @@
+package io.rocketbase.asset.imgproxy.instrumentation;
+
+import io.rocketbase.asset.imgproxy.Signature;
+import io.rocketbase.asset.imgproxy.SignatureConfiguration;
+import io.rocketbase.asset.imgproxy.options.ImageType;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class MetricsListenerTest {
+
+    private static final String SOURCE_URL = "s3://cdn.rocketbase.io/assets/rocketbase/logo-white-400x400-b2bf42d0ad.png";
+
+    @Test
+    public void shouldCountSignedUnsignedAndImageTypes() {
+        // given
+        MetricsListener signedMetrics = new MetricsListener();
+        MetricsListener unsignedMetrics = new MetricsListener();
+        SignatureConfiguration signed = new SignatureConfiguration("http://localhost:8080", "secret", "hello").listener(signedMetrics);
+        SignatureConfiguration unsigned = new SignatureConfiguration("http://localhost:8080").listener(unsignedMetrics);
+
+        // when
+        Signature.of(signed).size(100, 100).url(SOURCE_URL, ImageType.png);
+        Signature.of(signed).size(100, 100).url(SOURCE_URL, ImageType.webp);
+        Signature.of(signed).size(100, 100).url(SOURCE_URL);
+        Signature.of(unsigned).size(100, 100).url(SOURCE_URL, ImageType.png);
+
+        // then
+        assertThat(signedMetrics.getSignedCount(), is(3L));
+        assertThat(signedMetrics.getUnsignedCount(), is(0L));
+        assertThat(signedMetrics.getCount(ImageType.png), is(1L));
+        assertThat(signedMetrics.getCount(ImageType.webp), is(1L));
+        assertThat(signedMetrics.getCount(null), is(1L));
+        assertThat(signedMetrics.getTotalLatency().getCount(), is(3L));
+        assertThat(unsignedMetrics.getUnsignedCount(), is(1L));
+        assertThat(unsignedMetrics.getCount(), is(1L));
+    }
+
+    @Test
+    public void shouldReportLengthAndOptionCount() {
+        // given
+        List<int[]> calls = new ArrayList<>();
+        SignatureConfiguration configuration = new SignatureConfiguration("http://localhost:8080", "secret", "hello")
+                .listener((c, imageType, signed, sourceUrlLength, optionCount, encodeNanos, signNanos) ->
+                        calls.add(new int[]{sourceUrlLength, optionCount}));
+
+        // when
+        Signature.of(configuration).size(100, 100).quality(80).url(SOURCE_URL);
+
+        // then
+        assertThat(calls.size(), is(1));
+        assertThat(calls.get(0)[0], is(SOURCE_URL.length()));
+        assertThat(calls.get(0)[1], is(2));
+    }
+
+    @Test
+    public void shouldNotifyAllListeners() {
+        // given
+        MetricsListener first = new MetricsListener();
+        MetricsListener second = new MetricsListener();
+        SignatureConfiguration configuration = new SignatureConfiguration("http://localhost:8080", "secret", "hello")
+                .listener(UrlListener.of(first, second));
+
+        // when
+        Signature.of(configuration).size(100, 100).compile().urls(new String[]{SOURCE_URL, SOURCE_URL + "?v=2"}, null);
+
+        // then
+        assertThat(first.getCount(), is(2L));
+        assertThat(second.getCount(), is(2L));
+    }
+
+    @Test
+    public void shouldEstimatePercentiles() {
+        // given
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        // when
+        for (int i = 0; i < 99; i++) {
+            histogram.record(100);
+        }
+        histogram.record(10_000);
+
+        // then
+        assertThat(histogram.getCount(), is(100L));
+        assertThat(histogram.getPercentileNanos(50) >= 100, is(true));
+        assertThat(histogram.getPercentileNanos(50) < 200, is(true));
+        assertThat(histogram.getPercentileNanos(100) >= 10_000, is(true));
+        assertThat(histogram.getMeanNanos() > 100, is(true));
+    }
+
+    @Test
+    public void shouldReportZeroWithoutRecordings() {
+        // given
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        // when
+        long p99 = histogram.getPercentileNanos(99);
+
+        // then
+        assertThat(p99, is(0L));
+        assertThat(histogram.getMeanNanos(), is(0.0));
+    }
+}
@@ -0,0 +1,85 @@
+package io.rocketbase.asset.imgproxy.recipe;
+
+import io.rocketbase.asset.imgproxy.Signature;
+import io.rocketbase.asset.imgproxy.SignatureConfiguration;
+import io.rocketbase.asset.imgproxy.options.ImageType;
+import io.rocketbase.asset.imgproxy.options.ResizeType;
+import org.junit.Test;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+@ImageRecipe(name = "product-thumb", options = {"rs:fill:300:300", "quality:80"})
+@ImageRecipe(name = "product_detail", options = {"resize:fit:1200:1200:false", "bg:ffffff"})
+public class ImageRecipeProcessorTest {
+
+    private static final SignatureConfiguration SIGNED_CONFIGURATION = new SignatureConfiguration("http://localhost:8080", "secret", "hello");
+
+    private static final String SOURCE_URL = "s3://cdn.rocketbase.io/assets/rocketbase/logo-white-400x400-b2bf42d0ad.png";
+
+    @Test
+    public void shouldGenerateRecipeClasses() {
+        // when
+        ProductThumbRecipe thumb = new ProductThumbRecipe(SIGNED_CONFIGURATION);
+        ProductDetailRecipe detail = new ProductDetailRecipe(SIGNED_CONFIGURATION);
+
+        // then
+        assertThat(ProductThumbRecipe.OPTION_PATH, is("/rs:fill:300:300/q:80"));
+        assertThat(ProductThumbRecipe.NAME, is("product-thumb"));
+        assertThat(thumb.url(SOURCE_URL, ImageType.webp), is(Signature.of(SIGNED_CONFIGURATION)
+                .resize(ResizeType.fill, 300, 300)
+                .quality(80)
+                .url(SOURCE_URL, ImageType.webp)));
+        assertThat(detail.url(SOURCE_URL), is(Signature.of(SIGNED_CONFIGURATION)
+                .resize(ResizeType.fit, 1200, 1200, false)
+                .background("ffffff")
+                .url(SOURCE_URL)));
+        assertThat(thumb.appendUrl(new StringBuilder(), SOURCE_URL, null).toString(), is(thumb.url(SOURCE_URL)));
+    }
+
+    @Test
+    public void shouldConvertNamesToClassNames() {
+        assertThat(ImageRecipeProcessor.className("product-thumb"), is("ProductThumbRecipe"));
+        assertThat(ImageRecipeProcessor.className("hero.banner_2x"), is("HeroBanner2xRecipe"));
+        assertThat(ImageRecipeProcessor.className("2x"), nullValue());
+        assertThat(ImageRecipeProcessor.className("--"), nullValue());
+    }
+
+    @Test
+    public void shouldFailOnInvalidOption() {
+        // given
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        JavaFileObject source = new SimpleJavaFileObject(URI.create("string:///sample/Recipes.java"), JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return "package sample;\n" +
+                        "@io.rocketbase.asset.imgproxy.recipe.ImageRecipe(name = \"broken\", options = {\"rs:fill:300:300/q:80\"})\n" +
+                        "public interface Recipes {}\n";
+            }
+        };
+        JavaCompiler.CompilationTask task = compiler.getTask(null, null, diagnostics,
+                Arrays.asList("-proc:only", "-classpath", System.getProperty("java.class.path")), null, Collections.singletonList(source));
+        task.setProcessors(Collections.singletonList(new ImageRecipeProcessor()));
+
+        // when
+        boolean success = task.call();
+
+        // then
+        assertThat(success, is(false));
+        Diagnostic<? extends JavaFileObject> diagnostic = diagnostics.getDiagnostics().get(0);
+        assertThat(diagnostic.getKind(), is(Diagnostic.Kind.ERROR));
+        assertThat(diagnostic.getMessage(null).contains("one option per entry without slashes"), is(true));
+    }
+}
@@ -0,0 +1,175 @@
+package io.rocketbase.asset.imgproxy;
+
+import io.rocketbase.asset.imgproxy.options.ImageType;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class UrlProcessorTest {
+
+    private static final SignatureConfiguration SIGNED_CONFIGURATION = new SignatureConfiguration("http://localhost:8080", "secret", "hello");
+
+    private static final SignatureTemplate TEMPLATE = Signature.of(SIGNED_CONFIGURATION).size(100, 100).compile();
+
+    @Test
+    public void shouldMapAllSourceUrlsInOrder() {
+        // given
+        RangePublisher publisher = new RangePublisher(1_000);
+        UrlProcessor processor = UrlProcessor.of(TEMPLATE, ImageType.webp, 16);
+        CollectingSubscriber subscriber = new CollectingSubscriber(7);
+
+        // when
+        publisher.subscribe(processor);
+        processor.subscribe(subscriber);
+
+        // then
+        assertThat(subscriber.completed, is(true));
+        assertThat(subscriber.error, is(nullValue()));
+        assertThat(subscriber.urls.size(), is(1_000));
+        assertThat(subscriber.urls.get(999), is(TEMPLATE.url(RangePublisher.sourceUrl(999), ImageType.webp)));
+    }
+
+    @Test
+    public void shouldNotRequestMoreThanBufferWithoutDemand() {
+        // given
+        RangePublisher publisher = new RangePublisher(1_000);
+        UrlProcessor processor = UrlProcessor.of(TEMPLATE, null, 16);
+        CollectingSubscriber subscriber = new CollectingSubscriber(0);
+
+        // when
+        processor.subscribe(subscriber);
+        publisher.subscribe(processor);
+
+        // then
+        assertThat(publisher.requested.get(), is(16L));
+        assertThat(subscriber.urls.size(), is(0));
+
+        // when
+        subscriber.subscription.request(8);
+
+        // then
+        assertThat(subscriber.urls.size(), is(8));
+        assertThat(publisher.requested.get(), is(24L));
+    }
+
+    @Test
+    public void shouldPropagateInvalidRequest() {
+        // given
+        UrlProcessor processor = UrlProcessor.of(TEMPLATE);
+        CollectingSubscriber subscriber = new CollectingSubscriber(0);
+        processor.subscribe(subscriber);
+        new RangePublisher(10).subscribe(processor);
+
+        // when
+        subscriber.subscription.request(0);
+
+        // then
+        assertThat(subscriber.error, instanceOf(IllegalArgumentException.class));
+    }
+
+    /**
+     * synchronous publisher of numbered source urls that records the requested amount
+     */
+    private static final class RangePublisher implements Flow.Publisher<String> {
+
+        private final int count;
+
+        private final AtomicLong requested = new AtomicLong();
+
+        private int emitted;
+
+        private boolean cancelled;
+
+        private boolean emitting;
+
+        RangePublisher(int count) {
+            this.count = count;
+        }
+
+        static String sourceUrl(int i) {
+            return "s3://cdn.rocketbase.io/assets/" + i + ".png";
+        }
+
+        @Override
+        public void subscribe(Flow.Subscriber<? super String> subscriber) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                    requested.addAndGet(n);
+                    if (emitting) {
+                        return;
+                    }
+                    emitting = true;
+                    while (!cancelled && emitted < count && emitted < requested.get()) {
+                        subscriber.onNext(sourceUrl(emitted++));
+                    }
+                    emitting = false;
+                    if (!cancelled && emitted == count) {
+                        cancelled = true;
+                        subscriber.onComplete();
+                    }
+                }
+
+                @Override
+                public void cancel() {
+                    cancelled = true;
+                }
+            });
+        }
+    }
+
+    private static final class CollectingSubscriber implements Flow.Subscriber<String> {
+
+        private final long batch;
+
+        private final List<String> urls = new ArrayList<>();
+
+        private Flow.Subscription subscription;
+
+        private boolean completed;
+
+        private Throwable error;
+
+        private long outstanding;
+
+        CollectingSubscriber(long batch) {
+            this.batch = batch;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            if (batch > 0) {
+                outstanding = batch;
+                subscription.request(batch);
+            }
+        }
+
+        @Override
+        public void onNext(String item) {
+            urls.add(item);
+            if (batch > 0 && --outstanding == 0) {
+                outstanding = batch;
+                subscription.request(batch);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+        }
+    }
+}